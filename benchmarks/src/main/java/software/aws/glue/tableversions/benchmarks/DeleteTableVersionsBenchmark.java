@@ -0,0 +1,76 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.benchmarks;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.glue.AWSGlue;
+import com.google.common.primitives.Ints;
+
+import software.aws.glue.tableversions.utils.GlueUtil;
+import software.aws.glue.tableversions.utils.TableVersionSelector;
+import software.aws.glue.tableversions.utils.TableVersionStatus;
+
+/**
+ * Benchmarks of the client side of deleting table versions: chunking the
+ * version ids into batches of 100, converting them to strings and building the
+ * BatchDeleteTableVersion requests. The AWS Glue client does not make network
+ * calls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeleteTableVersionsBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	private int numberOfVersions;
+
+	private List<Integer> versionsToDelete;
+	private GlueUtil glueUtil;
+	private AWSGlue glueClient;
+	private PrintStream systemOut;
+
+	@Setup
+	public void setup() {
+		int[] versionIds = GlueUtil.getVersionIds(TableVersionsFixture.tableVersions(numberOfVersions, "narrow"));
+		versionsToDelete = Ints.asList(TableVersionSelector.keepNewest(100).select(versionIds).getVersionsToDelete());
+		glueUtil = new GlueUtil();
+		glueClient = TableVersionsFixture.noOpGlueClient();
+		systemOut = TableVersionsFixture.silenceSystemOut();
+	}
+
+	@TearDown
+	public void tearDown() {
+		System.setOut(systemOut);
+	}
+
+	@Benchmark
+	public List<List<String>> partitionVersionIds() {
+		return GlueUtil.partitionVersionIds(versionsToDelete, 100);
+	}
+
+	@Benchmark
+	public List<TableVersionStatus> deleteTableVersions() {
+		return glueUtil.deleteTableVersions(glueClient, versionsToDelete, TableVersionsFixture.TABLE_NAME,
+				TableVersionsFixture.DATABASE_NAME);
+	}
+}
@@ -0,0 +1,101 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.google.gson.Gson;
+
+import software.aws.glue.tableversions.utils.DDBUtil;
+import software.aws.glue.tableversions.utils.GlueTable;
+import software.aws.glue.tableversions.utils.GlueTablePack;
+
+/**
+ * Benchmarks of the per-table work around the AWS calls: encoding a GlueTable
+ * message in the planner, decoding it in the cleanup Lambda, for a single table
+ * and for a pack of 50 tables, and building the DynamoDB items written for
+ * every table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageCodecBenchmark {
+
+	private final Gson gson = new Gson();
+	private final DDBUtil ddbUtil = new DDBUtil();
+	private GlueTable glueTable;
+	private GlueTablePack tablePack;
+	private String glueTableMessage;
+	private String tablePackMessage;
+
+	@Setup
+	public void setup() {
+		glueTable = glueTable(0);
+		List<GlueTable> tables = new ArrayList<GlueTable>();
+		for (int i = 0; i < 50; i++) {
+			tables.add(glueTable(i));
+		}
+		tablePack = new GlueTablePack(tables);
+		glueTableMessage = GlueTablePack.of(glueTable).toJson(gson);
+		tablePackMessage = tablePack.toJson(gson);
+	}
+
+	private static GlueTable glueTable(int i) {
+		GlueTable glueTable = new GlueTable();
+		glueTable.setDatabaseName(TableVersionsFixture.DATABASE_NAME);
+		glueTable.setTableName(TableVersionsFixture.TABLE_NAME + "_" + i);
+		glueTable.setEstimatedVersionsToDelete(20);
+		return glueTable;
+	}
+
+	@Benchmark
+	public String encodeGlueTable() {
+		return gson.toJson(glueTable);
+	}
+
+	@Benchmark
+	public GlueTablePack decodeGlueTable() {
+		return GlueTablePack.fromJson(gson, glueTableMessage);
+	}
+
+	@Benchmark
+	public String encodeTablePack() {
+		return tablePack.toJson(gson);
+	}
+
+	@Benchmark
+	public GlueTablePack decodeTablePack() {
+		return GlueTablePack.fromJson(gson, tablePackMessage);
+	}
+
+	@Benchmark
+	public Map<String, AttributeValue> createCleanupStatusItem() {
+		return ddbUtil.createCleanupStatusItem("execution_id", "execution_batch_id", 1602000000000L,
+				"1602000000001", glueTable.getDatabaseName(), glueTable.getTableName(), 1500, 100, 1400);
+	}
+
+	@Benchmark
+	public Map<String, AttributeValue> createTableDetailsItem() {
+		return ddbUtil.createTableDetailsItem("execution_batch_id", "database_name_table_name", 1602000000001L,
+				glueTable.getDatabaseName(), glueTable.getTableName(), "Tue Oct 06 16:00:00 UTC 2020");
+	}
+}
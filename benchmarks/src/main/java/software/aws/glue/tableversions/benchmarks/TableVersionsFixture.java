@@ -0,0 +1,111 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import com.amazonaws.services.glue.AbstractAWSGlue;
+import com.amazonaws.services.glue.model.BatchDeleteTableVersionRequest;
+import com.amazonaws.services.glue.model.BatchDeleteTableVersionResult;
+import com.amazonaws.services.glue.model.Column;
+import com.amazonaws.services.glue.model.StorageDescriptor;
+import com.amazonaws.services.glue.model.Table;
+import com.amazonaws.services.glue.model.TableVersion;
+import com.amazonaws.services.glue.model.TableVersionError;
+
+/**
+ * This class builds the synthetic inputs of the benchmarks: table versions as
+ * returned by GetTableVersions, with a narrow (8 columns) or wide (200 columns)
+ * schema.
+ */
+public final class TableVersionsFixture {
+
+	public static final String DATABASE_NAME = "benchmark_db";
+	public static final String TABLE_NAME = "benchmark_table";
+
+	private TableVersionsFixture() {
+	}
+
+	/**
+	 * Returns table versions 1 to numberOfVersions in the order AWS Glue returns
+	 * them, i.e. newest first, with a few gaps left by earlier cleanups. The
+	 * versions share their column list, so 100k wide versions fit in a default
+	 * heap.
+	 *
+	 * @param numberOfVersions
+	 * @param schema           'narrow' or 'wide'
+	 * @return
+	 */
+	public static List<TableVersion> tableVersions(int numberOfVersions, String schema) {
+		List<Column> columns = columns("wide".equals(schema) ? 200 : 8);
+		Random random = new Random(42);
+		List<TableVersion> tableVersions = new ArrayList<TableVersion>(numberOfVersions);
+		int versionId = numberOfVersions + numberOfVersions / 100;
+		while (tableVersions.size() < numberOfVersions) {
+			if (random.nextInt(100) != 0)
+				tableVersions.add(new TableVersion().withVersionId(Integer.toString(versionId))
+						.withTable(table(versionId, columns)));
+			versionId--;
+		}
+		return tableVersions;
+	}
+
+	private static List<Column> columns(int numberOfColumns) {
+		List<Column> columns = new ArrayList<Column>(numberOfColumns);
+		for (int i = 0; i < numberOfColumns; i++) {
+			columns.add(new Column().withName("column_" + i).withType(i % 3 == 0 ? "string" : "bigint"));
+		}
+		return columns;
+	}
+
+	private static Table table(int versionId, List<Column> columns) {
+		return new Table().withName(TABLE_NAME).withDatabaseName(DATABASE_NAME)
+				.withVersionId(Integer.toString(versionId)).withUpdateTime(new Date(versionId * 1000L))
+				.withStorageDescriptor(new StorageDescriptor().withColumns(columns)
+						.withLocation("s3://benchmark-bucket/" + DATABASE_NAME + "/" + TABLE_NAME + "/"));
+	}
+
+	/**
+	 * Returns an AWS Glue client whose BatchDeleteTableVersion succeeds without a
+	 * network call, so only the client side of a delete is measured.
+	 *
+	 * @return
+	 */
+	public static AbstractAWSGlue noOpGlueClient() {
+		BatchDeleteTableVersionResult result = new BatchDeleteTableVersionResult()
+				.withErrors(Collections.<TableVersionError>emptyList());
+		return new AbstractAWSGlue() {
+			@Override
+			public BatchDeleteTableVersionResult batchDeleteTableVersion(BatchDeleteTableVersionRequest request) {
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * Replaces System.out with a stream that drops its output, as the utility
+	 * logs every table and every delete batch.
+	 *
+	 * @return the original System.out
+	 */
+	public static PrintStream silenceSystemOut() {
+		PrintStream systemOut = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+		return systemOut;
+	}
+}
@@ -0,0 +1,86 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.benchmarks;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.glue.model.TableVersion;
+
+import software.aws.glue.tableversions.utils.GlueUtil;
+import software.aws.glue.tableversions.utils.TableVersionSelector;
+import software.aws.glue.tableversions.utils.VersionSelection;
+
+/**
+ * Benchmarks of the selection of the versions to delete from a listed table:
+ * GlueUtil.determineOldVersions as called by the cleanup Lambda, and its two
+ * steps, the projection to version ids and the selection itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VersionSelectionBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	private int numberOfVersions;
+
+	@Param({ "narrow", "wide" })
+	private String schema;
+
+	@Param({ "100" })
+	private int numberofVersionsToRetain;
+
+	private List<TableVersion> tableVersions;
+	private int[] versionIds;
+	private GlueUtil glueUtil;
+	private TableVersionSelector versionSelector;
+	private PrintStream systemOut;
+
+	@Setup
+	public void setup() {
+		tableVersions = TableVersionsFixture.tableVersions(numberOfVersions, schema);
+		versionIds = GlueUtil.getVersionIds(tableVersions);
+		glueUtil = new GlueUtil();
+		versionSelector = TableVersionSelector.keepNewest(numberofVersionsToRetain);
+		systemOut = TableVersionsFixture.silenceSystemOut();
+	}
+
+	@TearDown
+	public void tearDown() {
+		System.setOut(systemOut);
+	}
+
+	@Benchmark
+	public List<List<Integer>> determineOldVersions() {
+		return glueUtil.determineOldVersions(tableVersions, TableVersionsFixture.TABLE_NAME,
+				TableVersionsFixture.DATABASE_NAME, numberofVersionsToRetain);
+	}
+
+	@Benchmark
+	public int[] getVersionIds() {
+		return GlueUtil.getVersionIds(tableVersions);
+	}
+
+	@Benchmark
+	public VersionSelection selectVersionIds() {
+		return versionSelector.select(versionIds);
+	}
+}
@@ -0,0 +1,46 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.harness;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts the calls of the local stand-ins per API operation, e.g.
+ * GetTableVersions=1200, including calls that were throttled.
+ */
+public class ApiCallCounter {
+
+	private final Map<String, LongAdder> counts = new ConcurrentHashMap<String, LongAdder>();
+
+	public void record(String api) {
+		counts.computeIfAbsent(api, key -> new LongAdder()).increment();
+	}
+
+	public long getCount(String api) {
+		LongAdder count = counts.get(api);
+		return count == null ? 0 : count.sum();
+	}
+
+	/**
+	 * Returns the number of calls per API operation in the order of the names.
+	 *
+	 * @return
+	 */
+	public SortedMap<String, Long> getCounts() {
+		SortedMap<String, Long> snapshot = new TreeMap<String, Long>();
+		for (Map.Entry<String, LongAdder> count : counts.entrySet()) {
+			snapshot.put(count.getKey(), count.getValue().sum());
+		}
+		return snapshot;
+	}
+
+	@Override
+	public String toString() {
+		return getCounts().toString();
+	}
+}
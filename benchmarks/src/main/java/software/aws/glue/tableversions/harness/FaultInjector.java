@@ -0,0 +1,67 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.harness;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.AmazonServiceException;
+
+/**
+ * This class makes a local stand-in behave like a remote service: every call
+ * takes latencyMillis (+/- 50%) and a share of the calls fails with a
+ * ThrottlingException, which the utility treats like a throttled AWS call.
+ * Calls are counted per API operation before they are throttled.
+ */
+public class FaultInjector {
+
+	private final long latencyMillis;
+	private final double throttleRate;
+	private final ApiCallCounter callCounter = new ApiCallCounter();
+	private final AtomicLong numberOfThrottles = new AtomicLong();
+
+	/**
+	 * @param latencyMillis mean latency of a call
+	 * @param throttleRate  share of calls that are throttled, 0 to 1
+	 */
+	public FaultInjector(long latencyMillis, double throttleRate) {
+		this.latencyMillis = latencyMillis;
+		this.throttleRate = throttleRate;
+	}
+
+	/**
+	 * Counts a call, waits for its latency and throws a ThrottlingException for
+	 * a share of the calls.
+	 *
+	 * @param api name of the API operation, e.g. 'GetTableVersions'
+	 */
+	public void call(String api) {
+		callCounter.record(api);
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		if (latencyMillis > 0) {
+			try {
+				Thread.sleep(latencyMillis / 2 + random.nextLong(latencyMillis + 1));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted during a call of " + api + ".", e);
+			}
+		}
+		if (throttleRate > 0 && random.nextDouble() < throttleRate) {
+			numberOfThrottles.incrementAndGet();
+			AmazonServiceException exception = new AmazonServiceException("Rate exceeded for " + api + ".");
+			exception.setErrorCode("ThrottlingException");
+			exception.setStatusCode(400);
+			exception.setErrorType(AmazonServiceException.ErrorType.Client);
+			throw exception;
+		}
+	}
+
+	public ApiCallCounter getCallCounter() {
+		return callCounter;
+	}
+
+	public long getNumberOfThrottles() {
+		return numberOfThrottles.get();
+	}
+}
@@ -0,0 +1,97 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.harness;
+
+import java.util.UUID;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+/**
+ * This class is the context of a Lambda invocation run in process. The time
+ * left counts down from the timeout of the function; log lines go to
+ * System.out like the rest of the output of the functions.
+ */
+public class LocalContext implements Context, LambdaLogger {
+
+	private final String functionName;
+	private final long deadlineMillis;
+	private final String awsRequestId = UUID.randomUUID().toString();
+
+	/**
+	 * @param functionName
+	 * @param timeoutMillis timeout of the function
+	 */
+	public LocalContext(String functionName, long timeoutMillis) {
+		this.functionName = functionName;
+		this.deadlineMillis = System.currentTimeMillis() + timeoutMillis;
+	}
+
+	@Override
+	public String getAwsRequestId() {
+		return awsRequestId;
+	}
+
+	@Override
+	public String getLogGroupName() {
+		return "/aws/lambda/" + functionName;
+	}
+
+	@Override
+	public String getLogStreamName() {
+		return awsRequestId;
+	}
+
+	@Override
+	public String getFunctionName() {
+		return functionName;
+	}
+
+	@Override
+	public String getFunctionVersion() {
+		return "$LATEST";
+	}
+
+	@Override
+	public String getInvokedFunctionArn() {
+		return "arn:aws:lambda:local:000000000000:function:" + functionName;
+	}
+
+	@Override
+	public CognitoIdentity getIdentity() {
+		return null;
+	}
+
+	@Override
+	public ClientContext getClientContext() {
+		return null;
+	}
+
+	@Override
+	public int getRemainingTimeInMillis() {
+		return (int) Math.max(0, deadlineMillis - System.currentTimeMillis());
+	}
+
+	@Override
+	public int getMemoryLimitInMB() {
+		return (int) (Runtime.getRuntime().maxMemory() / (1024 * 1024));
+	}
+
+	@Override
+	public LambdaLogger getLogger() {
+		return this;
+	}
+
+	@Override
+	public void log(String message) {
+		System.out.println(message);
+	}
+
+	@Override
+	public void log(byte[] message) {
+		System.out.println(new String(message));
+	}
+}
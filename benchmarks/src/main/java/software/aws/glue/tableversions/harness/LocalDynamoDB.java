@@ -0,0 +1,165 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.harness;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * This class is an in-process Amazon DynamoDB with the tables created by
+ * {@link #createTable(String, String, String)}. Items are stored by their
+ * primary key; a put replaces the item with the same key. It implements
+ * PutItem, GetItem, BatchWriteItem and BatchGetItem without conditions,
+ * projections or unprocessed items. Calls on other tables fail with a
+ * ResourceNotFoundException.
+ */
+public class LocalDynamoDB extends AbstractAmazonDynamoDB {
+
+	private final FaultInjector faultInjector;
+	private final Map<String, LocalTable> tables = new ConcurrentHashMap<String, LocalTable>();
+
+	public LocalDynamoDB(FaultInjector faultInjector) {
+		this.faultInjector = faultInjector;
+	}
+
+	/**
+	 * Creates a table, or replaces a table of the same name.
+	 *
+	 * @param tableName
+	 * @param hashKey
+	 * @param rangeKey  null for a table without range key
+	 */
+	public void createTable(String tableName, String hashKey, String rangeKey) {
+		tables.put(tableName, new LocalTable(hashKey, rangeKey));
+	}
+
+	@Override
+	public PutItemResult putItem(PutItemRequest request) {
+		faultInjector.call("PutItem");
+		table(request.getTableName()).put(request.getItem());
+		PutItemResult result = new PutItemResult();
+		result.setSdkHttpMetadata(LocalSQS.ok());
+		return result;
+	}
+
+	@Override
+	public GetItemResult getItem(GetItemRequest request) {
+		faultInjector.call("GetItem");
+		GetItemResult result = new GetItemResult().withItem(table(request.getTableName()).get(request.getKey()));
+		result.setSdkHttpMetadata(LocalSQS.ok());
+		return result;
+	}
+
+	@Override
+	public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+		faultInjector.call("BatchWriteItem");
+		for (Map.Entry<String, List<WriteRequest>> requestItems : request.getRequestItems().entrySet()) {
+			LocalTable table = table(requestItems.getKey());
+			for (WriteRequest writeRequest : requestItems.getValue()) {
+				table.put(writeRequest.getPutRequest().getItem());
+			}
+		}
+		BatchWriteItemResult result = new BatchWriteItemResult()
+				.withUnprocessedItems(new HashMap<String, List<WriteRequest>>());
+		result.setSdkHttpMetadata(LocalSQS.ok());
+		return result;
+	}
+
+	@Override
+	public BatchGetItemResult batchGetItem(BatchGetItemRequest request) {
+		faultInjector.call("BatchGetItem");
+		Map<String, List<Map<String, AttributeValue>>> responses = new HashMap<String, List<Map<String, AttributeValue>>>();
+		for (Map.Entry<String, KeysAndAttributes> requestItems : request.getRequestItems().entrySet()) {
+			LocalTable table = table(requestItems.getKey());
+			List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+			for (Map<String, AttributeValue> key : requestItems.getValue().getKeys()) {
+				Map<String, AttributeValue> item = table.get(key);
+				if (item != null)
+					items.add(item);
+			}
+			responses.put(requestItems.getKey(), items);
+		}
+		BatchGetItemResult result = new BatchGetItemResult().withResponses(responses)
+				.withUnprocessedKeys(new HashMap<String, KeysAndAttributes>());
+		result.setSdkHttpMetadata(LocalSQS.ok());
+		return result;
+	}
+
+	/**
+	 * Returns the number of items of a table.
+	 *
+	 * @param tableName
+	 * @return
+	 */
+	public int getNumberOfItems(String tableName) {
+		return table(tableName).items.size();
+	}
+
+	private LocalTable table(String tableName) {
+		LocalTable table = tables.get(tableName);
+		if (table == null) {
+			AmazonServiceException exception = new AmazonServiceException(
+					"Requested resource not found: Table: " + tableName + " not found");
+			exception.setErrorCode("ResourceNotFoundException");
+			exception.setStatusCode(400);
+			throw exception;
+		}
+		return table;
+	}
+
+	private static class LocalTable {
+
+		private final String hashKey;
+		private final String rangeKey;
+		private final Map<List<String>, Map<String, AttributeValue>> items = new ConcurrentHashMap<List<String>, Map<String, AttributeValue>>();
+
+		LocalTable(String hashKey, String rangeKey) {
+			this.hashKey = hashKey;
+			this.rangeKey = rangeKey;
+		}
+
+		void put(Map<String, AttributeValue> item) {
+			items.put(primaryKey(item), new HashMap<String, AttributeValue>(item));
+		}
+
+		Map<String, AttributeValue> get(Map<String, AttributeValue> key) {
+			return items.get(primaryKey(key));
+		}
+
+		private List<String> primaryKey(Map<String, AttributeValue> item) {
+			return rangeKey == null ? Arrays.asList(value(item, hashKey))
+					: Arrays.asList(value(item, hashKey), value(item, rangeKey));
+		}
+
+		private static String value(Map<String, AttributeValue> item, String attributeName) {
+			AttributeValue value = item.get(attributeName);
+			if (value == null) {
+				AmazonServiceException exception = new AmazonServiceException(
+						"One of the required keys was not given a value: " + attributeName);
+				exception.setErrorCode("ValidationException");
+				exception.setStatusCode(400);
+				throw exception;
+			}
+			return value.getS() != null ? value.getS() : value.getN();
+		}
+	}
+}
@@ -0,0 +1,192 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.harness;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import com.amazonaws.services.glue.AbstractAWSGlue;
+import com.amazonaws.services.glue.model.BatchDeleteTableVersionRequest;
+import com.amazonaws.services.glue.model.BatchDeleteTableVersionResult;
+import com.amazonaws.services.glue.model.Database;
+import com.amazonaws.services.glue.model.EntityNotFoundException;
+import com.amazonaws.services.glue.model.ErrorDetail;
+import com.amazonaws.services.glue.model.GetDatabaseRequest;
+import com.amazonaws.services.glue.model.GetDatabaseResult;
+import com.amazonaws.services.glue.model.GetDatabasesRequest;
+import com.amazonaws.services.glue.model.GetDatabasesResult;
+import com.amazonaws.services.glue.model.GetTableRequest;
+import com.amazonaws.services.glue.model.GetTableResult;
+import com.amazonaws.services.glue.model.GetTableVersionsRequest;
+import com.amazonaws.services.glue.model.GetTableVersionsResult;
+import com.amazonaws.services.glue.model.GetTablesRequest;
+import com.amazonaws.services.glue.model.GetTablesResult;
+import com.amazonaws.services.glue.model.Table;
+import com.amazonaws.services.glue.model.TableVersion;
+import com.amazonaws.services.glue.model.TableVersionError;
+
+import software.aws.glue.tableversions.harness.SyntheticCatalog.SyntheticTable;
+
+/**
+ * This class is an in-process AWS Glue Data Catalog on a synthetic catalog. It
+ * implements the operations the planner and the cleanup Lambda call, with the
+ * page sizes of AWS Glue: 100 databases, tables or table versions per page.
+ *
+ * Besides the latency and throttling of the fault injector, a share of the
+ * versions in each BatchDeleteTableVersion request fails with a
+ * TableVersionError (InternalServiceException) and is not deleted.
+ */
+public class LocalGlue extends AbstractAWSGlue {
+
+	private static final int PAGE_SIZE = 100;
+
+	private final SyntheticCatalog catalog;
+	private final String catalogId;
+	private final FaultInjector faultInjector;
+	private final double versionErrorRate;
+	private final AtomicLong numberOfVersionsDeleted = new AtomicLong();
+	private final AtomicLong numberOfVersionErrors = new AtomicLong();
+
+	/**
+	 * @param catalog
+	 * @param catalogId        AWS account id of the catalog
+	 * @param faultInjector
+	 * @param versionErrorRate share of versions that fail to delete, 0 to 1
+	 */
+	public LocalGlue(SyntheticCatalog catalog, String catalogId, FaultInjector faultInjector,
+			double versionErrorRate) {
+		this.catalog = catalog;
+		this.catalogId = catalogId;
+		this.faultInjector = faultInjector;
+		this.versionErrorRate = versionErrorRate;
+	}
+
+	@Override
+	public GetDatabasesResult getDatabases(GetDatabasesRequest request) {
+		faultInjector.call("GetDatabases");
+		List<String> databaseNames = catalog.getDatabaseNames();
+		int from = pageStart(request.getNextToken());
+		int to = Math.min(databaseNames.size(), from + pageSize(request.getMaxResults()));
+		List<Database> databaseList = new ArrayList<Database>();
+		for (String databaseName : databaseNames.subList(from, to)) {
+			databaseList.add(new Database().withName(databaseName).withCatalogId(catalogId));
+		}
+		return new GetDatabasesResult().withDatabaseList(databaseList)
+				.withNextToken(to < databaseNames.size() ? Integer.toString(to) : null);
+	}
+
+	@Override
+	public GetDatabaseResult getDatabase(GetDatabaseRequest request) {
+		faultInjector.call("GetDatabase");
+		if (catalog.getTables(request.getName()) == null)
+			throw entityNotFound("Database " + request.getName() + " not found.");
+		return new GetDatabaseResult().withDatabase(new Database().withName(request.getName()).withCatalogId(catalogId));
+	}
+
+	@Override
+	public GetTablesResult getTables(GetTablesRequest request) {
+		faultInjector.call("GetTables");
+		List<SyntheticTable> tables = catalog.getTables(request.getDatabaseName());
+		if (tables == null)
+			throw entityNotFound("Database " + request.getDatabaseName() + " not found.");
+		Pattern expression = request.getExpression() == null ? null
+				: Pattern.compile(request.getExpression(), Pattern.CASE_INSENSITIVE);
+		int from = pageStart(request.getNextToken());
+		int to = Math.min(tables.size(), from + pageSize(request.getMaxResults()));
+		List<Table> tableList = new ArrayList<Table>();
+		for (SyntheticTable table : tables.subList(from, to)) {
+			if (expression == null || expression.matcher(table.getTableName()).matches())
+				tableList.add(table.toTable(table.getCurrentVersionId()));
+		}
+		return new GetTablesResult().withTableList(tableList)
+				.withNextToken(to < tables.size() ? Integer.toString(to) : null);
+	}
+
+	@Override
+	public GetTableResult getTable(GetTableRequest request) {
+		faultInjector.call("GetTable");
+		SyntheticTable table = getSyntheticTable(request.getDatabaseName(), request.getName());
+		return new GetTableResult().withTable(table.toTable(table.getCurrentVersionId()));
+	}
+
+	/**
+	 * Returns the versions of a table newest first. The next token is the
+	 * oldest version id of the page.
+	 */
+	@Override
+	public GetTableVersionsResult getTableVersions(GetTableVersionsRequest request) {
+		faultInjector.call("GetTableVersions");
+		SyntheticTable table = getSyntheticTable(request.getDatabaseName(), request.getTableName());
+		Integer belowVersionId = Optional.ofNullable(request.getNextToken()).map(Integer::valueOf).orElse(null);
+		int pageSize = pageSize(request.getMaxResults());
+		List<Integer> versionIds = table.getVersionIds(belowVersionId, pageSize);
+		List<TableVersion> tableVersions = new ArrayList<TableVersion>(versionIds.size());
+		for (Integer versionId : versionIds) {
+			tableVersions.add(
+					new TableVersion().withVersionId(Integer.toString(versionId)).withTable(table.toTable(versionId)));
+		}
+		String nextToken = versionIds.size() == pageSize && versionIds.get(pageSize - 1) > 1
+				? Integer.toString(versionIds.get(pageSize - 1))
+				: null;
+		return new GetTableVersionsResult().withTableVersions(tableVersions).withNextToken(nextToken);
+	}
+
+	@Override
+	public BatchDeleteTableVersionResult batchDeleteTableVersion(BatchDeleteTableVersionRequest request) {
+		faultInjector.call("BatchDeleteTableVersion");
+		SyntheticTable table = getSyntheticTable(request.getDatabaseName(), request.getTableName());
+		List<TableVersionError> errors = new ArrayList<TableVersionError>();
+		for (String versionId : request.getVersionIds()) {
+			if (versionErrorRate > 0 && ThreadLocalRandom.current().nextDouble() < versionErrorRate) {
+				numberOfVersionErrors.incrementAndGet();
+				errors.add(versionError(table, versionId, "InternalServiceException", "Internal service error."));
+			} else if (table.deleteVersion(Integer.parseInt(versionId))) {
+				numberOfVersionsDeleted.incrementAndGet();
+			} else {
+				errors.add(versionError(table, versionId, "EntityNotFoundException", "Version not found."));
+			}
+		}
+		return new BatchDeleteTableVersionResult().withErrors(errors);
+	}
+
+	public long getNumberOfVersionsDeleted() {
+		return numberOfVersionsDeleted.get();
+	}
+
+	public long getNumberOfVersionErrors() {
+		return numberOfVersionErrors.get();
+	}
+
+	private SyntheticTable getSyntheticTable(String databaseName, String tableName) {
+		SyntheticTable table = catalog.getTable(databaseName, tableName);
+		if (table == null)
+			throw entityNotFound("Table " + tableName + " not found in database " + databaseName + ".");
+		return table;
+	}
+
+	private static TableVersionError versionError(SyntheticTable table, String versionId, String errorCode,
+			String errorMessage) {
+		return new TableVersionError().withTableName(table.getTableName()).withVersionId(versionId)
+				.withErrorDetail(new ErrorDetail().withErrorCode(errorCode).withErrorMessage(errorMessage));
+	}
+
+	private static EntityNotFoundException entityNotFound(String message) {
+		EntityNotFoundException exception = new EntityNotFoundException(message);
+		exception.setErrorCode("EntityNotFoundException");
+		exception.setStatusCode(400);
+		return exception;
+	}
+
+	private static int pageStart(String nextToken) {
+		return nextToken == null ? 0 : Integer.parseInt(nextToken);
+	}
+
+	private static int pageSize(Integer maxResults) {
+		return maxResults == null ? PAGE_SIZE : Math.min(maxResults, PAGE_SIZE);
+	}
+}
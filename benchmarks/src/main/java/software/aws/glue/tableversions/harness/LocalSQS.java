@@ -0,0 +1,191 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.harness;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import com.amazonaws.http.HttpResponse;
+import com.amazonaws.http.SdkHttpMetadata;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.MessageAttribute;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
+import com.amazonaws.services.sqs.AbstractAmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+
+/**
+ * This class is an in-process Amazon SQS FIFO queue. Messages are kept in the
+ * order they were sent, with their message attributes and message group id, and
+ * are received as the SQS messages of a Lambda event.
+ *
+ * As in a FIFO queue, the messages of a message group are not received while
+ * another receiver holds messages of the group; the receiver releases its
+ * messages when it is done. Messages that were not processed are returned to
+ * the head of their group, with an incremented ApproximateReceiveCount, until
+ * they were received maxReceiveCount times; they are then moved to the
+ * dead-letter list. The queue URL of a request is ignored.
+ */
+public class LocalSQS extends AbstractAmazonSQS {
+
+	private final FaultInjector faultInjector;
+	private final int maxReceiveCount;
+	private final Map<String, Deque<SQSMessage>> messageGroups = new LinkedHashMap<String, Deque<SQSMessage>>();
+	private final Set<String> lockedMessageGroups = new HashSet<String>();
+	private final List<SQSMessage> deadLetters = new ArrayList<SQSMessage>();
+	private int numberOfMessagesWaiting;
+	private int numberOfMessagesInFlight;
+	private long numberOfMessagesSent;
+
+	/**
+	 * @param faultInjector
+	 * @param maxReceiveCount receives of a message before it is dead-lettered
+	 */
+	public LocalSQS(FaultInjector faultInjector, int maxReceiveCount) {
+		this.faultInjector = faultInjector;
+		this.maxReceiveCount = maxReceiveCount;
+	}
+
+	@Override
+	public SendMessageResult sendMessage(SendMessageRequest request) {
+		faultInjector.call("SendMessage");
+		String messageId = enqueue(request.getMessageBody(), request.getMessageGroupId(),
+				request.getMessageAttributes());
+		SendMessageResult result = new SendMessageResult().withMessageId(messageId);
+		result.setSdkHttpMetadata(ok());
+		return result;
+	}
+
+	@Override
+	public SendMessageBatchResult sendMessageBatch(SendMessageBatchRequest request) {
+		faultInjector.call("SendMessageBatch");
+		List<SendMessageBatchResultEntry> successful = new ArrayList<SendMessageBatchResultEntry>();
+		for (SendMessageBatchRequestEntry entry : request.getEntries()) {
+			String messageId = enqueue(entry.getMessageBody(), entry.getMessageGroupId(),
+					entry.getMessageAttributes());
+			successful.add(new SendMessageBatchResultEntry().withId(entry.getId()).withMessageId(messageId));
+		}
+		SendMessageBatchResult result = new SendMessageBatchResult().withSuccessful(successful)
+				.withFailed(new ArrayList<BatchResultErrorEntry>());
+		result.setSdkHttpMetadata(ok());
+		return result;
+	}
+
+	/**
+	 * Receives up to maxMessages messages of message groups that no other
+	 * receiver holds, and locks their groups until they are released.
+	 *
+	 * @param maxMessages
+	 * @return
+	 */
+	public synchronized List<SQSMessage> receiveMessages(int maxMessages) {
+		List<SQSMessage> received = new ArrayList<SQSMessage>();
+		Iterator<Map.Entry<String, Deque<SQSMessage>>> groups = messageGroups.entrySet().iterator();
+		while (groups.hasNext() && received.size() < maxMessages) {
+			Map.Entry<String, Deque<SQSMessage>> group = groups.next();
+			if (lockedMessageGroups.contains(group.getKey()))
+				continue;
+			lockedMessageGroups.add(group.getKey());
+			while (!group.getValue().isEmpty() && received.size() < maxMessages) {
+				SQSMessage message = group.getValue().poll();
+				int receiveCount = Integer.parseInt(message.getAttributes().get("ApproximateReceiveCount")) + 1;
+				message.getAttributes().put("ApproximateReceiveCount", Integer.toString(receiveCount));
+				received.add(message);
+			}
+			if (group.getValue().isEmpty())
+				groups.remove();
+		}
+		numberOfMessagesWaiting -= received.size();
+		numberOfMessagesInFlight += received.size();
+		return received;
+	}
+
+	/**
+	 * Releases received messages and their message groups. The messages listed
+	 * as failed are returned to the queue or dead-lettered; the others are
+	 * deleted.
+	 *
+	 * @param received
+	 * @param failedMessageIds
+	 */
+	public synchronized void releaseMessages(List<SQSMessage> received, Set<String> failedMessageIds) {
+		// returned in reverse, so that the group keeps the order of its messages
+		for (int i = received.size() - 1; i >= 0; i--) {
+			SQSMessage message = received.get(i);
+			String messageGroupId = message.getAttributes().get("MessageGroupId");
+			lockedMessageGroups.remove(messageGroupId);
+			if (!failedMessageIds.contains(message.getMessageId()))
+				continue;
+			if (Integer.parseInt(message.getAttributes().get("ApproximateReceiveCount")) >= maxReceiveCount) {
+				deadLetters.add(message);
+			} else {
+				messageGroups.computeIfAbsent(messageGroupId, key -> new ArrayDeque<SQSMessage>()).addFirst(message);
+				numberOfMessagesWaiting++;
+			}
+		}
+		numberOfMessagesInFlight -= received.size();
+	}
+
+	/**
+	 * Returns true if no message is waiting or received.
+	 *
+	 * @return
+	 */
+	public synchronized boolean isDrained() {
+		return numberOfMessagesWaiting == 0 && numberOfMessagesInFlight == 0;
+	}
+
+	public synchronized long getNumberOfMessagesSent() {
+		return numberOfMessagesSent;
+	}
+
+	public synchronized List<SQSMessage> getDeadLetters() {
+		return new ArrayList<SQSMessage>(deadLetters);
+	}
+
+	private synchronized String enqueue(String body, String messageGroupId,
+			Map<String, MessageAttributeValue> messageAttributes) {
+		SQSMessage message = new SQSMessage();
+		message.setMessageId(UUID.randomUUID().toString());
+		message.setBody(body);
+		Map<String, String> attributes = new HashMap<String, String>();
+		attributes.put("MessageGroupId", messageGroupId);
+		attributes.put("ApproximateReceiveCount", "0");
+		message.setAttributes(attributes);
+		Map<String, MessageAttribute> eventAttributes = new HashMap<String, MessageAttribute>();
+		if (messageAttributes != null) {
+			for (Map.Entry<String, MessageAttributeValue> attribute : messageAttributes.entrySet()) {
+				MessageAttribute eventAttribute = new MessageAttribute();
+				eventAttribute.setDataType(attribute.getValue().getDataType());
+				eventAttribute.setStringValue(attribute.getValue().getStringValue());
+				eventAttributes.put(attribute.getKey(), eventAttribute);
+			}
+		}
+		message.setMessageAttributes(eventAttributes);
+		messageGroups.computeIfAbsent(messageGroupId, key -> new ArrayDeque<SQSMessage>()).add(message);
+		numberOfMessagesWaiting++;
+		numberOfMessagesSent++;
+		return message.getMessageId();
+	}
+
+	static SdkHttpMetadata ok() {
+		HttpResponse response = new HttpResponse(null, null);
+		response.setStatusCode(200);
+		return SdkHttpMetadata.from(response);
+	}
+}
@@ -0,0 +1,322 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.harness;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
+import com.google.common.primitives.Ints;
+
+import software.aws.glue.tableversions.benchmarks.TableVersionsFixture;
+import software.aws.glue.tableversions.lambda.SQSBatchResponse;
+import software.aws.glue.tableversions.lambda.SQSBatchResponse.BatchItemFailure;
+import software.aws.glue.tableversions.lambda.TableVersionsCleanupLambda;
+import software.aws.glue.tableversions.lambda.TableVersionsCleanupPlannerLambda;
+import software.aws.glue.tableversions.utils.AWSClientHolder;
+import software.aws.glue.tableversions.utils.TableState;
+
+/**
+ * This class runs the planner -> queue -> cleanup pipeline in process against
+ * local stand-ins of AWS Glue, Amazon SQS and Amazon DynamoDB, and reports its
+ * throughput: tables and table versions per second, API calls and peak heap.
+ *
+ * The planner runs once over a synthetic catalog. Its messages are then
+ * received in batches of harness_batch_size by harness_workers concurrent
+ * invocations of the cleanup Lambda, like an SQS event source mapping with
+ * that maximum concurrency, until the queue is drained. Continuation messages
+ * are received like any other message. With harness_runs above 1, the pipeline
+ * runs again over the cleaned up catalog, as the next scheduled run would; with
+ * table_state_ddb_table_name set, these runs show what the recorded table
+ * states save.
+ *
+ * The harness is configured with the environment variables harness_*; see
+ * README.md. The functions read their own environment variables as usual, with
+ * these restrictions: database_names_string_literal must be set, normally to
+ * an empty string for all synthetic databases; planner_shard_count must be 1,
+ * as planner shards are started through AWS Lambda.
+ */
+public final class PipelineHarness {
+
+	private static final String CATALOG_ID = "000000000000";
+
+	private PipelineHarness() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		int numberOfDatabases = Ints.tryParse(Optional.ofNullable(System.getenv("harness_databases")).orElse("10"));
+		int tablesPerDatabase = Ints
+				.tryParse(Optional.ofNullable(System.getenv("harness_tables_per_database")).orElse("100"));
+		int minVersions = Ints.tryParse(Optional.ofNullable(System.getenv("harness_min_versions")).orElse("10"));
+		int maxVersions = Ints.tryParse(Optional.ofNullable(System.getenv("harness_max_versions")).orElse("5000"));
+		int numberOfColumns = Ints.tryParse(Optional.ofNullable(System.getenv("harness_columns")).orElse("20"));
+		long seed = Long.parseLong(Optional.ofNullable(System.getenv("harness_seed")).orElse("42"));
+		long glueLatencyMillis = Long
+				.parseLong(Optional.ofNullable(System.getenv("harness_glue_latency_millis")).orElse("20"));
+		long sqsLatencyMillis = Long
+				.parseLong(Optional.ofNullable(System.getenv("harness_sqs_latency_millis")).orElse("10"));
+		long ddbLatencyMillis = Long
+				.parseLong(Optional.ofNullable(System.getenv("harness_ddb_latency_millis")).orElse("5"));
+		double glueThrottleRate = Double
+				.parseDouble(Optional.ofNullable(System.getenv("harness_glue_throttle_rate")).orElse("0.01"));
+		double versionErrorRate = Double
+				.parseDouble(Optional.ofNullable(System.getenv("harness_version_error_rate")).orElse("0.001"));
+		int numberOfWorkers = Ints.tryParse(Optional.ofNullable(System.getenv("harness_workers")).orElse("4"));
+		int batchSize = Ints.tryParse(Optional.ofNullable(System.getenv("harness_batch_size")).orElse("10"));
+		int maxReceiveCount = Ints
+				.tryParse(Optional.ofNullable(System.getenv("harness_max_receive_count")).orElse("5"));
+		long plannerTimeoutMillis = Long
+				.parseLong(Optional.ofNullable(System.getenv("harness_planner_timeout_millis")).orElse("900000"));
+		long workerTimeoutMillis = Long
+				.parseLong(Optional.ofNullable(System.getenv("harness_worker_timeout_millis")).orElse("900000"));
+		boolean verbose = Boolean.parseBoolean(Optional.ofNullable(System.getenv("harness_verbose")).orElse("false"));
+		int numberOfRuns = Ints.tryParse(Optional.ofNullable(System.getenv("harness_runs")).orElse("1"));
+		int numberofVersionsToRetain = Ints
+				.tryParse(Optional.ofNullable(System.getenv("number_of_versions_to_retain")).orElse("100"));
+
+		if (System.getenv("database_names_string_literal") == null)
+			throw new IllegalStateException(
+					"Set database_names_string_literal, e.g. to an empty string to plan all synthetic databases.");
+		if (System.getenv("sqs_queue_url") == null)
+			throw new IllegalStateException("Set sqs_queue_url, e.g. to 'local'; the local queue ignores it.");
+		if (Ints.tryParse(Optional.ofNullable(System.getenv("planner_shard_count")).orElse("1")) != 1)
+			throw new IllegalStateException("planner_shard_count must be 1; shards are started through AWS Lambda.");
+
+		SyntheticCatalog catalog = new SyntheticCatalog(numberOfDatabases, tablesPerDatabase, minVersions,
+				maxVersions, numberOfColumns, seed);
+		int tablesAboveRetention = catalog.getNumberOfTablesAbove(numberofVersionsToRetain);
+		FaultInjector glueFaults = new FaultInjector(glueLatencyMillis, glueThrottleRate);
+		FaultInjector sqsFaults = new FaultInjector(sqsLatencyMillis, 0);
+		FaultInjector ddbFaults = new FaultInjector(ddbLatencyMillis, 0);
+		LocalGlue glue = new LocalGlue(catalog, CATALOG_ID, glueFaults, versionErrorRate);
+		LocalSQS sqs = new LocalSQS(sqsFaults, maxReceiveCount);
+		LocalDynamoDB dynamoDB = new LocalDynamoDB(ddbFaults);
+		createTables(dynamoDB);
+		AWSClientHolder.overrideInstance(AWSClientHolder.withClients(glue, sqs, dynamoDB, CATALOG_ID));
+
+		System.out.println("Synthetic catalog: " + catalog);
+		System.out.printf("Tables above %d versions: %d \n", numberofVersionsToRetain, tablesAboveRetention);
+		System.out.printf("Latency (ms): AWS Glue %d, Amazon SQS %d, Amazon DynamoDB %d \n", glueLatencyMillis,
+				sqsLatencyMillis, ddbLatencyMillis);
+		System.out.printf("AWS Glue throttle rate: %.4f, table version error rate: %.4f \n", glueThrottleRate,
+				versionErrorRate);
+		System.out.printf("Cleanup Lambda: %d concurrent invocations, batch size %d \n", numberOfWorkers, batchSize);
+
+		HeapSampler heapSampler = new HeapSampler();
+		PrintStream systemOut = verbose ? System.out : TableVersionsFixture.silenceSystemOut();
+		long startNanos = System.nanoTime();
+		long plannerNanos = 0;
+		List<String> runSummaries = new ArrayList<String>();
+		WorkerPool workerPool = new WorkerPool(sqs, numberOfWorkers, batchSize, workerTimeoutMillis);
+		try {
+			heapSampler.start();
+			for (int run = 1; run <= numberOfRuns; run++) {
+				long runStartNanos = System.nanoTime();
+				long messagesBefore = sqs.getNumberOfMessagesSent();
+				long listingsBefore = glueFaults.getCallCounter().getCount("GetTableVersions");
+				new TableVersionsCleanupPlannerLambda().handleRequest(Collections.emptyMap(),
+						new LocalContext("table_versions_cleanup_planner", plannerTimeoutMillis));
+				long runPlannerNanos = System.nanoTime() - runStartNanos;
+				plannerNanos += runPlannerNanos;
+				workerPool.run();
+				runSummaries.add(String.format("Run %d: planner %.1f s, %d messages sent, cleanup %.1f s, %d GetTableVersions calls",
+						run, runPlannerNanos / 1e9, sqs.getNumberOfMessagesSent() - messagesBefore,
+						(System.nanoTime() - runStartNanos - runPlannerNanos) / 1e9,
+						glueFaults.getCallCounter().getCount("GetTableVersions") - listingsBefore));
+			}
+		} finally {
+			heapSampler.stop();
+			System.setOut(systemOut);
+			AWSClientHolder.overrideInstance(null);
+		}
+		long totalNanos = System.nanoTime() - startNanos;
+
+		double seconds = totalNanos / 1e9;
+		int tablesCleanedUp = catalog.getNumberOfTablesCleanedUp();
+		System.out.println();
+		if (numberOfRuns > 1)
+			runSummaries.forEach(System.out::println);
+		System.out.printf("Planner: %.1f s, %d messages sent \n", plannerNanos / 1e9, sqs.getNumberOfMessagesSent());
+		System.out.printf("Cleanup: %.1f s, %d invocations, %d invocation errors, %d batch item failures, %d dead letters \n",
+				(totalNanos - plannerNanos) / 1e9, workerPool.getNumberOfInvocations(),
+				workerPool.getNumberOfInvocationErrors(), workerPool.getNumberOfBatchItemFailures(),
+				sqs.getDeadLetters().size());
+		System.out.printf("Tables cleaned up: %d of %d (%.1f tables/s), still above %d versions: %d \n",
+				tablesCleanedUp, tablesAboveRetention, tablesCleanedUp / seconds, numberofVersionsToRetain,
+				catalog.getNumberOfTablesAbove(numberofVersionsToRetain));
+		System.out.printf("Table versions deleted: %d (%.1f versions/s), version errors injected: %d \n",
+				glue.getNumberOfVersionsDeleted(), glue.getNumberOfVersionsDeleted() / seconds,
+				glue.getNumberOfVersionErrors());
+		System.out.println("Synthetic catalog after cleanup: " + catalog);
+		System.out.printf("AWS Glue calls: %s, throttled: %d \n", glueFaults.getCallCounter(),
+				glueFaults.getNumberOfThrottles());
+		System.out.println("Amazon SQS calls: " + sqsFaults.getCallCounter());
+		System.out.println("Amazon DynamoDB calls: " + ddbFaults.getCallCounter());
+		System.out.printf("Heap (MB): %d before the run, %d peak, %d max \n", heapSampler.getBaselineBytes() >> 20,
+				heapSampler.getPeakBytes() >> 20, Runtime.getRuntime().maxMemory() >> 20);
+	}
+
+	/**
+	 * Creates the DynamoDB tables of both functions. Both read ddb_table_name,
+	 * hash_key and range_key; when they are not set, each function uses its own
+	 * default table. Both also share the table of table_state_ddb_table_name.
+	 */
+	private static void createTables(LocalDynamoDB dynamoDB) {
+		String tableStateTableName = Optional.ofNullable(System.getenv("table_state_ddb_table_name")).orElse("");
+		if (!tableStateTableName.isEmpty())
+			dynamoDB.createTable(tableStateTableName, TableState.HASH_KEY, null);
+		if (System.getenv("ddb_table_name") != null) {
+			dynamoDB.createTable(System.getenv("ddb_table_name"),
+					Optional.ofNullable(System.getenv("hash_key")).orElse("execution_batch_id"),
+					Optional.ofNullable(System.getenv("range_key")).orElse("database_name_table_name"));
+			return;
+		}
+		dynamoDB.createTable("glue_table_version_cleanup_planner",
+				Optional.ofNullable(System.getenv("hash_key")).orElse("execution_batch_id"),
+				Optional.ofNullable(System.getenv("range_key")).orElse("database_name_table_name"));
+		dynamoDB.createTable("glue_table_version_cleanup_statistics",
+				Optional.ofNullable(System.getenv("hash_key")).orElse("execution_id"),
+				Optional.ofNullable(System.getenv("range_key")).orElse("execution_batch_id"));
+	}
+
+	/**
+	 * Invokes the cleanup Lambda concurrently until the queue is drained. A
+	 * failed invocation returns all messages of its batch to the queue.
+	 */
+	private static class WorkerPool {
+
+		private final LocalSQS sqs;
+		private final int numberOfWorkers;
+		private final int batchSize;
+		private final long timeoutMillis;
+		private final AtomicInteger numberOfInvocations = new AtomicInteger();
+		private final AtomicInteger numberOfInvocationErrors = new AtomicInteger();
+		private final AtomicLong numberOfBatchItemFailures = new AtomicLong();
+
+		WorkerPool(LocalSQS sqs, int numberOfWorkers, int batchSize, long timeoutMillis) {
+			this.sqs = sqs;
+			this.numberOfWorkers = numberOfWorkers;
+			this.batchSize = batchSize;
+			this.timeoutMillis = timeoutMillis;
+		}
+
+		void run() throws Exception {
+			ExecutorService executor = Executors.newFixedThreadPool(numberOfWorkers);
+			List<Future<?>> workers = new ArrayList<Future<?>>();
+			for (int i = 0; i < numberOfWorkers; i++) {
+				workers.add(executor.submit(this::receiveUntilDrained));
+			}
+			for (Future<?> worker : workers) {
+				worker.get();
+			}
+			executor.shutdown();
+		}
+
+		private void receiveUntilDrained() {
+			TableVersionsCleanupLambda cleanupLambda = new TableVersionsCleanupLambda();
+			while (!sqs.isDrained()) {
+				List<SQSMessage> messages = sqs.receiveMessages(batchSize);
+				if (messages.isEmpty()) {
+					// the remaining message groups are held by other invocations
+					sleep(5);
+					continue;
+				}
+				SQSEvent event = new SQSEvent();
+				event.setRecords(messages);
+				Set<String> failedMessageIds = new HashSet<String>();
+				numberOfInvocations.incrementAndGet();
+				try {
+					SQSBatchResponse response = cleanupLambda.handleRequest(event,
+							new LocalContext("table_versions_cleanup", timeoutMillis));
+					for (BatchItemFailure failure : response.getBatchItemFailures()) {
+						failedMessageIds.add(failure.getItemIdentifier());
+					}
+					numberOfBatchItemFailures.addAndGet(failedMessageIds.size());
+				} catch (RuntimeException e) {
+					numberOfInvocationErrors.incrementAndGet();
+					for (SQSMessage message : messages) {
+						failedMessageIds.add(message.getMessageId());
+					}
+				} finally {
+					sqs.releaseMessages(messages, failedMessageIds);
+				}
+			}
+		}
+
+		int getNumberOfInvocations() {
+			return numberOfInvocations.get();
+		}
+
+		int getNumberOfInvocationErrors() {
+			return numberOfInvocationErrors.get();
+		}
+
+		long getNumberOfBatchItemFailures() {
+			return numberOfBatchItemFailures.get();
+		}
+	}
+
+	/**
+	 * Samples the used heap every 10 ms. The baseline is the heap after a full
+	 * GC before the run, i.e. mostly the synthetic catalog.
+	 */
+	private static class HeapSampler {
+
+		private final MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+		private final AtomicLong peakBytes = new AtomicLong();
+		private volatile boolean running;
+		private long baselineBytes;
+		private Thread thread;
+
+		void start() {
+			System.gc();
+			baselineBytes = memoryMXBean.getHeapMemoryUsage().getUsed();
+			running = true;
+			thread = new Thread(() -> {
+				while (running) {
+					peakBytes.accumulateAndGet(memoryMXBean.getHeapMemoryUsage().getUsed(), Math::max);
+					sleep(10);
+				}
+			}, "heap-sampler");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		void stop() throws InterruptedException {
+			running = false;
+			thread.join(TimeUnit.SECONDS.toMillis(1));
+		}
+
+		long getBaselineBytes() {
+			return baselineBytes;
+		}
+
+		long getPeakBytes() {
+			return peakBytes.get();
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting.", e);
+		}
+	}
+}
@@ -0,0 +1,240 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.harness;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.amazonaws.services.glue.model.Column;
+import com.amazonaws.services.glue.model.StorageDescriptor;
+import com.amazonaws.services.glue.model.Table;
+
+/**
+ * This class is a generated AWS Glue Data Catalog: databases named
+ * database_000, database_001, ... each with the same number of tables named
+ * table_00000, table_00001, ...
+ *
+ * The number of versions of a table is drawn between minVersions and
+ * maxVersions on a logarithmic scale, so that most tables are small and a few
+ * are large, as in real catalogs. Version ids are 1 to the number of versions
+ * and are kept as a bit set, so catalogs with millions of versions take little
+ * heap. All versions of a table share one column list of numberOfColumns
+ * columns. The same seed always generates the same catalog.
+ */
+public class SyntheticCatalog {
+
+	private final SortedMap<String, SortedMap<String, SyntheticTable>> databases = new TreeMap<String, SortedMap<String, SyntheticTable>>();
+	private final long initialNumberOfVersions;
+
+	/**
+	 * @param numberOfDatabases
+	 * @param tablesPerDatabase
+	 * @param minVersions       at least 1
+	 * @param maxVersions
+	 * @param numberOfColumns
+	 * @param seed
+	 */
+	public SyntheticCatalog(int numberOfDatabases, int tablesPerDatabase, int minVersions, int maxVersions,
+			int numberOfColumns, long seed) {
+		Random random = new Random(seed);
+		List<Column> columns = new ArrayList<Column>(numberOfColumns);
+		for (int i = 0; i < numberOfColumns; i++) {
+			columns.add(new Column().withName("column_" + i).withType(i % 3 == 0 ? "string" : "bigint"));
+		}
+		double logMin = Math.log(Math.max(1, minVersions));
+		double logMax = Math.log(Math.max(minVersions, maxVersions));
+		long numberOfVersions = 0;
+		for (int d = 0; d < numberOfDatabases; d++) {
+			String databaseName = String.format("database_%03d", d);
+			SortedMap<String, SyntheticTable> tables = new TreeMap<String, SyntheticTable>();
+			for (int t = 0; t < tablesPerDatabase; t++) {
+				String tableName = String.format("table_%05d", t);
+				int versions = (int) Math.round(Math.exp(logMin + random.nextDouble() * (logMax - logMin)));
+				tables.put(tableName, new SyntheticTable(databaseName, tableName, versions, columns));
+				numberOfVersions += versions;
+			}
+			databases.put(databaseName, tables);
+		}
+		this.initialNumberOfVersions = numberOfVersions;
+	}
+
+	public List<String> getDatabaseNames() {
+		return new ArrayList<String>(databases.keySet());
+	}
+
+	/**
+	 * Returns the tables of a database in the order of their names, or null if
+	 * there is no such database.
+	 *
+	 * @param databaseName
+	 * @return
+	 */
+	public List<SyntheticTable> getTables(String databaseName) {
+		SortedMap<String, SyntheticTable> tables = databases.get(databaseName);
+		return tables == null ? null : Collections.unmodifiableList(new ArrayList<SyntheticTable>(tables.values()));
+	}
+
+	/**
+	 * Returns a table, or null if there is no such table.
+	 *
+	 * @param databaseName
+	 * @param tableName
+	 * @return
+	 */
+	public SyntheticTable getTable(String databaseName, String tableName) {
+		SortedMap<String, SyntheticTable> tables = databases.get(databaseName);
+		return tables == null ? null : tables.get(tableName);
+	}
+
+	public long getInitialNumberOfVersions() {
+		return initialNumberOfVersions;
+	}
+
+	public int getNumberOfTables() {
+		int numberOfTables = 0;
+		for (SortedMap<String, SyntheticTable> tables : databases.values()) {
+			numberOfTables += tables.size();
+		}
+		return numberOfTables;
+	}
+
+	public long getNumberOfVersions() {
+		long numberOfVersions = 0;
+		for (SortedMap<String, SyntheticTable> tables : databases.values()) {
+			for (SyntheticTable table : tables.values()) {
+				numberOfVersions += table.getNumberOfVersions();
+			}
+		}
+		return numberOfVersions;
+	}
+
+	/**
+	 * Returns the number of tables with more than numberOfVersionsToRetain
+	 * versions, i.e. the tables a complete cleanup leaves none of.
+	 *
+	 * @param numberOfVersionsToRetain
+	 * @return
+	 */
+	public int getNumberOfTablesAbove(int numberOfVersionsToRetain) {
+		int numberOfTables = 0;
+		for (SortedMap<String, SyntheticTable> tables : databases.values()) {
+			for (SyntheticTable table : tables.values()) {
+				if (table.getNumberOfVersions() > numberOfVersionsToRetain)
+					numberOfTables++;
+			}
+		}
+		return numberOfTables;
+	}
+
+	/**
+	 * Returns the number of tables that lost at least one version.
+	 *
+	 * @return
+	 */
+	public int getNumberOfTablesCleanedUp() {
+		int numberOfTables = 0;
+		for (SortedMap<String, SyntheticTable> tables : databases.values()) {
+			for (SyntheticTable table : tables.values()) {
+				if (table.getNumberOfVersions() < table.getCurrentVersionId())
+					numberOfTables++;
+			}
+		}
+		return numberOfTables;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("databases=%d, tables=%d, versions=%d", databases.size(), getNumberOfTables(),
+				getNumberOfVersions());
+	}
+
+	/**
+	 * A table of the catalog and the ids of its remaining versions.
+	 */
+	public static class SyntheticTable {
+
+		private final String databaseName;
+		private final String tableName;
+		private final List<Column> columns;
+		private final int currentVersionId;
+		private final BitSet versionIds;
+		private int numberOfVersions;
+
+		SyntheticTable(String databaseName, String tableName, int numberOfVersions, List<Column> columns) {
+			this.databaseName = databaseName;
+			this.tableName = tableName;
+			this.columns = columns;
+			this.currentVersionId = numberOfVersions;
+			this.versionIds = new BitSet(numberOfVersions + 1);
+			this.versionIds.set(1, numberOfVersions + 1);
+			this.numberOfVersions = numberOfVersions;
+		}
+
+		public String getDatabaseName() {
+			return databaseName;
+		}
+
+		public String getTableName() {
+			return tableName;
+		}
+
+		public int getCurrentVersionId() {
+			return currentVersionId;
+		}
+
+		public synchronized int getNumberOfVersions() {
+			return numberOfVersions;
+		}
+
+		/**
+		 * Returns up to maxResults version ids below a version id, newest first.
+		 *
+		 * @param belowVersionId exclusive, or null for the newest versions
+		 * @param maxResults
+		 * @return
+		 */
+		public synchronized List<Integer> getVersionIds(Integer belowVersionId, int maxResults) {
+			List<Integer> page = new ArrayList<Integer>(Math.min(maxResults, numberOfVersions));
+			int versionId = versionIds.previousSetBit(belowVersionId == null ? currentVersionId : belowVersionId - 1);
+			while (versionId > 0 && page.size() < maxResults) {
+				page.add(versionId);
+				versionId = versionIds.previousSetBit(versionId - 1);
+			}
+			return page;
+		}
+
+		/**
+		 * Deletes a version. Returns false if there is no such version.
+		 *
+		 * @param versionId
+		 * @return
+		 */
+		public synchronized boolean deleteVersion(int versionId) {
+			if (versionId < 1 || !versionIds.get(versionId))
+				return false;
+			versionIds.clear(versionId);
+			numberOfVersions--;
+			return true;
+		}
+
+		/**
+		 * Returns the table as of a version, the way AWS Glue returns it.
+		 *
+		 * @param versionId
+		 * @return
+		 */
+		public Table toTable(int versionId) {
+			return new Table().withName(tableName).withDatabaseName(databaseName)
+					.withVersionId(Integer.toString(versionId)).withUpdateTime(new Date(versionId * 1000L))
+					.withStorageDescriptor(new StorageDescriptor().withColumns(columns)
+							.withLocation("s3://synthetic-bucket/" + databaseName + "/" + tableName + "/"));
+		}
+	}
+}
@@ -0,0 +1,214 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.services.glue.AWSGlue;
+import com.amazonaws.services.glue.model.Database;
+import com.google.common.primitives.Ints;
+
+import software.aws.glue.tableversions.lambda.TableVersionsCleanupPlannerLambda;
+import software.aws.glue.tableversions.utils.AWSClientHolder;
+import software.aws.glue.tableversions.utils.CatalogCrawler;
+import software.aws.glue.tableversions.utils.CatalogFilter;
+import software.aws.glue.tableversions.utils.DDBBatchWriter;
+import software.aws.glue.tableversions.utils.Deadline;
+import software.aws.glue.tableversions.utils.ExecutionIds;
+import software.aws.glue.tableversions.utils.ExecutorFactory;
+import software.aws.glue.tableversions.utils.GlueTable;
+import software.aws.glue.tableversions.utils.GlueUtil;
+import software.aws.glue.tableversions.utils.TableCleanupResult;
+import software.aws.glue.tableversions.utils.TableVersionsCleaner;
+
+/**
+ * This class sweeps the AWS Glue Data Catalog in a single JVM, without SQS and
+ * the cleanup Lambda. It crawls the databases like the planner does and cleans
+ * up every table right away on a work-stealing pool of table_concurrency
+ * threads, or on virtual threads when virtual_threads is true. It is meant to be run on an EC2 instance or in a container:
+ *
+ * java -cp glue-tableversions-cleanup-0.1.jar
+ * software.aws.glue.tableversions.batch.TableVersionsCleanupBatchRunner
+ *
+ * Concurrency is bounded per API: AWS Glue calls by the adaptive concurrency
+ * limiter (glue_max_concurrency), BatchDeleteTableVersion requests by
+ * delete_concurrency per table, DynamoDB writes by the batch writer, and any
+ * API listed in api_concurrency_limits by its limit.
+ * Configuration is read from the same environment variables as the Lambda
+ * functions.
+ */
+public class TableVersionsCleanupBatchRunner {
+
+	public static void main(String[] args) {
+
+		String separator = Optional.ofNullable(System.getenv("separator")).orElse("$");
+		String databaseNamesStringLiteral = Optional.ofNullable(System.getenv("database_names_string_literal"))
+				.orElse("");
+		String ddbTableName = Optional.ofNullable(System.getenv("ddb_table_name"))
+				.orElse("glue_table_version_cleanup_statistics");
+		String hashKey = Optional.ofNullable(System.getenv("hash_key")).orElse("execution_id");
+		String rangeKey = Optional.ofNullable(System.getenv("range_key")).orElse("execution_batch_id");
+		int numberofVersionsToRetain = Ints
+				.tryParse(Optional.ofNullable(System.getenv("number_of_versions_to_retain")).orElse("100"));
+		boolean streamingMode = Boolean
+				.parseBoolean(Optional.ofNullable(System.getenv("streaming_mode")).orElse("false"));
+		int crawlerParallelism = Ints
+				.tryParse(Optional.ofNullable(System.getenv("crawler_parallelism")).orElse("8"));
+		int tableConcurrency = Ints
+				.tryParse(Optional.ofNullable(System.getenv("table_concurrency")).orElse("32"));
+		int deleteConcurrency = Ints
+				.tryParse(Optional.ofNullable(System.getenv("delete_concurrency")).orElse("4"));
+		String tableStateTableName = Optional.ofNullable(System.getenv("table_state_ddb_table_name")).orElse("");
+		CatalogFilter catalogFilter = CatalogFilter.fromEnvironment();
+
+		if (numberofVersionsToRetain < 50)
+			throw new IllegalArgumentException("number_of_versions_to_retain must be at least 50.");
+
+		AWSClientHolder clients = AWSClientHolder.getInstance();
+		System.out.println("Region: " + clients.getRegion());
+		System.out.println("Number of table versions to retain: " + numberofVersionsToRetain);
+		System.out.println("DynamoDB Table to track statistics: " + ddbTableName);
+		System.out.println("DynamoDB Table to record table states: " + tableStateTableName);
+		System.out.println("Number of tables cleaned up concurrently: " + tableConcurrency);
+		System.out.println("BatchDeleteTableVersion requests in flight per table: " + deleteConcurrency);
+		System.out.println("Virtual threads: " + ExecutorFactory.isVirtualThreadsEnabled());
+
+		TableVersionsCleanupBatchRunner runner = new TableVersionsCleanupBatchRunner();
+		try {
+			runner.run(clients, databaseNamesStringLiteral, separator, catalogFilter, ddbTableName, hashKey,
+					rangeKey, numberofVersionsToRetain, streamingMode, crawlerParallelism, tableConcurrency,
+					deleteConcurrency, tableStateTableName);
+		} finally {
+			clients.getMetrics().flush("BatchRunner");
+		}
+	}
+
+	/**
+	 * This method crawls the catalog and cleans up all tables that can have more
+	 * versions than numberofVersionsToRetain. The state of every table is
+	 * recorded in tableStateTableName unless it is empty, so a sweep also
+	 * prepares the next planner run.
+	 */
+	public void run(AWSClientHolder clients, String databaseNamesStringLiteral, String separator,
+			CatalogFilter catalogFilter, String ddbTableName, String hashKey, String rangeKey,
+			int numberofVersionsToRetain, boolean streamingMode, int crawlerParallelism, int tableConcurrency,
+			int deleteConcurrency, String tableStateTableName) {
+
+		long startNanos = System.nanoTime();
+		String executionBatchId = Long.toString(System.currentTimeMillis());
+		String homeCatalogId = clients.getHomeCatalogId();
+		AWSGlue glue = clients.getGlueClient();
+		GlueUtil glueUtil = clients.getGlueUtil();
+
+		List<Database> databaseList;
+		CatalogCrawler catalogCrawler = new CatalogCrawler(glueUtil, glue, crawlerParallelism,
+				catalogFilter.getTablesExpression());
+		if (databaseNamesStringLiteral.equalsIgnoreCase("")) {
+			databaseList = glueUtil.getDatabases(glue, homeCatalogId);
+		} else {
+			databaseList = catalogCrawler.getDatabases(homeCatalogId,
+					TableVersionsCleanupPlannerLambda.tokenizeStrings(databaseNamesStringLiteral, separator));
+		}
+		List<Database> selectedDatabaseList = new ArrayList<Database>();
+		for (Database database : databaseList) {
+			if (catalogFilter.matchesDatabase(database.getName()))
+				selectedDatabaseList.add(database);
+		}
+
+		DDBBatchWriter statisticsWriter = new DDBBatchWriter(clients.getDynamoDBClient(), clients.getMetrics());
+		ExecutorService deleteExecutorService = ExecutorFactory.newCachedExecutorService("table-version-delete-%d");
+		TableVersionsCleaner tableVersionsCleaner = new TableVersionsCleaner(glueUtil, clients.getDdbUtil(), glue,
+				statisticsWriter, ddbTableName, hashKey, rangeKey, numberofVersionsToRetain, streamingMode,
+				deleteExecutorService, deleteConcurrency, tableStateTableName);
+
+		// Tables are handed to a work-stealing pool as they are crawled. The
+		// semaphore stops the crawl from queueing more tables than the pool can
+		// work on soon; with virtual threads it bounds the tables in progress.
+		ExecutorService tablePool = ExecutorFactory.newWorkStealingExecutorService(tableConcurrency,
+				"table-cleanup-%d");
+		int maxQueuedTables = Math.max(1, tableConcurrency) * (ExecutorFactory.isVirtualThreadsEnabled() ? 1 : 4);
+		Semaphore queuedTables = new Semaphore(maxQueuedTables);
+		AtomicInteger numberOfTablesSkipped = new AtomicInteger();
+		AtomicInteger numberOfTablesCleaned = new AtomicInteger();
+		AtomicInteger numberOfTablesFailed = new AtomicInteger();
+		AtomicLong numberOfVersionsDeleted = new AtomicLong();
+		AtomicLong numberOfVersionsNotDeleted = new AtomicLong();
+
+		int numberOfTablesFound;
+		try {
+			numberOfTablesFound = catalogCrawler.crawlTables(selectedDatabaseList, homeCatalogId, table -> {
+				if (!catalogFilter.matchesTable(table.getName())
+						|| !GlueUtil.canExceedRetention(table, numberofVersionsToRetain)) {
+					numberOfTablesSkipped.incrementAndGet();
+					return;
+				}
+				GlueTable glueTable = new GlueTable();
+				glueTable.setDatabaseName(table.getDatabaseName());
+				glueTable.setTableName(table.getName());
+
+				queuedTables.acquireUninterruptibly();
+				tablePool.execute(() -> {
+					try {
+						TableCleanupResult result = tableVersionsCleaner.cleanupTable(glueTable,
+								ExecutionIds.of(executionBatchId, glueTable.getDatabaseName(),
+										glueTable.getTableName()),
+								executionBatchId, Deadline.none());
+						numberOfTablesCleaned.incrementAndGet();
+						numberOfVersionsDeleted.addAndGet(result.getNumberOfVersionsDeleted());
+						numberOfVersionsNotDeleted.addAndGet(result.getVersionsNotDeleted().size());
+					} catch (RuntimeException e) {
+						numberOfTablesFailed.incrementAndGet();
+						System.out.printf("Table '%s' under database '%s' could not be cleaned up. %s \n",
+								glueTable.getTableName(), glueTable.getDatabaseName(), e.getLocalizedMessage());
+					} finally {
+						queuedTables.release();
+					}
+				});
+			});
+			tablePool.shutdown();
+			awaitTermination(tablePool, queuedTables, maxQueuedTables);
+		} finally {
+			tablePool.shutdownNow();
+			deleteExecutorService.shutdownNow();
+			statisticsWriter.flush();
+		}
+
+		double elapsedSeconds = Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+		System.out.println("======== Table versions cleanup summary ========");
+		System.out.println("Execution Batch Id: " + executionBatchId);
+		System.out.printf("Databases: %d, tables found: %d, skipped: %d, cleaned up: %d, failed: %d \n",
+				selectedDatabaseList.size(), numberOfTablesFound, numberOfTablesSkipped.get(),
+				numberOfTablesCleaned.get(), numberOfTablesFailed.get());
+		System.out.printf("Table versions deleted: %d, not deleted: %d \n", numberOfVersionsDeleted.get(),
+				numberOfVersionsNotDeleted.get());
+		System.out.printf("Elapsed time: %.1f s, tables per second: %.1f, versions deleted per second: %.1f \n",
+				elapsedSeconds, numberOfTablesCleaned.get() / elapsedSeconds,
+				numberOfVersionsDeleted.get() / elapsedSeconds);
+		System.out.printf("Items written to DynamoDB: %d in %d BatchWriteItem requests, failed items: %d \n",
+				statisticsWriter.getNumberOfItemsWritten(), statisticsWriter.getNumberOfRequests(),
+				statisticsWriter.getNumberOfItemsFailed());
+		System.out.println("AWS Glue concurrency limiter: " + clients.getGlueConcurrencyLimiter());
+		if (clients.getGlueRateLimiter().isEnabled())
+			System.out.println("AWS Glue rate limiter: " + clients.getGlueRateLimiter());
+	}
+
+	private static void awaitTermination(ExecutorService pool, Semaphore queuedTables, int maxQueuedTables) {
+		try {
+			while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+				System.out.printf("Waiting for %d tables to be cleaned up. \n",
+						maxQueuedTables - queuedTables.availablePermits());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for tables to be cleaned up.", e);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.lambda;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is the response of a Lambda function that reports partial batch
+ * failures for an SQS event source. Only the messages listed in
+ * batchItemFailures are made visible again on the queue; all other messages of
+ * the batch are deleted. The event source mapping must have
+ * ReportBatchItemFailures enabled in its function response types.
+ */
+public class SQSBatchResponse {
+
+	private List<BatchItemFailure> batchItemFailures = new ArrayList<BatchItemFailure>();
+
+	public SQSBatchResponse() {
+	}
+
+	public SQSBatchResponse(List<BatchItemFailure> batchItemFailures) {
+		this.batchItemFailures = batchItemFailures;
+	}
+
+	public List<BatchItemFailure> getBatchItemFailures() {
+		return batchItemFailures;
+	}
+
+	public void setBatchItemFailures(List<BatchItemFailure> batchItemFailures) {
+		this.batchItemFailures = batchItemFailures;
+	}
+
+	public static class BatchItemFailure {
+
+		private String itemIdentifier;
+
+		public BatchItemFailure() {
+		}
+
+		public BatchItemFailure(String itemIdentifier) {
+			this.itemIdentifier = itemIdentifier;
+		}
+
+		public String getItemIdentifier() {
+			return itemIdentifier;
+		}
+
+		public void setItemIdentifier(String itemIdentifier) {
+			this.itemIdentifier = itemIdentifier;
+		}
+	}
+}
@@ -0,0 +1,275 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.lambda;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.glue.AWSGlue;
+import com.amazonaws.services.glue.model.Table;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
+import com.google.common.primitives.Ints;
+
+import software.aws.glue.tableversions.lambda.SQSBatchResponse.BatchItemFailure;
+import software.aws.glue.tableversions.utils.AWSClientHolder;
+import software.aws.glue.tableversions.utils.CatalogFilter;
+import software.aws.glue.tableversions.utils.DDBBatchWriter;
+import software.aws.glue.tableversions.utils.Deadline;
+import software.aws.glue.tableversions.utils.ExecutionIds;
+import software.aws.glue.tableversions.utils.ExecutorFactory;
+import software.aws.glue.tableversions.utils.GlueTable;
+import software.aws.glue.tableversions.utils.GlueUtil;
+import software.aws.glue.tableversions.utils.TableChangeEvent;
+import software.aws.glue.tableversions.utils.TableCleanupResult;
+import software.aws.glue.tableversions.utils.TableVersionsCleaner;
+
+/**
+ * This class has AWS Lambda Handler method for incremental cleanup. Instead of
+ * sweeping the whole catalog, it cleans up only the tables that were changed.
+ * An Amazon EventBridge rule sends "Glue Data Catalog Table State Change"
+ * events to an SQS queue, and the queue triggers this function with a
+ * batching window, so the events of a time window arrive as one batch.
+ *
+ * The events of a batch are merged per table, so a table updated many times in
+ * the window is looked up and cleaned up once. A changed table is only cleaned
+ * up when its current version id has passed number_of_versions_to_retain; all
+ * other tables cost a single GetTable call. The number of AWS Glue calls thus
+ * follows the rate of change instead of the size of the catalog.
+ *
+ * A table that fails, or cannot be finished before the Lambda times out, fails
+ * the messages of its events; they are delivered again and the cleanup picks
+ * up from the versions that are left. The SQS trigger must have
+ * ReportBatchItemFailures enabled.
+ */
+public class TableChangeEventLambda implements RequestHandler<SQSEvent, SQSBatchResponse> {
+
+	private static final ExecutorService DELETE_EXECUTOR = ExecutorFactory
+			.newCachedExecutorService("table-version-delete-%d");
+	private static final ExecutorService TABLE_EXECUTOR = ExecutorFactory.newCachedExecutorService("changed-table-%d");
+
+	@Override
+	public SQSBatchResponse handleRequest(SQSEvent event, Context context) {
+		try {
+			return cleanupChangedTables(event, context);
+		} finally {
+			// metrics of the invocation are written as EMF for CloudWatch
+			AWSClientHolder.getInstance().getMetrics().flush("TableChangeEvent");
+		}
+	}
+
+	private SQSBatchResponse cleanupChangedTables(SQSEvent event, Context context) {
+
+		String ddbTableName = Optional.ofNullable(System.getenv("ddb_table_name"))
+				.orElse("glue_table_version_cleanup_statistics");
+		String hashKey = Optional.ofNullable(System.getenv("hash_key")).orElse("execution_id");
+		String rangeKey = Optional.ofNullable(System.getenv("range_key")).orElse("execution_batch_id");
+		int numberofVersionsToRetain = Ints
+				.tryParse(Optional.ofNullable(System.getenv("number_of_versions_to_retain")).orElse("100"));
+		boolean streamingMode = Boolean
+				.parseBoolean(Optional.ofNullable(System.getenv("streaming_mode")).orElse("false"));
+		int deleteConcurrency = Ints
+				.tryParse(Optional.ofNullable(System.getenv("delete_concurrency")).orElse("4"));
+		int tableConcurrency = Ints
+				.tryParse(Optional.ofNullable(System.getenv("table_concurrency")).orElse("8"));
+		long deadlineMarginMillis = Long
+				.parseLong(Optional.ofNullable(System.getenv("deadline_margin_millis")).orElse("60000"));
+		String tableStateTableName = Optional.ofNullable(System.getenv("table_state_ddb_table_name")).orElse("");
+		CatalogFilter catalogFilter = CatalogFilter.fromEnvironment();
+
+		if (numberofVersionsToRetain < 50)
+			throw new IllegalArgumentException("number_of_versions_to_retain must be at least 50.");
+
+		// No new deletes are started once less than deadlineMarginMillis are left, or
+		// half of the remaining time if that is less
+		Deadline deadline = Deadline.beforeTimeout(context.getRemainingTimeInMillis(), deadlineMarginMillis);
+
+		AWSClientHolder clients = AWSClientHolder.getInstance();
+		System.out.println("Region: " + clients.getRegion());
+		System.out.println("Number of table versions to retain: " + numberofVersionsToRetain);
+		System.out.println("DynamoDB Table to track statistics: " + ddbTableName);
+		System.out.println("DynamoDB Table to record table states: " + tableStateTableName);
+		System.out.println("Number of tables cleaned up concurrently: " + tableConcurrency);
+		System.out.println("Number of messages in SQS Event: " + event.getRecords().size());
+
+		SQSBatchResponse batchResponse = processEvent(clients.getGlueClient(), clients.getDynamoDBClient(),
+				event.getRecords(), catalogFilter, numberofVersionsToRetain, ddbTableName, hashKey, rangeKey,
+				streamingMode, deleteConcurrency, tableConcurrency, deadline, tableStateTableName);
+		System.out.println("AWS Glue concurrency limiter: " + clients.getGlueConcurrencyLimiter());
+		return batchResponse;
+	}
+
+	/**
+	 * This method merges the table change events of a batch per table and cleans
+	 * up the changed tables that can have more than numberofVersionsToRetain
+	 * versions, up to tableConcurrency tables at the same time. The clients are
+	 * passed in, so the method can be run against recorded events and a local
+	 * AWS Glue stand-in.
+	 *
+	 * @param glueClient
+	 * @param dynamoDBClient
+	 * @param sqsMessages
+	 * @param catalogFilter
+	 * @param numberofVersionsToRetain
+	 * @param dynamoDBTableName
+	 * @param hashKey
+	 * @param rangeKey
+	 * @param streamingMode
+	 * @param deleteConcurrency
+	 * @param tableConcurrency
+	 * @param deadline
+	 * @param tableStateTableName DynamoDB table to record the table states in;
+	 *                            empty to not record them
+	 * @return batch response listing the messages that failed
+	 */
+	public SQSBatchResponse processEvent(AWSGlue glueClient, AmazonDynamoDB dynamoDBClient,
+			List<SQSMessage> sqsMessages, CatalogFilter catalogFilter, int numberofVersionsToRetain,
+			String dynamoDBTableName, String hashKey, String rangeKey, boolean streamingMode, int deleteConcurrency,
+			int tableConcurrency, Deadline deadline, String tableStateTableName) {
+
+		AWSClientHolder clients = AWSClientHolder.getInstance();
+		GlueUtil glueUtil = clients.getGlueUtil();
+		String executionBatchId = Long.toString(System.currentTimeMillis());
+		Set<String> failedMessageIds = new LinkedHashSet<String>();
+
+		// merge the events per table; a table keeps the ids of the messages that
+		// named it, so its outcome can be reported on each of them
+		Map<String, ChangedTable> changedTables = new LinkedHashMap<String, ChangedTable>();
+		int numberOfEventsIgnored = 0;
+		for (SQSMessage sqsMessage : sqsMessages) {
+			TableChangeEvent changeEvent;
+			try {
+				changeEvent = TableChangeEvent.fromJson(sqsMessage.getBody());
+			} catch (RuntimeException e) {
+				System.out.printf("Message '%s' is not a table change event. %s \n", sqsMessage.getMessageId(),
+						e.getLocalizedMessage());
+				failedMessageIds.add(sqsMessage.getMessageId());
+				continue;
+			}
+			if (!changeEvent.isUpdateTable() || !catalogFilter.matchesDatabase(changeEvent.getDatabaseName())) {
+				numberOfEventsIgnored++;
+				continue;
+			}
+			for (String tableName : changeEvent.getTableNames()) {
+				if (!catalogFilter.matchesTable(tableName))
+					continue;
+				changedTables.computeIfAbsent(changeEvent.getDatabaseName() + "." + tableName,
+						key -> new ChangedTable(changeEvent.getDatabaseName(), tableName)).messageIds
+								.add(sqsMessage.getMessageId());
+			}
+		}
+		System.out.printf("Events: %d, ignored: %d, changed tables after merging: %d \n", sqsMessages.size(),
+				numberOfEventsIgnored, changedTables.size());
+
+		DDBBatchWriter statisticsWriter = new DDBBatchWriter(dynamoDBClient, glueUtil.getMetrics());
+		TableVersionsCleaner tableVersionsCleaner = new TableVersionsCleaner(glueUtil, clients.getDdbUtil(),
+				glueClient, statisticsWriter, dynamoDBTableName, hashKey, rangeKey, numberofVersionsToRetain,
+				streamingMode, DELETE_EXECUTOR, deleteConcurrency, tableStateTableName);
+		Semaphore tableSlots = new Semaphore(Math.max(1, tableConcurrency));
+		List<ChangedTable> tables = new ArrayList<ChangedTable>(changedTables.values());
+		List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+		int numberOfTablesCleaned = 0;
+
+		try {
+			for (ChangedTable changedTable : tables) {
+				tableSlots.acquireUninterruptibly();
+				try {
+					futures.add(TABLE_EXECUTOR.submit(() -> {
+						try {
+							return cleanupChangedTable(glueUtil, glueClient, tableVersionsCleaner, changedTable,
+									numberofVersionsToRetain, executionBatchId, deadline);
+						} finally {
+							tableSlots.release();
+						}
+					}));
+				} catch (RuntimeException e) {
+					tableSlots.release();
+					throw e;
+				}
+			}
+
+			for (int i = 0; i < futures.size(); i++) {
+				ChangedTable changedTable = tables.get(i);
+				try {
+					if (futures.get(i).get())
+						numberOfTablesCleaned++;
+				} catch (ExecutionException e) {
+					System.out.printf("Table '%s' under database '%s' could not be cleaned up. %s \n",
+							changedTable.tableName, changedTable.databaseName, e.getCause().getLocalizedMessage());
+					failedMessageIds.addAll(changedTable.messageIds);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Interrupted while waiting for tables to be cleaned up.", e);
+				}
+			}
+		} finally {
+			statisticsWriter.flush();
+		}
+
+		System.out.printf("Changed tables: %d, cleaned up: %d, messages failed: %d \n", tables.size(),
+				numberOfTablesCleaned, failedMessageIds.size());
+		List<BatchItemFailure> batchItemFailures = new ArrayList<BatchItemFailure>();
+		for (String messageId : failedMessageIds) {
+			batchItemFailures.add(new BatchItemFailure(messageId));
+		}
+		return new SQSBatchResponse(batchItemFailures);
+	}
+
+	/**
+	 * Clean up a changed table if its current version id has passed the number of
+	 * versions to retain. Throws if the cleanup is not complete, so the events of
+	 * the table are delivered again.
+	 *
+	 * @return true if the table was cleaned up, false if it was skipped
+	 */
+	private static boolean cleanupChangedTable(GlueUtil glueUtil, AWSGlue glueClient,
+			TableVersionsCleaner tableVersionsCleaner, ChangedTable changedTable, int numberofVersionsToRetain,
+			String executionBatchId, Deadline deadline) {
+		if (deadline.isExpired())
+			throw new RuntimeException("Deadline reached before the table was started.");
+		Table table = glueUtil.getTable(glueClient, changedTable.databaseName, changedTable.tableName);
+		if (table == null || Optional.ofNullable(table.getTargetTable()).isPresent()
+				|| !GlueUtil.canExceedRetention(table, numberofVersionsToRetain))
+			return false;
+
+		GlueTable glueTable = new GlueTable();
+		glueTable.setDatabaseName(changedTable.databaseName);
+		glueTable.setTableName(changedTable.tableName);
+		// the first event of the table identifies the cleanup across redeliveries
+		TableCleanupResult result = tableVersionsCleaner.cleanupTable(glueTable,
+				ExecutionIds.of(changedTable.messageIds.get(0), changedTable.databaseName, changedTable.tableName),
+				executionBatchId, deadline);
+		if (!result.isComplete())
+			throw new RuntimeException(String.format("Cleanup stopped by the deadline, versions left: %d.",
+					result.getNumberOfVersionsSkipped()));
+		return true;
+	}
+
+	/**
+	 * A table named by one or more events of a batch.
+	 */
+	private static class ChangedTable {
+
+		private final String databaseName;
+		private final String tableName;
+		private final List<String> messageIds = new ArrayList<String>();
+
+		ChangedTable(String databaseName, String tableName) {
+			this.databaseName = databaseName;
+			this.tableName = tableName;
+		}
+	}
+}
@@ -4,27 +4,38 @@
 package software.aws.glue.tableversions.lambda;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.glue.AWSGlue;
-import com.amazonaws.services.glue.AWSGlueClientBuilder;
-import com.amazonaws.services.glue.model.TableVersion;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.SQSEvent;
 import com.amazonaws.services.lambda.runtime.events.SQSEvent.MessageAttribute;
 import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
-import com.google.common.primitives.Ints;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.google.common.primitives.Longs;
 import com.google.gson.Gson;
 
-import software.aws.glue.tableversions.utils.DDBUtil;
+import software.aws.glue.tableversions.lambda.SQSBatchResponse.BatchItemFailure;
+import software.aws.glue.tableversions.utils.AWSClientHolder;
+import software.aws.glue.tableversions.utils.DDBBatchWriter;
+import software.aws.glue.tableversions.utils.Deadline;
+import software.aws.glue.tableversions.utils.ExecutionIds;
+import software.aws.glue.tableversions.utils.ExecutorFactory;
 import software.aws.glue.tableversions.utils.GlueTable;
-import software.aws.glue.tableversions.utils.GlueUtil;
+import software.aws.glue.tableversions.utils.GlueTablePack;
+import software.aws.glue.tableversions.utils.SQSUtil;
+import software.aws.glue.tableversions.utils.TableCleanupResult;
 import software.aws.glue.tableversions.utils.TableVersionStatus;
+import software.aws.glue.tableversions.utils.TableVersionsCleaner;
 
 /**
  * This class has AWS Lambda Handler method. Upon invocation, it gets an event
@@ -35,110 +46,352 @@ import software.aws.glue.tableversions.utils.TableVersionStatus;
  * versions to retains 4. Delete old table versions 5. Insert a record into
  * DynamoDB table with the statistics
  * 
+ * Messages are processed concurrently. Messages that fail are returned as
+ * batch item failures, so the SQS trigger must have ReportBatchItemFailures
+ * enabled. Tables that cannot be finished before the Lambda times out are sent
+ * to the queue again and continue where the cleanup stopped.
+ * 
+ * A message may carry several small tables packed by the planner. Their
+ * outcome is tracked per table; tables that did not finish are sent to the
+ * queue again in one message, and a table that keeps failing is sent alone.
+ * 
  * @author Ravi Itha, Amazon Web Services, Inc.
  *
  */
-public class TableVersionsCleanupLambda implements RequestHandler<SQSEvent, Object> {
+public class TableVersionsCleanupLambda implements RequestHandler<SQSEvent, SQSBatchResponse> {
+
+	// Shared by all invocations of a container; threads are daemon or virtual
+	// threads so they never keep the JVM alive.
+	private static final ExecutorService DELETE_EXECUTOR = ExecutorFactory
+			.newCachedExecutorService("table-version-delete-%d");
+	private static final ExecutorService MESSAGE_EXECUTOR = ExecutorFactory.newCachedExecutorService("sqs-message-%d");
+
+	private static final int MAX_TABLE_FAILURES = 3;
 
 	@Override
-	public String handleRequest(SQSEvent event, Context context) {
+	public SQSBatchResponse handleRequest(SQSEvent event, Context context) {
+		try {
+			return cleanup(event, context);
+		} finally {
+			// metrics of the invocation are written as EMF for CloudWatch
+			AWSClientHolder.getInstance().getMetrics().flush("Cleanup");
+		}
+	}
+
+	private SQSBatchResponse cleanup(SQSEvent event, Context context) {
 
 		String region = Optional.ofNullable(System.getenv("region")).orElse("us-east-1");
-		String ddbTableName = Optional.ofNullable(System.getenv("ddb_table_name"))
-				.orElse("glue_table_version_cleanup_statistics");
-		String hashKey = Optional.ofNullable(System.getenv("hash_key")).orElse("execution_id");
-		String rangeKey = Optional.ofNullable(System.getenv("range_key")).orElse("execution_batch_id");
-		int numberofVersionsToRetain = Ints
-				.tryParse(Optional.ofNullable(System.getenv("number_of_versions_to_retain")).orElse("100"));
+		TableVersionsCleanupSettings settings = TableVersionsCleanupSettings.fromEnvironment();
+		long deadlineMarginMillis = Long
+				.parseLong(Optional.ofNullable(System.getenv("deadline_margin_millis")).orElse("60000"));
+
+		// continuations go to the queue the messages came from, which has no default
+		if (settings.getSqsQueueURI().isEmpty())
+			throw new IllegalArgumentException("sqs_queue_url must be set to the URL of the cleanup queue.");
+
+		// No new deletes are started once less than deadlineMarginMillis are left, or
+		// half of the remaining time if that is less
+		Deadline deadline = Deadline.beforeTimeout(context.getRemainingTimeInMillis(), deadlineMarginMillis);
 
 		System.out.println("Region: " + region);
-		System.out.println("Number of table versions to retain: " + numberofVersionsToRetain);
-		System.out.println("DynamoDB Table to track statistics: " + ddbTableName);
+		System.out.println("Number of table versions to retain: " + settings.getNumberofVersionsToRetain());
+		System.out.println("DynamoDB Table to track statistics: " + settings.getDynamoDBTableName());
+		System.out.println("DynamoDB Table to record table states: " + settings.getTableStateTableName());
+		System.out.println("Streaming mode: " + settings.isStreamingMode());
+		System.out.println("BatchDeleteTableVersion requests in flight per table: " + settings.getDeleteConcurrency());
+		System.out.println("Number of SQS messages processed concurrently: " + settings.getMessageConcurrency());
+		System.out.println("SQS URL for continuation messages: " + settings.getSqsQueueURI());
+		System.out.println("Virtual threads: " + ExecutorFactory.isVirtualThreadsEnabled());
+		System.out.println("Time left for new deletes (ms): " + deadline.getRemainingMillis());
 
-		AWSGlue glueClient = AWSGlueClientBuilder.standard().withRegion(region).build();
-		AmazonDynamoDB dynamoDBClient = AmazonDynamoDBClientBuilder.standard().withRegion(region).build();
+		// Clients, serializer and utilities are created once per container
+		AWSClientHolder clients = AWSClientHolder.getInstance();
+		AWSGlue glueClient = clients.getGlueClient();
+		AmazonDynamoDB dynamoDBClient = clients.getDynamoDBClient();
+		AmazonSQS sqs = clients.getSqsClient();
 
-		if (numberofVersionsToRetain < 50) {
+		SQSBatchResponse batchResponse;
+		if (settings.getNumberofVersionsToRetain() < 50) {
 			throw new RuntimeException();
 		} else {
 			System.out.println("Number of messages in SQS Event: " + event.getRecords().size());
 			List<SQSMessage> sqsMessages = event.getRecords();
-			processEvent(glueClient, dynamoDBClient, sqsMessages, numberofVersionsToRetain, ddbTableName, hashKey,
-					rangeKey);
+			batchResponse = processEvent(glueClient, dynamoDBClient, sqs, sqsMessages, settings, deadline);
 		}
-		return "SNS event to Lambda processed successfully!";
+		System.out.println("AWS Glue concurrency limiter: " + clients.getGlueConcurrencyLimiter());
+		if (clients.getGlueRateLimiter().isEnabled())
+			System.out.println("AWS Glue rate limiter: " + clients.getGlueRateLimiter());
+		return batchResponse;
 	}
 
 	/**
-	 * This method processes SQS event
+	 * This method processes SQS event. Up to messageConcurrency messages are
+	 * processed at the same time; a message that fails does not affect the other
+	 * messages of the event and is reported back in the batch response so that
+	 * only this message is delivered again.
+	 * 
+	 * When the deadline is reached, no further deletes are started. A table that
+	 * still has versions to delete is sent to the queue again as a continuation
+	 * message, and messages that were not started are reported as failed.
 	 * 
 	 * @param glueClient
 	 * @param dynamoDBClient
+	 * @param sqs
 	 * @param sqsMessages
-	 * @param numberofVersionsToRetain
-	 * @param dynamoDBTableName
-	 * @param primaryPartKey
-	 * @param primarySortKey
+	 * @param settings
+	 * @param deadline
+	 * @return batch response listing the messages that failed
 	 */
-	public void processEvent(AWSGlue glueClient, AmazonDynamoDB dynamoDBClient, List<SQSMessage> sqsMessages,
-			int numberofVersionsToRetain, String dynamoDBTableName, String hashKey, String rangeKey) {
-
-		DDBUtil ddbUtil = new DDBUtil();
-		GlueUtil glueUtil = new GlueUtil();
-		List<TableVersionStatus> tblVersionsNotDeletedMasterList = new ArrayList<TableVersionStatus>();
-
-		for (SQSMessage sqsMessage : sqsMessages) {
-			long executionId = System.currentTimeMillis();
-			// get Execution Batch Id from Message Attributes
-			String executionBatchId = "";
-			for (Entry<String, MessageAttribute> entry : sqsMessage.getMessageAttributes().entrySet()) {
-				if ("ExecutionBatchId".equalsIgnoreCase(entry.getKey())) {
-					executionBatchId = entry.getValue().getStringValue();
-					System.out.println("Execution Batch Id: " + executionBatchId);
+	public SQSBatchResponse processEvent(AWSGlue glueClient, AmazonDynamoDB dynamoDBClient, AmazonSQS sqs,
+			List<SQSMessage> sqsMessages, TableVersionsCleanupSettings settings, Deadline deadline) {
+
+		AWSClientHolder clients = AWSClientHolder.getInstance();
+		SQSUtil sqsUtil = clients.getSqsUtil();
+		Gson gson = clients.getGson();
+		DDBBatchWriter statisticsWriter = new DDBBatchWriter(dynamoDBClient, clients.getMetrics());
+		TableVersionsCleaner tableVersionsCleaner = new TableVersionsCleaner(clients.getGlueUtil(),
+				clients.getDdbUtil(), glueClient, statisticsWriter, settings.getDynamoDBTableName(),
+				settings.getHashKey(), settings.getRangeKey(), settings.getNumberofVersionsToRetain(),
+				settings.isStreamingMode(), DELETE_EXECUTOR, settings.getDeleteConcurrency(),
+				settings.getTableStateTableName());
+		String sqsQueueURI = settings.getSqsQueueURI();
+		List<TableVersionStatus> tblVersionsNotDeletedMasterList = Collections
+				.synchronizedList(new ArrayList<TableVersionStatus>());
+		Semaphore messageSlots = new Semaphore(Math.max(1, settings.getMessageConcurrency()));
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		List<BatchItemFailure> batchItemFailures = new ArrayList<BatchItemFailure>();
+
+		try {
+			for (SQSMessage sqsMessage : sqsMessages) {
+				messageSlots.acquireUninterruptibly();
+				try {
+					futures.add(MESSAGE_EXECUTOR.submit(() -> {
+						try {
+							tblVersionsNotDeletedMasterList.addAll(processMessage(tableVersionsCleaner, sqsUtil, gson,
+									sqs, sqsQueueURI, sqsMessage, deadline));
+						} finally {
+							messageSlots.release();
+						}
+					}));
+				} catch (RuntimeException e) {
+					messageSlots.release();
+					throw e;
 				}
 			}
 
-			// de-serialize SQS message to GlueTable
-			Gson gson = new Gson();
-			String message = new String(sqsMessage.getBody());
-			GlueTable glueTable = gson.fromJson(message, GlueTable.class);
-			System.out.printf("Process event for table '%s' under database '%s' \n", glueTable.getTableName(),
-					glueTable.getDatabaseName());
+			for (int i = 0; i < futures.size(); i++) {
+				String messageId = sqsMessages.get(i).getMessageId();
+				try {
+					futures.get(i).get();
+				} catch (ExecutionException e) {
+					System.out.printf("Message '%s' could not be processed. %s \n", messageId,
+							e.getCause().getLocalizedMessage());
+					batchItemFailures.add(new BatchItemFailure(messageId));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Interrupted while waiting for SQS messages to be processed.", e);
+				}
+			}
+		} finally {
+			statisticsWriter.flush();
+		}
 
-			// get table versions
-			List<TableVersion> tableVersionList = glueUtil.getTableVersions(glueClient, glueTable.getTableName(),
-					glueTable.getDatabaseName());
+		System.out.printf("Messages processed: %d, messages failed: %d, table versions not deleted: %d \n",
+				sqsMessages.size() - batchItemFailures.size(), batchItemFailures.size(),
+				tblVersionsNotDeletedMasterList.size());
+		return new SQSBatchResponse(batchItemFailures);
+	}
+
+	/**
+	 * This method processes one SQS message: it cleans up the table named in the
+	 * message and, if the deadline stopped the cleanup, sends a continuation
+	 * message for the rest of the table.
+	 * 
+	 * @return list of table versions that could not be deleted
+	 */
+	private List<TableVersionStatus> processMessage(TableVersionsCleaner tableVersionsCleaner, SQSUtil sqsUtil,
+			Gson gson, AmazonSQS sqs, String sqsQueueURI, SQSMessage sqsMessage, Deadline deadline) {
 
-			if (tableVersionList.size() > numberofVersionsToRetain) {
-				// identify the versions that are older than numberofVersionsToRetain
-				List<List<Integer>> lists = glueUtil.determineOldVersions(tableVersionList, glueTable.getTableName(),
-						glueTable.getDatabaseName(), numberofVersionsToRetain);
-				List<Integer> versionsToKeep = lists.get(0);
-				List<Integer> versionsToDelete = lists.get(1);
+		String executionBatchId = getExecutionBatchId(sqsMessage);
 
-				System.out.printf("For table '%s', versions to be deleted: %d, versions to be retaind: %d \n",
-						glueTable.getTableName(), versionsToDelete.size(), versionsToKeep.size());
+		// de-serialize SQS message to a GlueTable or a pack of GlueTables
+		String message = new String(sqsMessage.getBody());
+		GlueTablePack tablePack = GlueTablePack.fromJson(gson, message);
+		GlueTable glueTable = tablePack.getTables().get(0);
 
-				// delete older versions
-				List<TableVersionStatus> tblVersionsNotDeletedList = glueUtil.deleteTableVersions(glueClient,
-						versionsToDelete, glueTable.getTableName(), glueTable.getDatabaseName());
+		// A message that is not started before the deadline is left to SQS
+		if (deadline.isExpired())
+			throw new RuntimeException(String.format("Deadline reached before table '%s' under database '%s' was started.",
+					glueTable.getTableName(), glueTable.getDatabaseName()));
+		if (tablePack.isPacked())
+			return processTablePack(tableVersionsCleaner, sqsUtil, gson, sqs, sqsQueueURI, sqsMessage, tablePack,
+					executionBatchId, deadline);
 
-				int numTableVersionsB4Cleanup = tableVersionList.size();
-				int numDeletedVersions = versionsToDelete.size() - tblVersionsNotDeletedList.size();
+		System.out.printf("Process event for table '%s' under database '%s' \n", glueTable.getTableName(),
+				glueTable.getDatabaseName());
+		TableCleanupResult result = tableVersionsCleaner.cleanupTable(glueTable,
+				executionIdOf(sqsMessage, glueTable), executionBatchId, deadline);
+		if (!result.isComplete())
+			requeueTable(sqsUtil, gson, sqs, sqsQueueURI, sqsMessage, glueTable, result, executionBatchId);
+		return result.getVersionsNotDeleted();
+	}
 
-				boolean itemInserted = ddbUtil.insertCleanupStatusToDynamoDB(dynamoDBClient, dynamoDBTableName, hashKey,
-						rangeKey, executionId, executionBatchId, glueTable.getDatabaseName(), glueTable.getTableName(),
-						numTableVersionsB4Cleanup, versionsToKeep.size(), numDeletedVersions);
+	/**
+	 * This method processes a message that carries several tables. The tables are
+	 * cleaned up one after another, and the outcome is tracked per table: tables
+	 * that failed, were stopped by the deadline or were not started are sent to
+	 * the queue again in one message, so the message itself succeeds. A table
+	 * that failed MAX_TABLE_FAILURES times is sent alone in its own message
+	 * instead; its failures then fail only that message, which the redrive
+	 * policy of the queue moves to the dead-letter queue without the healthy
+	 * tables.
+	 * 
+	 * The isolated tables are sent first, and one that cannot be sent alone goes
+	 * with the other tables. The message fails only if the other tables cannot
+	 * be sent; as that is the last message sent, a message delivered again has
+	 * requeued nothing but the isolated tables.
+	 * 
+	 * @return list of table versions that could not be deleted
+	 */
+	private List<TableVersionStatus> processTablePack(TableVersionsCleaner tableVersionsCleaner, SQSUtil sqsUtil,
+			Gson gson, AmazonSQS sqs, String sqsQueueURI, SQSMessage sqsMessage, GlueTablePack tablePack,
+			String executionBatchId, Deadline deadline) {
 
-				if (tblVersionsNotDeletedList.size() == 0)
-					System.out.printf("Older versions of table '%s' under database '%s' were deleted. \n",
-							glueTable.getTableName(), glueTable.getDatabaseName());
+		System.out.printf("Process event for %d tables \n", tablePack.getTables().size());
+		List<TableVersionStatus> tblVersionsNotDeletedList = new ArrayList<TableVersionStatus>();
+		List<GlueTable> tablesToRequeue = new ArrayList<GlueTable>();
+		List<GlueTable> tablesToIsolate = new ArrayList<GlueTable>();
+		for (GlueTable glueTable : tablePack.getTables()) {
+			if (deadline.isExpired()) {
+				tablesToRequeue.add(notStarted(glueTable));
+				continue;
+			}
+			System.out.printf("Process event for table '%s' under database '%s' \n", glueTable.getTableName(),
+					glueTable.getDatabaseName());
+			try {
+				TableCleanupResult result = tableVersionsCleaner.cleanupTable(glueTable,
+						executionIdOf(sqsMessage, glueTable), executionBatchId, deadline);
+				tblVersionsNotDeletedList.addAll(result.getVersionsNotDeleted());
+				if (!result.isComplete())
+					tablesToRequeue.add(continuationOf(glueTable, result));
+			} catch (RuntimeException e) {
+				GlueTable failedTable = failed(glueTable, e);
+				if (failedTable.getFailureCount() >= MAX_TABLE_FAILURES)
+					tablesToIsolate.add(failedTable);
 				else
-					tblVersionsNotDeletedMasterList.addAll(tblVersionsNotDeletedList);
-			} else {
-				System.out.printf("Table '%s' does not have more than %d versions. Skipping. \n",
-						glueTable.getTableName(), numberofVersionsToRetain);
+					tablesToRequeue.add(failedTable);
+			}
+		}
+		int numberOfTablesIsolated = 0;
+		for (GlueTable glueTable : tablesToIsolate) {
+			if (!sqsUtil.sendTableSchemaToSQSQueue(sqs, sqsQueueURI, gson.toJson(glueTable),
+					originalExecutionBatchId(executionBatchId), messageGroupIdOf(sqsMessage, glueTable))) {
+				System.out.printf("Table '%s' under database '%s' could not be sent in its own message. \n",
+						glueTable.getTableName(), glueTable.getDatabaseName());
+				tablesToRequeue.add(glueTable);
+				continue;
+			}
+			numberOfTablesIsolated++;
+			System.out.printf("Table '%s' under database '%s' failed %d times and was sent in its own message. \n",
+					glueTable.getTableName(), glueTable.getDatabaseName(), glueTable.getFailureCount());
+		}
+		if (!tablesToRequeue.isEmpty()
+				&& !sqsUtil.sendTableSchemaToSQSQueue(sqs, sqsQueueURI, new GlueTablePack(tablesToRequeue).toJson(gson),
+						originalExecutionBatchId(executionBatchId), messageGroupIdOf(sqsMessage, tablesToRequeue.get(0))))
+			throw new RuntimeException(String.format("%d tables of the message could not be requeued.",
+					tablesToRequeue.size()));
+		printTablePackOutcome(tablePack, tablesToRequeue.size() + numberOfTablesIsolated);
+		return tblVersionsNotDeletedList;
+	}
+
+	/**
+	 * This method sends a continuation message for a table whose cleanup was
+	 * stopped by the deadline. The continuation carries where the cleanup
+	 * stopped, so it neither lists nor deletes the finished versions again. It is
+	 * sent to the message group of the original message, and its body differs
+	 * from the original by the continuation count, so content-based deduplication
+	 * does not drop it. If the message cannot be sent, the original message fails
+	 * and is delivered again.
+	 */
+	private void requeueTable(SQSUtil sqsUtil, Gson gson, AmazonSQS sqs, String sqsQueueURI, SQSMessage sqsMessage,
+			GlueTable glueTable, TableCleanupResult result, String executionBatchId) {
+
+		if (!sqsUtil.sendTableSchemaToSQSQueue(sqs, sqsQueueURI, gson.toJson(continuationOf(glueTable, result)),
+				originalExecutionBatchId(executionBatchId), messageGroupIdOf(sqsMessage, glueTable)))
+			throw new RuntimeException(String.format("Continuation of table '%s' under database '%s' could not be sent.",
+					glueTable.getTableName(), glueTable.getDatabaseName()));
+		System.out.printf("Table '%s' under database '%s' requeued: %d versions older than %d are left, listing complete: %b \n",
+				glueTable.getTableName(), glueTable.getDatabaseName(), result.getNumberOfVersionsSkipped(),
+				result.getDeleteVersionsOlderThan(), result.getTableVersionsNextToken() == null);
+	}
+
+	/**
+	 * Returns the Execution Batch Id from the message attributes.
+	 */
+	private static String getExecutionBatchId(SQSMessage sqsMessage) {
+		String executionBatchId = "";
+		for (Entry<String, MessageAttribute> entry : sqsMessage.getMessageAttributes().entrySet()) {
+			if ("ExecutionBatchId".equalsIgnoreCase(entry.getKey())) {
+				executionBatchId = entry.getValue().getStringValue();
+				System.out.println("Execution Batch Id: " + executionBatchId);
 			}
 		}
+		return executionBatchId;
+	}
+
+	/**
+	 * Returns the execution id of the statistics item of a table, unique per
+	 * message and table; see {@link ExecutionIds}.
+	 */
+	private static long executionIdOf(SQSMessage sqsMessage, GlueTable glueTable) {
+		return ExecutionIds.of(sqsMessage.getMessageId(), glueTable.getDatabaseName(), glueTable.getTableName());
+	}
+
+	private static GlueTable continuationOf(GlueTable glueTable, TableCleanupResult result) {
+		GlueTable continuation = new GlueTable();
+		continuation.setDatabaseName(glueTable.getDatabaseName());
+		continuation.setTableName(glueTable.getTableName());
+		continuation.setDeleteVersionsOlderThan(result.getDeleteVersionsOlderThan());
+		continuation.setDeleteVersionsFrom(result.getDeleteVersionsFrom());
+		continuation.setDeleteVersionsTo(result.getDeleteVersionsTo());
+		continuation.setTableVersionsNextToken(result.getTableVersionsNextToken());
+		continuation.setContinuationCount(glueTable.getContinuationCount() + 1);
+		continuation.setEstimatedVersionsToDelete(result.getNumberOfVersionsSkipped());
+		return continuation;
+	}
+
+	/**
+	 * Returns a table that was not started to be sent again. The continuation
+	 * count changes the message body, so content-based deduplication does not
+	 * drop the message.
+	 */
+	private static GlueTable notStarted(GlueTable glueTable) {
+		glueTable.setContinuationCount(glueTable.getContinuationCount() + 1);
+		return glueTable;
+	}
+
+	/**
+	 * Returns a table whose cleanup failed to be sent again, with its failure
+	 * count increased.
+	 */
+	private static GlueTable failed(GlueTable glueTable, Throwable error) {
+		System.out.printf("Table '%s' under database '%s' could not be cleaned up. %s \n", glueTable.getTableName(),
+				glueTable.getDatabaseName(), error.getLocalizedMessage());
+		glueTable.setFailureCount(glueTable.getFailureCount() + 1);
+		return glueTable;
+	}
+
+	private static void printTablePackOutcome(GlueTablePack tablePack, int numberOfTablesRequeued) {
+		System.out.printf("Tables of the message finished: %d, requeued: %d \n",
+				tablePack.getTables().size() - numberOfTablesRequeued, numberOfTablesRequeued);
+	}
+
+	private static String messageGroupIdOf(SQSMessage sqsMessage, GlueTable glueTable) {
+		return Optional.ofNullable(sqsMessage.getAttributes()).map(attributes -> attributes.get("MessageGroupId"))
+				.orElse(glueTable.getDatabaseName());
+	}
+
+	private static long originalExecutionBatchId(String executionBatchId) {
+		return Optional.ofNullable(Longs.tryParse(executionBatchId)).orElse(System.currentTimeMillis());
 	}
-}
\ No newline at end of file
+}
@@ -3,36 +3,49 @@
 
 package software.aws.glue.tableversions.lambda;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.StringTokenizer;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.glue.AWSGlue;
-import com.amazonaws.services.glue.AWSGlueClientBuilder;
 import com.amazonaws.services.glue.model.Database;
-import com.amazonaws.services.glue.model.Table;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
-import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
-import com.amazonaws.services.securitytoken.AWSSecurityTokenServiceClientBuilder;
-import com.amazonaws.services.securitytoken.model.GetCallerIdentityRequest;
-import com.amazonaws.services.securitytoken.model.GetCallerIdentityResult;
 import com.amazonaws.services.sqs.AmazonSQS;
-import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
 import com.google.gson.Gson;
 
+import software.aws.glue.tableversions.utils.AWSClientHolder;
+import software.aws.glue.tableversions.utils.CatalogCrawler;
+import software.aws.glue.tableversions.utils.CatalogFilter;
+import software.aws.glue.tableversions.utils.DDBBatchWriter;
 import software.aws.glue.tableversions.utils.DDBUtil;
+import software.aws.glue.tableversions.utils.Deadline;
 import software.aws.glue.tableversions.utils.GlueTable;
+import software.aws.glue.tableversions.utils.GlueTablePack;
 import software.aws.glue.tableversions.utils.GlueUtil;
+import software.aws.glue.tableversions.utils.MakespanEstimator;
+import software.aws.glue.tableversions.utils.MessageGroupScheduler;
+import software.aws.glue.tableversions.utils.MessageGroupStrategy;
+import software.aws.glue.tableversions.utils.PlannerCheckpoint;
+import software.aws.glue.tableversions.utils.PlannerCheckpointWriter;
+import software.aws.glue.tableversions.utils.SQSBatchPublisher;
 import software.aws.glue.tableversions.utils.SQSUtil;
+import software.aws.glue.tableversions.utils.TableMessagePacker;
+import software.aws.glue.tableversions.utils.TablePlanner;
 
 /**
  * This class has AWS Lambda Handler method. Upon invocation, it takes the
@@ -40,85 +53,330 @@ import software.aws.glue.tableversions.utils.SQSUtil;
  * database, fetches all of its tables 3. for each table, it publishes table
  * and database names to SQS queue.
  * 
+ * Large catalogs can be split into planner_shard_count shards: the scheduled
+ * invocation then starts one asynchronous invocation per shard, and each shard
+ * plans the databases whose name hashes to it. A shard checkpoints the
+ * databases and pages of tables it has planned to DynamoDB and, when it runs
+ * short of time, invokes itself to continue from the checkpoint.
+ * 
+ * Databases are crawled continuously, crawler_parallelism at a time and at
+ * most that many ahead of the first database that is not planned. A
+ * {@link TablePlanner} plans the pages of tables in the order of the database
+ * names, so the planned tables are always a prefix of the shard whose next
+ * database and page can be written as checkpoint; a continuation never
+ * publishes a planned table again.
+ * 
  * @author Ravi Itha, Amazon Web Services, Inc.
  *
  */
 public class TableVersionsCleanupPlannerLambda implements RequestHandler<Object, String> {
 
+	// a checkpoint flushes the messages of all message groups, so it is not
+	// written after every database
+	private static final long CHECKPOINT_INTERVAL_MILLIS = 10000;
+	// planned tables are held until the next checkpoint to be published in
+	// order of their message groups; a checkpoint is written earlier once this
+	// many are held
+	private static final int MAX_TABLES_PER_CHECKPOINT = 10000;
+
 	@Override
 	public String handleRequest(Object input, Context context) {
+		try {
+			return plan(input, context);
+		} finally {
+			// metrics of the invocation are written as EMF for CloudWatch
+			AWSClientHolder.getInstance().getMetrics().flush("Planner");
+		}
+	}
+
+	private String plan(Object input, Context context) {
 
 		String separator = Optional.ofNullable(System.getenv("separator")).orElse("$");
 		String region = Optional.ofNullable(System.getenv("region")).orElse(Regions.US_EAST_1.getName());
 		String databaseNamesStringLiteral = Optional.ofNullable(System.getenv("database_names_string_literal"))
 				.orElse("database_1$database_2");
-		String sqsQueueURI = Optional.ofNullable(System.getenv("sqs_queue_url"))
-				.orElse("https://sqs.us-east-1.amazonaws.com/1234567890/table_versions_cleanup_planner_queue.fifo");
+		String sqsQueueURI = Optional.ofNullable(System.getenv("sqs_queue_url")).orElse("");
 		String ddbTableName = Optional.ofNullable(System.getenv("ddb_table_name"))
 				.orElse("glue_table_version_cleanup_planner");
 		String hashKey = Optional.ofNullable(System.getenv("hash_key")).orElse("execution_batch_id");
 		String rangeKey = Optional.ofNullable(System.getenv("range_key")).orElse("database_name_table_name");
+		int crawlerParallelism = Ints
+				.tryParse(Optional.ofNullable(System.getenv("crawler_parallelism")).orElse("8"));
+		int sqsMaxRetries = Ints.tryParse(Optional.ofNullable(System.getenv("sqs_max_retries")).orElse("3"));
+		int numberofVersionsToRetain = Ints
+				.tryParse(Optional.ofNullable(System.getenv("number_of_versions_to_retain")).orElse("100"));
+		int messageGroupShards = Ints
+				.tryParse(Optional.ofNullable(System.getenv("message_group_shards")).orElse("1"));
+		String messageGroupShardsPerDatabase = Optional
+				.ofNullable(System.getenv("message_group_shards_per_database")).orElse("");
+		int plannerShardCount = Ints
+				.tryParse(Optional.ofNullable(System.getenv("planner_shard_count")).orElse("1"));
+		long deadlineMarginMillis = Long
+				.parseLong(Optional.ofNullable(System.getenv("deadline_margin_millis")).orElse("120000"));
+		int cleanupConcurrency = Ints
+				.tryParse(Optional.ofNullable(System.getenv("cleanup_concurrency")).orElse("10"));
+		int messageCostBudget = Ints
+				.tryParse(Optional.ofNullable(System.getenv("message_cost_budget")).orElse("1000"));
+		int maxTablesPerMessage = Ints
+				.tryParse(Optional.ofNullable(System.getenv("max_tables_per_message")).orElse("50"));
+		String tableStateTableName = Optional.ofNullable(System.getenv("table_state_ddb_table_name")).orElse("");
+		CatalogFilter catalogFilter = CatalogFilter.fromEnvironment();
 
-		long executionBatchId = System.currentTimeMillis();
+		// the queue has no default, so tables are never sent to a queue of another
+		// account
+		if (sqsQueueURI.isEmpty())
+			throw new IllegalArgumentException("sqs_queue_url must be set to the URL of the cleanup queue.");
 
-		AWSSecurityTokenService client = AWSSecurityTokenServiceClientBuilder.standard().build();
-		GetCallerIdentityRequest request = new GetCallerIdentityRequest();
-		GetCallerIdentityResult response = client.getCallerIdentity(request);
-		String homeCatalogId = response.getAccount();
+		// A scheduled invocation starts a new execution batch. Shards and
+		// continuations receive the execution batch id and their shard in the input.
+		Map<?, ?> inputMap = input instanceof Map ? (Map<?, ?>) input : Collections.emptyMap();
+		Long inputExecutionBatchId = getLong(inputMap, "execution_batch_id");
+		Long inputShardIndex = getLong(inputMap, "shard_index");
+		long executionBatchId = Optional.ofNullable(inputExecutionBatchId).orElse(System.currentTimeMillis());
+		int shardCount = Optional.ofNullable(getLong(inputMap, "shard_count")).map(Long::intValue)
+				.orElse(plannerShardCount);
+		int shardIndex = Optional.ofNullable(inputShardIndex).map(Long::intValue).orElse(0);
+
+		// No new database is started once less than deadlineMarginMillis are left, or
+		// half of the remaining time if that is less
+		Deadline deadline = Deadline.beforeTimeout(context.getRemainingTimeInMillis(), deadlineMarginMillis);
+
+		// Clients, serializer and utilities are created once per container
+		AWSClientHolder clients = AWSClientHolder.getInstance();
+		String homeCatalogId = clients.getHomeCatalogId();
 		context.getLogger().log("Catalog Id: " + homeCatalogId);
 
 		context.getLogger().log("Input: " + input);
 		printEnvVariables(sqsQueueURI, databaseNamesStringLiteral, separator, region, ddbTableName, hashKey, rangeKey);
+		System.out.println("Number of databases crawled in parallel: " + crawlerParallelism);
+		System.out.println("Number of table versions to retain: " + numberofVersionsToRetain);
+		System.out.println("Number of message groups per database: " + messageGroupShards);
+		System.out.println("Number of message groups by database: " + messageGroupShardsPerDatabase);
+		System.out.printf("Execution Batch Id: %d, planner shard %d of %d \n", executionBatchId, shardIndex,
+				shardCount);
+		System.out.println("GetTables expression: " + catalogFilter.getTablesExpression());
+		System.out.println("Number of tables cleaned up concurrently (for the makespan estimate): " + cleanupConcurrency);
+		System.out.printf("Tables are packed into messages up to %d versions to delete and %d tables \n",
+				messageCostBudget, maxTablesPerMessage);
+		System.out.println("DynamoDB Table to read table states: " + tableStateTableName);
+
+		Gson gson = clients.getGson();
+		if (inputShardIndex == null && shardCount > 1) {
+			// Start one planner per shard; each shard plans its own databases
+			for (int i = 0; i < shardCount; i++) {
+				if (!invokePlanner(clients, gson, context, executionBatchId, i, shardCount, 0))
+					throw new RuntimeException("Planner shard " + i + " could not be started.");
+			}
+			System.out.printf("%d planner shards started for Execution Batch Id %d \n", shardCount,
+					executionBatchId);
+			return "TableVersionsCleanupPlannerLambda started " + shardCount + " planner shards!";
+		}
 
-		// Create objects for AWS Glue and Amazon SQS
-		AWSGlue glue = AWSGlueClientBuilder.standard().withRegion(region).build();
-		AmazonSQS sqs = AmazonSQSClientBuilder.standard().withRegion(region).build();
-		AmazonDynamoDB dynamoDBClient = AmazonDynamoDBClientBuilder.standard().withRegion(region).build();
+		AWSGlue glue = clients.getGlueClient();
+		AmazonSQS sqs = clients.getSqsClient();
+		AmazonDynamoDB dynamoDBClient = clients.getDynamoDBClient();
 
-		DDBUtil ddbUtil = new DDBUtil();
-		SQSUtil sqsUtil = new SQSUtil();
-		GlueUtil glueUtil = new GlueUtil();
+		DDBUtil ddbUtil = clients.getDdbUtil();
+		SQSUtil sqsUtil = clients.getSqsUtil();
+		GlueUtil glueUtil = clients.getGlueUtil();
 		List<String> databaseNames = new ArrayList<String>();
 		List<Database> databaseList = new ArrayList<Database>();
-		AtomicInteger numberOfTablesExported = new AtomicInteger();
+
+		// A shard that continues an execution batch resumes after its checkpoint
+		PlannerCheckpoint checkpoint = null;
+		if (inputExecutionBatchId != null)
+			checkpoint = ddbUtil.getPlannerCheckpointFromDynamoDB(dynamoDBClient, ddbTableName, hashKey, rangeKey,
+					executionBatchId, shardIndex);
+		if (checkpoint != null && checkpoint.isCompleted()) {
+			System.out.printf("Planner shard %d of Execution Batch Id %d is already completed. \n", shardIndex,
+					executionBatchId);
+			return "TableVersionsCleanupPlannerLambda completed successfully!";
+		}
+		int continuationCount = Optional.ofNullable(getLong(inputMap, "continuation_count")).map(Long::intValue)
+				.orElse(0);
 
 		// When list of databases are provided as a token separated values then the
 		// cleanup process will be initiated for those databases.
 		// else, it imports the cleanup process will be initiated for all databases
 
+		CatalogCrawler catalogCrawler = new CatalogCrawler(glueUtil, glue, crawlerParallelism,
+				catalogFilter.getTablesExpression());
 		if (databaseNamesStringLiteral.equalsIgnoreCase("")) {
 			databaseList = glueUtil.getDatabases(glue, homeCatalogId);
 		} else {
 			databaseNames = tokenizeStrings(databaseNamesStringLiteral, separator);
-			for (String databaseName : databaseNames) {
-				Database database = glueUtil.getDatabase(glue, homeCatalogId, databaseName);
-				if (Optional.ofNullable(database).isPresent())
-					databaseList.add(database);
-			}
+			databaseList = catalogCrawler.getDatabases(homeCatalogId, databaseNames);
 		}
 
-		List<Table> tableList = glueUtil.getTables(glue, databaseList, homeCatalogId);
-		for (Table table : tableList) {
-			GlueTable tableMessage = new GlueTable();
-			tableMessage.setDatabaseName(table.getDatabaseName());
-			tableMessage.setTableName(table.getName());
-
-			Gson gson = new Gson();
-			String message = gson.toJson(tableMessage);
-
-			// Write a message to Amazon SQS queue.
-			boolean messageSentToSQS = sqsUtil.sendTableSchemaToSQSQueue(sqs, sqsQueueURI, message, executionBatchId, table.getDatabaseName());
-			if (messageSentToSQS) {
-				String messageSentTime = new Date().toString();
-				numberOfTablesExported.incrementAndGet();
-				ddbUtil.insertTableDetailsToDynamoDB(dynamoDBClient, ddbTableName, hashKey, rangeKey, executionBatchId,
-						table.getDatabaseName(), table.getName(), messageSentTime);
-			}
+		String nextDatabase = checkpoint == null ? null : checkpoint.getNextDatabase();
+		List<Database> shardDatabaseList = getShardDatabases(databaseList, catalogFilter, shardIndex, shardCount,
+				nextDatabase);
+		System.out.printf("Number of databases to plan in this invocation: %d (resuming at '%s') \n",
+				shardDatabaseList.size(), Optional.ofNullable(nextDatabase).orElse(""));
+		// the NextToken only applies if the database of the checkpoint still exists
+		String tablesNextToken = !shardDatabaseList.isEmpty()
+				&& shardDatabaseList.get(0).getName().equals(nextDatabase) ? checkpoint.getTablesNextToken() : null;
+
+		DDBBatchWriter trackingWriter = new DDBBatchWriter(dynamoDBClient, clients.getMetrics());
+
+		// Messages are sent in batches of up to 10. For every message that is
+		// delivered, the tables of the message are tracked in DynamoDB.
+		AtomicInteger numberOfTablesExported = new AtomicInteger();
+		AtomicInteger numberOfMessagesSent = new AtomicInteger();
+		SQSBatchPublisher<GlueTablePack> sqsPublisher = new SQSBatchPublisher<GlueTablePack>(sqsUtil, sqs,
+				sqsQueueURI, sqsMaxRetries, (tablePack, messageSentToSQS) -> {
+					if (messageSentToSQS) {
+						String messageSentTime = new Date().toString();
+						numberOfMessagesSent.incrementAndGet();
+						for (GlueTable tableMessage : tablePack.getTables()) {
+							numberOfTablesExported.incrementAndGet();
+							ddbUtil.insertTableDetailsToDynamoDB(trackingWriter, ddbTableName, hashKey, rangeKey,
+									executionBatchId, tableMessage.getDatabaseName(), tableMessage.getTableName(),
+									messageSentTime);
+						}
+					}
+				});
+
+		MakespanEstimator makespanEstimator = new MakespanEstimator(cleanupConcurrency);
+		// Small tables are packed into one message per message group; a pack is
+		// scheduled as one unit of work.
+		TableMessagePacker messagePacker = new TableMessagePacker(messageCostBudget, maxTablesPerMessage,
+				(tablePack, messageGroupId) -> {
+					makespanEstimator.add(tablePack.getEstimatedVersionsToDelete(), messageGroupId);
+					// Write a message to Amazon SQS queue.
+					sqsPublisher.publish(tablePack, tablePack.toJson(gson), executionBatchId, messageGroupId);
+				});
+		// Tables planned between two checkpoints are published message group by
+		// message group, the group with the most versions to delete first, so the
+		// longest chains of FIFO messages do not start last and decide the run time.
+		MessageGroupScheduler messageGroupScheduler = new MessageGroupScheduler(messagePacker);
+		// Tables of a database are spread over message groups so that they can be
+		// cleaned up concurrently; a table is always assigned the same group.
+		TablePlanner tablePlanner = new TablePlanner(shardDatabaseList, tablesNextToken, catalogFilter,
+				numberofVersionsToRetain, ddbUtil, dynamoDBClient, tableStateTableName,
+				MessageGroupStrategy.fromConfig(messageGroupShards, messageGroupShardsPerDatabase, separator),
+				messageGroupScheduler);
+		// Everything planned so far is published and tracked before a checkpoint is
+		// written
+		PlannerCheckpointWriter checkpointWriter = new PlannerCheckpointWriter(ddbUtil, dynamoDBClient, ddbTableName,
+				hashKey, rangeKey, executionBatchId, shardIndex, continuationCount, () -> {
+					messageGroupScheduler.flush();
+					sqsPublisher.flush();
+					trackingWriter.flush();
+				});
+
+		int numberOfTablesFound = crawlShard(catalogCrawler, shardDatabaseList, homeCatalogId, tablePlanner,
+				messageGroupScheduler, checkpointWriter, deadline);
+		if (!tablePlanner.isCompleted()) {
+			System.out.printf("Deadline reached; %d databases are left for the next invocation. \n",
+					shardDatabaseList.size() - tablePlanner.getNumberOfDatabasesPlanned());
+			if (!invokePlanner(clients, gson, context, executionBatchId, shardIndex, shardCount,
+					continuationCount + 1))
+				throw new RuntimeException("Planner continuation could not be started.");
 		}
-		System.out.printf("Number of messages written to SQS Queue: %d \n", numberOfTablesExported.get());
+		System.out.printf("Number of tables found in %d databases: %d \n", tablePlanner.getNumberOfDatabasesPlanned(),
+				numberOfTablesFound);
+		System.out.printf("Number of tables excluded by table patterns: %d \n",
+				tablePlanner.getNumberOfTablesFiltered());
+		System.out.printf("Number of tables skipped as their version id is not above %d: %d \n",
+				numberofVersionsToRetain, tablePlanner.getNumberOfTablesSkipped());
+		System.out.printf("Number of tables skipped as they cannot have gained more than %d versions since their last cleanup: %d \n",
+				numberofVersionsToRetain, tablePlanner.getNumberOfTablesUnchanged());
+		System.out.printf("Number of tables written to SQS Queue: %d in %d messages and %d SendMessageBatch requests \n",
+				numberOfTablesExported.get(), numberOfMessagesSent.get(), sqsPublisher.getNumberOfBatchesSent());
+		System.out.printf("Number of items written to DynamoDB: %d in %d BatchWriteItem requests, failed items: %d \n",
+				trackingWriter.getNumberOfItemsWritten(), trackingWriter.getNumberOfRequests(),
+				trackingWriter.getNumberOfItemsFailed());
+		System.out.println("Predicted schedule per message group: " + makespanEstimator);
+		System.out.println("AWS Glue concurrency limiter: " + clients.getGlueConcurrencyLimiter());
 		return "TableVersionsCleanupPlannerLambda completed successfully!";
 	}
 
+	/**
+	 * This method returns the databases of a planner shard in the order of their
+	 * names, starting at the next database of the checkpoint. A database named
+	 * twice is planned once.
+	 * 
+	 * @return
+	 */
+	private static List<Database> getShardDatabases(List<Database> databaseList, CatalogFilter catalogFilter,
+			int shardIndex, int shardCount, String nextDatabase) {
+		Map<String, Database> shardDatabases = new TreeMap<String, Database>();
+		for (Database database : databaseList) {
+			if (catalogFilter.matchesDatabase(database.getName())
+					&& isInShard(database.getName(), shardIndex, shardCount)
+					&& (nextDatabase == null || database.getName().compareTo(nextDatabase) >= 0))
+				shardDatabases.putIfAbsent(database.getName(), database);
+		}
+		return new ArrayList<Database>(shardDatabases.values());
+	}
+
+	/**
+	 * This method crawls the databases of a planner shard and plans their tables.
+	 * The deadline is checked after every page: once it has passed, a checkpoint
+	 * is written and the crawl stops. Otherwise a checkpoint is written every
+	 * CHECKPOINT_INTERVAL_MILLIS or once MAX_TABLES_PER_CHECKPOINT planned tables
+	 * are held. At least one page is planned per invocation, so continuations
+	 * always make progress.
+	 * 
+	 * @return number of tables found
+	 */
+	private static int crawlShard(CatalogCrawler catalogCrawler, List<Database> shardDatabaseList,
+			String homeCatalogId, TablePlanner tablePlanner, MessageGroupScheduler messageGroupScheduler,
+			PlannerCheckpointWriter checkpointWriter, Deadline deadline) {
+		int numberOfTablesFound = catalogCrawler.crawlTablePages(shardDatabaseList, homeCatalogId,
+				tablePlanner.getTablesNextToken(), page -> {
+					if (tablePlanner.offer(page) && (deadline.isExpired()
+							|| checkpointWriter.getMillisSinceLastCheckpoint() >= CHECKPOINT_INTERVAL_MILLIS
+							|| messageGroupScheduler.getNumberOfTables() >= MAX_TABLES_PER_CHECKPOINT))
+						checkpointWriter.write(tablePlanner);
+					return tablePlanner.getNumberOfPagesPlanned() == 0 || !deadline.isExpired();
+				});
+		checkpointWriter.write(tablePlanner);
+		return numberOfTablesFound;
+	}
+
+	/**
+	 * This method invokes this Lambda function asynchronously for a planner shard
+	 * of an execution batch.
+	 * 
+	 * @return
+	 */
+	private static boolean invokePlanner(AWSClientHolder clients, Gson gson, Context context,
+			long executionBatchId, int shardIndex, int shardCount, int continuationCount) {
+		Map<String, Object> payload = new LinkedHashMap<String, Object>();
+		payload.put("execution_batch_id", executionBatchId);
+		payload.put("shard_index", shardIndex);
+		payload.put("shard_count", shardCount);
+		payload.put("continuation_count", continuationCount);
+		return clients.getLambdaUtil().invokeAsync(clients.getLambdaClient(), context.getInvokedFunctionArn(),
+				gson.toJson(payload));
+	}
+
+	/**
+	 * This method tells whether a database belongs to a planner shard.
+	 * 
+	 * @param databaseName
+	 * @param shardIndex
+	 * @param shardCount
+	 * @return
+	 */
+	public static boolean isInShard(String databaseName, int shardIndex, int shardCount) {
+		if (shardCount <= 1)
+			return true;
+		int hash = Hashing.murmur3_32().hashString(databaseName, StandardCharsets.UTF_8).asInt();
+		return Math.floorMod(hash, shardCount) == shardIndex;
+	}
+
+	private static Long getLong(Map<?, ?> inputMap, String key) {
+		Object value = inputMap.get(key);
+		if (value instanceof Number)
+			return ((Number) value).longValue();
+		if (value != null)
+			return Longs.tryParse(value.toString());
+		return null;
+	}
+
 	/**
 	 * This method prints environment variables
 	 * 
@@ -0,0 +1,151 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.lambda;
+
+import java.util.Optional;
+
+import com.google.common.primitives.Ints;
+
+/**
+ * This class holds the configuration of {@link TableVersionsCleanupLambda}.
+ * The defaults are those of the environment variables the Lambda reads.
+ */
+public class TableVersionsCleanupSettings {
+
+	private String sqsQueueURI = "";
+	private int numberofVersionsToRetain = 100;
+	private String dynamoDBTableName = "glue_table_version_cleanup_statistics";
+	private String hashKey = "execution_id";
+	private String rangeKey = "execution_batch_id";
+	private boolean streamingMode;
+	private int deleteConcurrency = 4;
+	private int messageConcurrency = 4;
+	private String tableStateTableName = "";
+
+	/**
+	 * Creates the settings from the environment variables sqs_queue_url,
+	 * number_of_versions_to_retain, ddb_table_name, hash_key, range_key,
+	 * streaming_mode, delete_concurrency, message_concurrency and
+	 * table_state_ddb_table_name.
+	 *
+	 * @return
+	 */
+	public static TableVersionsCleanupSettings fromEnvironment() {
+		TableVersionsCleanupSettings settings = new TableVersionsCleanupSettings();
+		settings.setSqsQueueURI(Optional.ofNullable(System.getenv("sqs_queue_url")).orElse(""));
+		settings.setNumberofVersionsToRetain(
+				Ints.tryParse(Optional.ofNullable(System.getenv("number_of_versions_to_retain")).orElse("100")));
+		settings.setDynamoDBTableName(Optional.ofNullable(System.getenv("ddb_table_name"))
+				.orElse("glue_table_version_cleanup_statistics"));
+		settings.setHashKey(Optional.ofNullable(System.getenv("hash_key")).orElse("execution_id"));
+		settings.setRangeKey(Optional.ofNullable(System.getenv("range_key")).orElse("execution_batch_id"));
+		settings.setStreamingMode(
+				Boolean.parseBoolean(Optional.ofNullable(System.getenv("streaming_mode")).orElse("false")));
+		settings.setDeleteConcurrency(
+				Ints.tryParse(Optional.ofNullable(System.getenv("delete_concurrency")).orElse("4")));
+		settings.setMessageConcurrency(
+				Ints.tryParse(Optional.ofNullable(System.getenv("message_concurrency")).orElse("4")));
+		settings.setTableStateTableName(
+				Optional.ofNullable(System.getenv("table_state_ddb_table_name")).orElse(""));
+		return settings;
+	}
+
+	/**
+	 * Returns the URL of the queue continuation messages are sent to.
+	 *
+	 * @return
+	 */
+	public String getSqsQueueURI() {
+		return sqsQueueURI;
+	}
+
+	public void setSqsQueueURI(String sqsQueueURI) {
+		this.sqsQueueURI = sqsQueueURI;
+	}
+
+	public int getNumberofVersionsToRetain() {
+		return numberofVersionsToRetain;
+	}
+
+	public void setNumberofVersionsToRetain(int numberofVersionsToRetain) {
+		this.numberofVersionsToRetain = numberofVersionsToRetain;
+	}
+
+	/**
+	 * Returns the DynamoDB table the statistics are written to.
+	 *
+	 * @return
+	 */
+	public String getDynamoDBTableName() {
+		return dynamoDBTableName;
+	}
+
+	public void setDynamoDBTableName(String dynamoDBTableName) {
+		this.dynamoDBTableName = dynamoDBTableName;
+	}
+
+	public String getHashKey() {
+		return hashKey;
+	}
+
+	public void setHashKey(String hashKey) {
+		this.hashKey = hashKey;
+	}
+
+	public String getRangeKey() {
+		return rangeKey;
+	}
+
+	public void setRangeKey(String rangeKey) {
+		this.rangeKey = rangeKey;
+	}
+
+	public boolean isStreamingMode() {
+		return streamingMode;
+	}
+
+	public void setStreamingMode(boolean streamingMode) {
+		this.streamingMode = streamingMode;
+	}
+
+	/**
+	 * Returns the number of BatchDeleteTableVersion requests in flight per table.
+	 *
+	 * @return
+	 */
+	public int getDeleteConcurrency() {
+		return deleteConcurrency;
+	}
+
+	public void setDeleteConcurrency(int deleteConcurrency) {
+		this.deleteConcurrency = deleteConcurrency;
+	}
+
+	/**
+	 * Returns the number of SQS messages processed at the same time.
+	 *
+	 * @return
+	 */
+	public int getMessageConcurrency() {
+		return messageConcurrency;
+	}
+
+	public void setMessageConcurrency(int messageConcurrency) {
+		this.messageConcurrency = messageConcurrency;
+	}
+
+	/**
+	 * Returns the DynamoDB table to record the table states in; empty to not
+	 * record them.
+	 *
+	 * @return
+	 */
+	public String getTableStateTableName() {
+		return tableStateTableName;
+	}
+
+	public void setTableStateTableName(String tableStateTableName) {
+		this.tableStateTableName = tableStateTableName;
+	}
+}
@@ -0,0 +1,242 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.Optional;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.glue.AWSGlue;
+import com.amazonaws.services.glue.AWSGlueClientBuilder;
+import com.amazonaws.services.lambda.AWSLambda;
+import com.amazonaws.services.lambda.AWSLambdaClientBuilder;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenServiceClientBuilder;
+import com.amazonaws.services.securitytoken.model.GetCallerIdentityRequest;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.primitives.Ints;
+import com.google.gson.Gson;
+
+/**
+ * This class holds the AWS clients, the JSON serializer and the utility
+ * objects of a Lambda container. It is created once per container and reused
+ * by every warm invocation, so HTTP connections, TLS sessions and the learned
+ * AWS Glue concurrency limit survive between invocations. Each client is
+ * created on first use.
+ *
+ * Connection pool settings are read from the environment variables
+ * max_connections, connection_max_idle_millis, connection_ttl_millis and
+ * tcp_keep_alive. Per-API concurrency limits are read from
+ * api_concurrency_limits, e.g. 'GetTableVersions:64,BatchDeleteTableVersion:64'.
+ * Fleet-wide AWS Glue call rates are read from glue_api_rate_limits and shared
+ * through the DynamoDB table rate_limiter_ddb_table_name; see
+ * {@link DistributedRateLimiter}. Metrics of each invocation are written as
+ * EMF to the CloudWatch namespace metrics_namespace; see
+ * {@link InvocationMetrics}.
+ */
+public class AWSClientHolder {
+
+	private static final Supplier<AWSClientHolder> INSTANCE = Suppliers.memoize(() -> new AWSClientHolder(null));
+	private static volatile AWSClientHolder override;
+
+	private final String region;
+	private final ClientConfiguration clientConfiguration;
+	private final AdaptiveConcurrencyLimiter glueConcurrencyLimiter;
+	private final ApiConcurrencyLimits apiConcurrencyLimits;
+	private final DistributedRateLimiter glueRateLimiter;
+	private final InvocationMetrics metrics;
+	private final Supplier<AWSGlue> glueClient;
+	private final Supplier<AmazonSQS> sqsClient;
+	private final Supplier<AmazonDynamoDB> dynamoDBClient;
+	private final Supplier<AWSSecurityTokenService> stsClient;
+	private final Supplier<AWSLambda> lambdaClient;
+	private final Supplier<String> homeCatalogId;
+	private final Gson gson = new Gson();
+	private final GlueUtil glueUtil;
+	private final SQSUtil sqsUtil;
+	private final DDBUtil ddbUtil;
+	private final LambdaUtil lambdaUtil = new LambdaUtil();
+
+	/**
+	 * @param localClients clients to use instead of the AWS clients, or null
+	 */
+	private AWSClientHolder(LocalClients localClients) {
+		this.region = Optional.ofNullable(System.getenv("region")).orElse(Regions.US_EAST_1.getName());
+		this.clientConfiguration = new ClientConfiguration()
+				.withMaxConnections(
+						Ints.tryParse(Optional.ofNullable(System.getenv("max_connections")).orElse("50")))
+				.withConnectionMaxIdleMillis(Long.parseLong(
+						Optional.ofNullable(System.getenv("connection_max_idle_millis")).orElse("60000")))
+				.withConnectionTTL(
+						Long.parseLong(Optional.ofNullable(System.getenv("connection_ttl_millis")).orElse("-1")))
+				.withTcpKeepAlive(
+						Boolean.parseBoolean(Optional.ofNullable(System.getenv("tcp_keep_alive")).orElse("true")));
+		this.glueConcurrencyLimiter = new AdaptiveConcurrencyLimiter(
+				Ints.tryParse(Optional.ofNullable(System.getenv("glue_initial_concurrency")).orElse("4")), 1,
+				Ints.tryParse(Optional.ofNullable(System.getenv("glue_max_concurrency")).orElse("32")));
+		this.apiConcurrencyLimits = ApiConcurrencyLimits
+				.fromConfig(Optional.ofNullable(System.getenv("api_concurrency_limits")).orElse(""));
+		this.dynamoDBClient = localClients != null ? Suppliers.ofInstance(localClients.dynamoDB)
+				: Suppliers.memoize(() -> AmazonDynamoDBClientBuilder.standard().withRegion(region)
+						.withClientConfiguration(clientConfiguration).build());
+		this.glueRateLimiter = DistributedRateLimiter.fromConfig(dynamoDBClient,
+				Optional.ofNullable(System.getenv("rate_limiter_ddb_table_name")).orElse(""),
+				Optional.ofNullable(System.getenv("glue_api_rate_limits")).orElse(""),
+				Ints.tryParse(Optional.ofNullable(System.getenv("rate_limiter_lease_size")).orElse("10")));
+		this.metrics = new InvocationMetrics(
+				Optional.ofNullable(System.getenv("metrics_namespace")).orElse("GlueTableVersionsCleanup"));
+		this.glueUtil = new GlueUtil(glueConcurrencyLimiter, apiConcurrencyLimits, glueRateLimiter, metrics);
+		this.sqsUtil = new SQSUtil(apiConcurrencyLimits, metrics);
+		this.ddbUtil = new DDBUtil(apiConcurrencyLimits, metrics);
+
+		this.glueClient = localClients != null ? Suppliers.ofInstance(localClients.glue)
+				: Suppliers.memoize(() -> AWSGlueClientBuilder.standard().withRegion(region)
+						.withClientConfiguration(new ClientConfiguration(clientConfiguration)
+								.withRetryPolicy(AdaptiveConcurrencyLimiter.nonThrottlingRetryPolicy()))
+						.build());
+		this.sqsClient = localClients != null ? Suppliers.ofInstance(localClients.sqs)
+				: Suppliers.memoize(() -> AmazonSQSClientBuilder.standard().withRegion(region)
+						.withClientConfiguration(clientConfiguration).build());
+		this.stsClient = Suppliers.memoize(() -> AWSSecurityTokenServiceClientBuilder.standard()
+				.withClientConfiguration(clientConfiguration).build());
+		this.lambdaClient = Suppliers.memoize(() -> AWSLambdaClientBuilder.standard().withRegion(region)
+				.withClientConfiguration(clientConfiguration).build());
+		this.homeCatalogId = localClients != null ? Suppliers.ofInstance(localClients.homeCatalogId)
+				: Suppliers.memoize(() -> stsClient.get().getCallerIdentity(new GetCallerIdentityRequest()).getAccount());
+	}
+
+	/**
+	 * Returns the holder of this container, or the holder installed with
+	 * {@link #overrideInstance(AWSClientHolder)}.
+	 *
+	 * @return
+	 */
+	public static AWSClientHolder getInstance() {
+		AWSClientHolder holder = override;
+		return holder != null ? holder : INSTANCE.get();
+	}
+
+	/**
+	 * Makes {@link #getInstance()} return another holder, e.g. one created with
+	 * {@link #withClients(AWSGlue, AmazonSQS, AmazonDynamoDB, String)} to run
+	 * the Lambda functions in process against local stand-ins. Null restores the
+	 * holder of this container.
+	 *
+	 * @param holder
+	 */
+	public static void overrideInstance(AWSClientHolder holder) {
+		override = holder;
+	}
+
+	/**
+	 * Creates a holder on the given clients. Limiters and utilities are
+	 * configured from the environment as usual.
+	 *
+	 * @param glue
+	 * @param sqs
+	 * @param dynamoDB
+	 * @param homeCatalogId AWS account id returned by getHomeCatalogId
+	 * @return
+	 */
+	public static AWSClientHolder withClients(AWSGlue glue, AmazonSQS sqs, AmazonDynamoDB dynamoDB,
+			String homeCatalogId) {
+		return new AWSClientHolder(new LocalClients(glue, sqs, dynamoDB, homeCatalogId));
+	}
+
+	public String getRegion() {
+		return region;
+	}
+
+	public AWSGlue getGlueClient() {
+		return glueClient.get();
+	}
+
+	public AmazonSQS getSqsClient() {
+		return sqsClient.get();
+	}
+
+	public AmazonDynamoDB getDynamoDBClient() {
+		return dynamoDBClient.get();
+	}
+
+	public AWSSecurityTokenService getStsClient() {
+		return stsClient.get();
+	}
+
+	public AWSLambda getLambdaClient() {
+		return lambdaClient.get();
+	}
+
+	/**
+	 * Returns the AWS account id of the caller. It is looked up once per
+	 * container.
+	 *
+	 * @return
+	 */
+	public String getHomeCatalogId() {
+		return homeCatalogId.get();
+	}
+
+	public Gson getGson() {
+		return gson;
+	}
+
+	public AdaptiveConcurrencyLimiter getGlueConcurrencyLimiter() {
+		return glueConcurrencyLimiter;
+	}
+
+	public DistributedRateLimiter getGlueRateLimiter() {
+		return glueRateLimiter;
+	}
+
+	/**
+	 * Returns the metrics of the current invocation, written as EMF by
+	 * {@link InvocationMetrics#flush(String)} at its end.
+	 *
+	 * @return
+	 */
+	public InvocationMetrics getMetrics() {
+		return metrics;
+	}
+
+	public ApiConcurrencyLimits getApiConcurrencyLimits() {
+		return apiConcurrencyLimits;
+	}
+
+	public GlueUtil getGlueUtil() {
+		return glueUtil;
+	}
+
+	public SQSUtil getSqsUtil() {
+		return sqsUtil;
+	}
+
+	public DDBUtil getDdbUtil() {
+		return ddbUtil;
+	}
+
+	public LambdaUtil getLambdaUtil() {
+		return lambdaUtil;
+	}
+
+	private static class LocalClients {
+
+		private final AWSGlue glue;
+		private final AmazonSQS sqs;
+		private final AmazonDynamoDB dynamoDB;
+		private final String homeCatalogId;
+
+		LocalClients(AWSGlue glue, AmazonSQS sqs, AmazonDynamoDB dynamoDB, String homeCatalogId) {
+			this.glue = glue;
+			this.sqs = sqs;
+			this.dynamoDB = dynamoDB;
+			this.homeCatalogId = homeCatalogId;
+		}
+	}
+}
@@ -0,0 +1,212 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
+import com.amazonaws.retry.RetryPolicy.RetryCondition;
+import com.amazonaws.retry.RetryUtils;
+
+/**
+ * This class limits the number of concurrent calls to an AWS service using
+ * additive-increase / multiplicative-decrease (AIMD). Every successful call
+ * increases the limit by additiveIncrease / limit, i.e. by roughly
+ * additiveIncrease per round of calls; every throttled call multiplies the
+ * limit by decreaseFactor, at most once per baseBackoffMillis so that a burst
+ * of throttles from calls that were already in flight counts as one signal.
+ * Throttled calls are retried with exponential back off and jitter up to
+ * maxRetries times.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+	private final double minLimit;
+	private final double maxLimit;
+	private final double additiveIncrease;
+	private final double decreaseFactor;
+	private final int maxRetries;
+	private final long baseBackoffMillis;
+	private final long maxBackoffMillis;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition slotAvailable = lock.newCondition();
+	private double limit;
+	private int inFlight;
+	private long lastDecreaseNanos;
+
+	private final AtomicLong successCount = new AtomicLong();
+	private final AtomicLong throttleCount = new AtomicLong();
+	private final AtomicLong retryCount = new AtomicLong();
+
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+		this(initialLimit, minLimit, maxLimit, 1.0, 0.5, 8, 100, 10000);
+	}
+
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double additiveIncrease,
+			double decreaseFactor, int maxRetries, long baseBackoffMillis, long maxBackoffMillis) {
+		if (minLimit < 1 || maxLimit < minLimit)
+			throw new IllegalArgumentException("Limits must satisfy 1 <= minLimit <= maxLimit.");
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.limit = Math.min(Math.max(initialLimit, minLimit), maxLimit);
+		this.additiveIncrease = additiveIncrease;
+		this.decreaseFactor = decreaseFactor;
+		this.maxRetries = maxRetries;
+		this.baseBackoffMillis = baseBackoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	/**
+	 * Execute a call under the current concurrency limit. Throttled calls are
+	 * retried; any other exception is passed on to the caller.
+	 *
+	 * @param call
+	 * @return
+	 */
+	public <T> T execute(Supplier<T> call) {
+		int attempt = 0;
+		while (true) {
+			acquire();
+			boolean throttled = false;
+			try {
+				T result = call.get();
+				onSuccess();
+				return result;
+			} catch (AmazonServiceException e) {
+				if (!isThrottlingException(e))
+					throw e;
+				throttled = true;
+				onThrottle();
+				if (attempt >= maxRetries)
+					throw e;
+			} finally {
+				release();
+			}
+			if (throttled) {
+				retryCount.incrementAndGet();
+				backoff(attempt++);
+			}
+		}
+	}
+
+	/**
+	 * Returns the current concurrency limit.
+	 *
+	 * @return
+	 */
+	public int getLimit() {
+		lock.lock();
+		try {
+			return (int) limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getSuccessCount() {
+		return successCount.get();
+	}
+
+	public long getThrottleCount() {
+		return throttleCount.get();
+	}
+
+	public long getRetryCount() {
+		return retryCount.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("limit=%d, successful calls=%d, throttled calls=%d, retries=%d", getLimit(),
+				getSuccessCount(), getThrottleCount(), getRetryCount());
+	}
+
+	/**
+	 * Returns an SDK retry policy that retries the usual transient errors but
+	 * leaves throttling errors to this limiter, so throttles are seen by the
+	 * controller instead of being absorbed by the SDK's own retries.
+	 *
+	 * @return
+	 */
+	public static RetryPolicy nonThrottlingRetryPolicy() {
+		RetryCondition retryCondition = (request, exception, retriesAttempted) -> {
+			if (exception instanceof AmazonServiceException
+					&& isThrottlingException((AmazonServiceException) exception))
+				return false;
+			return PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION.shouldRetry(request, exception, retriesAttempted);
+		};
+		return new RetryPolicy(retryCondition, PredefinedRetryPolicies.DEFAULT_BACKOFF_STRATEGY,
+				PredefinedRetryPolicies.DEFAULT_MAX_ERROR_RETRY, true);
+	}
+
+	public static boolean isThrottlingException(AmazonServiceException e) {
+		return RetryUtils.isThrottlingException(e) || "ThrottlingException".equals(e.getErrorCode())
+				|| e.getStatusCode() == 429;
+	}
+
+	private void acquire() {
+		lock.lock();
+		try {
+			while (inFlight >= (int) limit) {
+				slotAvailable.awaitUninterruptibly();
+			}
+			inFlight++;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void release() {
+		lock.lock();
+		try {
+			inFlight--;
+			slotAvailable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void onSuccess() {
+		successCount.incrementAndGet();
+		lock.lock();
+		try {
+			limit = Math.min(maxLimit, limit + additiveIncrease / limit);
+			slotAvailable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void onThrottle() {
+		throttleCount.incrementAndGet();
+		lock.lock();
+		try {
+			long now = System.nanoTime();
+			if (lastDecreaseNanos == 0 || now - lastDecreaseNanos >= TimeUnit.MILLISECONDS.toNanos(baseBackoffMillis)) {
+				limit = Math.max(minLimit, limit * decreaseFactor);
+				lastDecreaseNanos = now;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void backoff(int attempt) {
+		long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt, 20));
+		long sleepMillis = ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+		try {
+			TimeUnit.MILLISECONDS.sleep(sleepMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while backing off from a throttled call.", e);
+		}
+	}
+}
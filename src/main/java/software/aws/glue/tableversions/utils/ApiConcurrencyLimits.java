@@ -0,0 +1,93 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import com.google.common.primitives.Ints;
+
+/**
+ * This class limits the number of concurrent calls per AWS API, e.g. at most 64
+ * concurrent GetTableVersions calls. It keeps the number of requests bounded
+ * when work runs on an unbounded number of threads, such as virtual threads.
+ * APIs without a limit are called directly.
+ */
+public class ApiConcurrencyLimits {
+
+	private static final ApiConcurrencyLimits NONE = new ApiConcurrencyLimits(
+			Collections.<String, Integer>emptyMap());
+
+	private final Map<String, Semaphore> semaphores = new HashMap<String, Semaphore>();
+
+	public ApiConcurrencyLimits(Map<String, Integer> limits) {
+		for (Map.Entry<String, Integer> limit : limits.entrySet()) {
+			semaphores.put(limit.getKey(), new Semaphore(Math.max(1, limit.getValue()), true));
+		}
+	}
+
+	/**
+	 * Returns limits that do not limit any API.
+	 *
+	 * @return
+	 */
+	public static ApiConcurrencyLimits none() {
+		return NONE;
+	}
+
+	/**
+	 * Creates limits from a list of 'Api:limit' pairs separated by commas, e.g.
+	 * 'GetTableVersions:64,BatchDeleteTableVersion:64,SendMessage:16'.
+	 *
+	 * @param limits
+	 * @return
+	 */
+	public static ApiConcurrencyLimits fromConfig(String limits) {
+		Map<String, Integer> limitsByApi = new HashMap<String, Integer>();
+		StringTokenizer tokenizer = new StringTokenizer(limits, ",");
+		while (tokenizer.hasMoreTokens()) {
+			String token = tokenizer.nextToken().trim();
+			int index = token.indexOf(':');
+			Integer limit = index > 0 ? Ints.tryParse(token.substring(index + 1).trim()) : null;
+			if (limit == null || limit < 1)
+				throw new IllegalArgumentException("Invalid API concurrency limit: " + token);
+			limitsByApi.put(token.substring(0, index).trim(), limit);
+		}
+		return limitsByApi.isEmpty() ? NONE : new ApiConcurrencyLimits(limitsByApi);
+	}
+
+	/**
+	 * Execute a call to an API within the limit of the API.
+	 *
+	 * @param api  name of the API operation, e.g. 'GetTableVersions'
+	 * @param call
+	 * @return
+	 */
+	public <T> T call(String api, Supplier<T> call) {
+		Semaphore semaphore = semaphores.get(api);
+		if (semaphore == null)
+			return call.get();
+		semaphore.acquireUninterruptibly();
+		try {
+			return call.get();
+		} finally {
+			semaphore.release();
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder description = new StringBuilder();
+		for (Map.Entry<String, Semaphore> semaphore : semaphores.entrySet()) {
+			if (description.length() > 0)
+				description.append(", ");
+			description.append(semaphore.getKey()).append('=').append(semaphore.getValue().availablePermits());
+		}
+		return description.toString();
+	}
+}
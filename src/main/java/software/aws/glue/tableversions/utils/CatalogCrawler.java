@@ -0,0 +1,255 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import com.amazonaws.services.glue.AWSGlue;
+import com.amazonaws.services.glue.model.Database;
+import com.amazonaws.services.glue.model.Table;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * This class crawls the AWS Glue Data Catalog for many databases at once. Up
+ * to parallelism databases are paged concurrently; pages of tables are handed
+ * to the caller's consumer on the calling thread as they arrive, so the
+ * consumer does not need to be thread-safe. The hand-off queue is bounded,
+ * which stops the crawl from running ahead of a slow consumer.
+ */
+public class CatalogCrawler {
+
+	private final GlueUtil glueUtil;
+	private final AWSGlue glue;
+	private final int parallelism;
+	private final String tablesExpression;
+
+	public CatalogCrawler(GlueUtil glueUtil, AWSGlue glue, int parallelism) {
+		this(glueUtil, glue, parallelism, null);
+	}
+
+	/**
+	 * Creates a crawler which only lists tables whose names match the given
+	 * GetTables expression.
+	 * 
+	 * @param glueUtil
+	 * @param glue
+	 * @param parallelism
+	 * @param tablesExpression
+	 */
+	public CatalogCrawler(GlueUtil glueUtil, AWSGlue glue, int parallelism, String tablesExpression) {
+		this.glueUtil = glueUtil;
+		this.glue = glue;
+		this.parallelism = Math.max(1, parallelism);
+		this.tablesExpression = tablesExpression;
+	}
+
+	/**
+	 * Resolve database names to databases concurrently. Databases that do not
+	 * exist are left out; the order of the names is preserved.
+	 *
+	 * @param homeCatalogId
+	 * @param databaseNames
+	 * @return
+	 */
+	public List<Database> getDatabases(String homeCatalogId, List<String> databaseNames) {
+		ExecutorService executorService = newExecutorService("glue-get-database-%d");
+		try {
+			List<Future<Database>> futures = new ArrayList<Future<Database>>();
+			for (String databaseName : databaseNames) {
+				futures.add(executorService.submit(() -> glueUtil.getDatabase(glue, homeCatalogId, databaseName)));
+			}
+			List<Database> databaseList = new ArrayList<Database>();
+			for (Future<Database> future : futures) {
+				Database database = getResult(future);
+				if (Optional.ofNullable(database).isPresent())
+					databaseList.add(database);
+			}
+			return databaseList;
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	/**
+	 * Crawl tables of all databases and hand each table to the table consumer.
+	 *
+	 * @param databaseList
+	 * @param homeCatalogId
+	 * @param tableConsumer
+	 * @return number of tables handed to the consumer
+	 */
+	public int crawlTables(List<Database> databaseList, String homeCatalogId, Consumer<Table> tableConsumer) {
+		return crawl(databaseList, homeCatalogId, null, databaseList.size(), page -> {
+			page.getTables().forEach(tableConsumer);
+			return true;
+		});
+	}
+
+	/**
+	 * Crawl tables of all databases and hand each page of tables to the page
+	 * consumer, also on the calling thread. The pages of a database arrive in
+	 * order. Databases are started in the order of the list while earlier ones
+	 * are still paged, but at most parallelism positions after the first
+	 * database that is not finished; a consumer that processes the databases in
+	 * the order of the list thus holds the pages of fewer than parallelism
+	 * databases while it waits for the first one. When the page consumer returns
+	 * false, the crawl stops and the databases that are still paged are
+	 * abandoned.
+	 *
+	 * @param databaseList
+	 * @param homeCatalogId
+	 * @param nextToken     GetTables NextToken to start the first database at, or
+	 *                      null to start at its first table
+	 * @param pageConsumer  returns whether the crawl continues
+	 * @return number of tables handed to the consumer
+	 */
+	public int crawlTablePages(List<Database> databaseList, String homeCatalogId, String nextToken,
+			Predicate<TablePage> pageConsumer) {
+		return crawl(databaseList, homeCatalogId, nextToken, parallelism, pageConsumer);
+	}
+
+	private int crawl(List<Database> databaseList, String homeCatalogId, String nextToken, int maxDatabasesAhead,
+			Predicate<TablePage> pageConsumer) {
+		if (databaseList.isEmpty())
+			return 0;
+
+		BlockingQueue<TablePage> pages = new LinkedBlockingQueue<TablePage>(parallelism * 4);
+		ExecutorService executorService = newExecutorService("glue-get-tables-%d");
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		boolean[] finished = new boolean[databaseList.size()];
+		int firstUnfinished = 0;
+		int numberOfTables = 0;
+		try {
+			while (true) {
+				while (futures.size() < databaseList.size() && futures.size() < firstUnfinished + maxDatabasesAhead) {
+					int index = futures.size();
+					futures.add(executorService.submit(() -> pageDatabase(databaseList.get(index), index,
+							homeCatalogId, index == 0 ? nextToken : null, pages)));
+				}
+				if (firstUnfinished == databaseList.size())
+					break;
+				TablePage page = take(pages);
+				if (page.error != null)
+					throw page.error;
+				numberOfTables += page.tables.size();
+				boolean proceed = pageConsumer.test(page);
+				if (page.isLast()) {
+					finished[page.index] = true;
+					while (firstUnfinished < finished.length && finished[firstUnfinished]) {
+						firstUnfinished++;
+					}
+				}
+				if (!proceed)
+					break;
+			}
+			return numberOfTables;
+		} finally {
+			for (Future<?> future : futures) {
+				future.cancel(true);
+			}
+			executorService.shutdownNow();
+		}
+	}
+
+	private void pageDatabase(Database database, int index, String homeCatalogId, String nextToken,
+			BlockingQueue<TablePage> pages) {
+		try {
+			glueUtil.getTables(glue, database.getName(), homeCatalogId, tablesExpression, nextToken,
+					(tableList, tablesNextToken) -> put(pages,
+							new TablePage(database, index, tableList, tablesNextToken, null)));
+		} catch (RuntimeException e) {
+			put(pages, new TablePage(database, index, Collections.<Table>emptyList(), null, e));
+		}
+	}
+
+	private ExecutorService newExecutorService(String nameFormat) {
+		return Executors.newFixedThreadPool(parallelism,
+				new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build());
+	}
+
+	private static void put(BlockingQueue<TablePage> pages, TablePage page) {
+		try {
+			pages.put(page);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while handing over a page of tables.", e);
+		}
+	}
+
+	private static TablePage take(BlockingQueue<TablePage> pages) {
+		try {
+			return pages.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for a page of tables.", e);
+		}
+	}
+
+	private static <T> T getResult(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for AWS Glue.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * A page of tables of a database, with the GetTables NextToken of the page
+	 * after it.
+	 */
+	public static class TablePage {
+		private final Database database;
+		private final int index;
+		private final List<Table> tables;
+		private final String nextToken;
+		private final RuntimeException error;
+
+		private TablePage(Database database, int index, List<Table> tables, String nextToken,
+				RuntimeException error) {
+			this.database = database;
+			this.index = index;
+			this.tables = tables;
+			this.nextToken = nextToken;
+			this.error = error;
+		}
+
+		public Database getDatabase() {
+			return database;
+		}
+
+		public List<Table> getTables() {
+			return tables;
+		}
+
+		/**
+		 * Returns the NextToken of the page after this one, or null if this is the
+		 * last page of the database.
+		 *
+		 * @return
+		 */
+		public String getNextToken() {
+			return nextToken;
+		}
+
+		public boolean isLast() {
+			return nextToken == null;
+		}
+	}
+}
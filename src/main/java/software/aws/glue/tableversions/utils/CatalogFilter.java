@@ -0,0 +1,162 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.StringTokenizer;
+import java.util.regex.Pattern;
+
+/**
+ * This class decides which databases and tables are planned for cleanup using
+ * include and exclude patterns. A name is selected if it matches any include
+ * pattern (or there are none) and no exclude pattern. Patterns are globs, where
+ * '*' matches any sequence of characters and '?' matches a single character,
+ * unless they are prefixed with 'regex:'. Matching is case-insensitive and
+ * covers the whole name.
+ *
+ * A single include glob for tables is also sent to AWS Glue as the Expression
+ * of GetTablesRequest, so that Glue only returns matching tables. Tables are
+ * always filtered on the client as well.
+ */
+public class CatalogFilter {
+
+	private static final String REGEX_PREFIX = "regex:";
+
+	private final List<Pattern> databaseIncludes;
+	private final List<Pattern> databaseExcludes;
+	private final List<Pattern> tableIncludes;
+	private final List<Pattern> tableExcludes;
+	private final String tablesExpression;
+
+	public CatalogFilter(List<String> databaseIncludePatterns, List<String> databaseExcludePatterns,
+			List<String> tableIncludePatterns, List<String> tableExcludePatterns) {
+		this.databaseIncludes = compile(databaseIncludePatterns);
+		this.databaseExcludes = compile(databaseExcludePatterns);
+		this.tableIncludes = compile(tableIncludePatterns);
+		this.tableExcludes = compile(tableExcludePatterns);
+		// Only plain globs are sent to Glue; Glue stores names in lower case
+		if (tableIncludePatterns.size() == 1 && tableIncludePatterns.get(0).matches("[A-Za-z0-9_*?]+"))
+			this.tablesExpression = globToRegex(tableIncludePatterns.get(0).toLowerCase());
+		else
+			this.tablesExpression = null;
+	}
+
+	/**
+	 * Creates a filter from pattern lists separated by the separator.
+	 *
+	 * @param databaseIncludePatterns
+	 * @param databaseExcludePatterns
+	 * @param tableIncludePatterns
+	 * @param tableExcludePatterns
+	 * @param separator
+	 * @return
+	 */
+	public static CatalogFilter fromConfig(String databaseIncludePatterns, String databaseExcludePatterns,
+			String tableIncludePatterns, String tableExcludePatterns, String separator) {
+		return new CatalogFilter(tokenize(databaseIncludePatterns, separator),
+				tokenize(databaseExcludePatterns, separator), tokenize(tableIncludePatterns, separator),
+				tokenize(tableExcludePatterns, separator));
+	}
+
+	/**
+	 * Creates a filter from the environment variables database_include_patterns,
+	 * database_exclude_patterns, table_include_patterns and
+	 * table_exclude_patterns, separated by pattern_separator (',' by default).
+	 *
+	 * @return
+	 */
+	public static CatalogFilter fromEnvironment() {
+		return fromConfig(Optional.ofNullable(System.getenv("database_include_patterns")).orElse(""),
+				Optional.ofNullable(System.getenv("database_exclude_patterns")).orElse(""),
+				Optional.ofNullable(System.getenv("table_include_patterns")).orElse(""),
+				Optional.ofNullable(System.getenv("table_exclude_patterns")).orElse(""),
+				Optional.ofNullable(System.getenv("pattern_separator")).orElse(","));
+	}
+
+	public boolean matchesDatabase(String databaseName) {
+		return matches(databaseName, databaseIncludes, databaseExcludes);
+	}
+
+	public boolean matchesTable(String tableName) {
+		return matches(tableName, tableIncludes, tableExcludes);
+	}
+
+	/**
+	 * Returns the Expression for GetTablesRequest, or null if the table filter
+	 * cannot be expressed as a single pattern.
+	 *
+	 * @return
+	 */
+	public String getTablesExpression() {
+		return tablesExpression;
+	}
+
+	private static boolean matches(String name, List<Pattern> includes, List<Pattern> excludes) {
+		boolean included = includes.isEmpty();
+		for (Pattern include : includes) {
+			if (include.matcher(name).matches()) {
+				included = true;
+				break;
+			}
+		}
+		if (!included)
+			return false;
+		for (Pattern exclude : excludes) {
+			if (exclude.matcher(name).matches())
+				return false;
+		}
+		return true;
+	}
+
+	private static List<Pattern> compile(List<String> patterns) {
+		List<Pattern> compiledPatterns = new ArrayList<Pattern>(patterns.size());
+		for (String pattern : patterns) {
+			String regex = pattern.startsWith(REGEX_PREFIX) ? pattern.substring(REGEX_PREFIX.length())
+					: globToRegex(pattern);
+			compiledPatterns.add(Pattern.compile(regex, Pattern.CASE_INSENSITIVE));
+		}
+		return compiledPatterns;
+	}
+
+	/**
+	 * Converts a glob to a regular expression; characters other than '*' and '?'
+	 * match literally.
+	 */
+	static String globToRegex(String glob) {
+		StringBuilder regex = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		for (char c : glob.toCharArray()) {
+			if (c == '*' || c == '?') {
+				appendLiteral(regex, literal);
+				regex.append(c == '*' ? ".*" : ".");
+			} else {
+				literal.append(c);
+			}
+		}
+		appendLiteral(regex, literal);
+		return regex.toString();
+	}
+
+	private static void appendLiteral(StringBuilder regex, StringBuilder literal) {
+		if (literal.length() == 0)
+			return;
+		String text = literal.toString();
+		// Glue names are letters, digits and underscores, which need no quoting
+		regex.append(text.matches("[A-Za-z0-9_]+") ? text : Pattern.quote(text));
+		literal.setLength(0);
+	}
+
+	private static List<String> tokenize(String patterns, String separator) {
+		List<String> tokens = new ArrayList<String>();
+		StringTokenizer tokenizer = new StringTokenizer(patterns, separator);
+		while (tokenizer.hasMoreTokens()) {
+			String token = tokenizer.nextToken().trim();
+			if (!token.isEmpty())
+				tokens.add(token);
+		}
+		return tokens;
+	}
+}
@@ -0,0 +1,223 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.common.collect.Lists;
+
+/**
+ * This class buffers items and writes them to DynamoDB using BatchWriteItem
+ * requests of up to 25 items. The buffer is flushed when it holds 25 items or
+ * when flushIntervalMillis have passed since the last flush, and callers flush
+ * it at the end of a handler. Unprocessed items are re-sent with exponential
+ * back off.
+ *
+ * Items are keyed by table and primary key in the buffer; a later item with
+ * the same key replaces an earlier one, as a later putItem would.
+ *
+ * The buffer is only locked to add items or to take them out. The thread that
+ * fills the buffer takes its items and writes them without holding the lock,
+ * so other threads keep buffering items meanwhile, and virtual threads are
+ * never pinned to their carrier during a BatchWriteItem request or its back
+ * off.
+ */
+public class DDBBatchWriter {
+
+	public static final int MAX_BATCH_SIZE = 25;
+	public static final int DEFAULT_MAX_RETRIES = 8;
+	public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 5000;
+
+	private final AmazonDynamoDB ddbClient;
+	private final int maxRetries;
+	private final long flushIntervalMillis;
+	private final InvocationMetrics metrics;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Map<String, BufferedItem> bufferedItems = new LinkedHashMap<String, BufferedItem>();
+	private long lastFlushMillis = System.currentTimeMillis();
+	private final AtomicInteger numberOfItemsWritten = new AtomicInteger();
+	private final AtomicInteger numberOfItemsFailed = new AtomicInteger();
+	private final AtomicInteger numberOfRequests = new AtomicInteger();
+
+	/**
+	 * Creates a writer with the default retries and flush interval.
+	 *
+	 * @param ddbClient
+	 * @param metrics
+	 */
+	public DDBBatchWriter(AmazonDynamoDB ddbClient, InvocationMetrics metrics) {
+		this(ddbClient, DEFAULT_MAX_RETRIES, DEFAULT_FLUSH_INTERVAL_MILLIS, metrics);
+	}
+
+	public DDBBatchWriter(AmazonDynamoDB ddbClient, int maxRetries, long flushIntervalMillis) {
+		this(ddbClient, maxRetries, flushIntervalMillis, new InvocationMetrics(""));
+	}
+
+	/**
+	 * Creates a writer which records the latency and outcome of every
+	 * BatchWriteItem request; requests for unprocessed items count as retries.
+	 *
+	 * @param ddbClient
+	 * @param maxRetries
+	 * @param flushIntervalMillis
+	 * @param metrics
+	 */
+	public DDBBatchWriter(AmazonDynamoDB ddbClient, int maxRetries, long flushIntervalMillis,
+			InvocationMetrics metrics) {
+		this.ddbClient = ddbClient;
+		this.maxRetries = maxRetries;
+		this.flushIntervalMillis = flushIntervalMillis;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Add an item to the buffer.
+	 *
+	 * @param ddbTableName
+	 * @param item
+	 * @param keyAttributeNames names of the primary key attributes of the table
+	 */
+	public void write(String ddbTableName, Map<String, AttributeValue> item, String... keyAttributeNames) {
+		StringBuilder key = new StringBuilder(ddbTableName);
+		for (String keyAttributeName : keyAttributeNames) {
+			key.append('\u0000').append(item.get(keyAttributeName));
+		}
+		List<BufferedItem> itemsToWrite = null;
+		lock.lock();
+		try {
+			bufferedItems.put(key.toString(), new BufferedItem(ddbTableName, item));
+			if (bufferedItems.size() >= MAX_BATCH_SIZE
+					|| System.currentTimeMillis() - lastFlushMillis >= flushIntervalMillis)
+				itemsToWrite = takeBufferedItems();
+		} finally {
+			lock.unlock();
+		}
+		if (itemsToWrite != null)
+			writeItems(itemsToWrite);
+	}
+
+	/**
+	 * Write all buffered items.
+	 */
+	public void flush() {
+		List<BufferedItem> itemsToWrite;
+		lock.lock();
+		try {
+			itemsToWrite = takeBufferedItems();
+		} finally {
+			lock.unlock();
+		}
+		writeItems(itemsToWrite);
+	}
+
+	public int getNumberOfItemsWritten() {
+		return numberOfItemsWritten.get();
+	}
+
+	public int getNumberOfItemsFailed() {
+		return numberOfItemsFailed.get();
+	}
+
+	public int getNumberOfRequests() {
+		return numberOfRequests.get();
+	}
+
+	/**
+	 * Takes all items out of the buffer; must be called holding the lock.
+	 */
+	private List<BufferedItem> takeBufferedItems() {
+		lastFlushMillis = System.currentTimeMillis();
+		List<BufferedItem> items = new ArrayList<BufferedItem>(bufferedItems.values());
+		bufferedItems.clear();
+		return items;
+	}
+
+	private void writeItems(List<BufferedItem> items) {
+		for (List<BufferedItem> batch : Lists.partition(items, MAX_BATCH_SIZE)) {
+			Map<String, List<WriteRequest>> requestItems = new HashMap<String, List<WriteRequest>>();
+			for (BufferedItem bufferedItem : batch) {
+				requestItems.computeIfAbsent(bufferedItem.ddbTableName, k -> new ArrayList<WriteRequest>())
+						.add(new WriteRequest(new PutRequest(bufferedItem.item)));
+			}
+			writeBatch(requestItems);
+		}
+	}
+
+	private void writeBatch(Map<String, List<WriteRequest>> requestItems) {
+		int attempt = 0;
+		while (true) {
+			int batchSize = size(requestItems);
+			Map<String, List<WriteRequest>> unprocessedItems;
+			try {
+				numberOfRequests.incrementAndGet();
+				BatchWriteItemRequest request = new BatchWriteItemRequest().withRequestItems(requestItems);
+				if (attempt == 0)
+					metrics.countCall("BatchWriteItem");
+				BatchWriteItemResult result = metrics.attempt("BatchWriteItem",
+						() -> ddbClient.batchWriteItem(request));
+				unprocessedItems = result.getUnprocessedItems();
+			} catch (RuntimeException e) {
+				System.out.println("Exception thrown while writing items to DynamoDB. " + e.getLocalizedMessage());
+				unprocessedItems = requestItems;
+			}
+			int numberUnprocessed = size(unprocessedItems);
+			numberOfItemsWritten.addAndGet(batchSize - numberUnprocessed);
+			if (numberUnprocessed == 0)
+				return;
+			if (attempt >= maxRetries) {
+				numberOfItemsFailed.addAndGet(numberUnprocessed);
+				System.out.printf("%d items could not be written to DynamoDB after %d retries. \n", numberUnprocessed,
+						maxRetries);
+				return;
+			}
+			backoff(attempt++);
+			requestItems = unprocessedItems;
+		}
+	}
+
+	private static int size(Map<String, List<WriteRequest>> requestItems) {
+		int size = 0;
+		if (requestItems != null) {
+			for (Entry<String, List<WriteRequest>> entry : requestItems.entrySet()) {
+				size += entry.getValue().size();
+			}
+		}
+		return size;
+	}
+
+	private static void backoff(int attempt) {
+		long ceiling = Math.min(5000L, 50L << Math.min(attempt, 10));
+		try {
+			TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while re-sending items to DynamoDB.", e);
+		}
+	}
+
+	private static class BufferedItem {
+		private final String ddbTableName;
+		private final Map<String, AttributeValue> item;
+
+		private BufferedItem(String ddbTableName, Map<String, AttributeValue> item) {
+			this.ddbTableName = ddbTableName;
+			this.item = item;
+		}
+	}
+}
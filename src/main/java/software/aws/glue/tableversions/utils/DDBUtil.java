@@ -3,44 +3,93 @@
 
 package software.aws.glue.tableversions.utils;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
-import com.amazonaws.services.dynamodbv2.document.DynamoDB;
-import com.amazonaws.services.dynamodbv2.document.Item;
-import com.amazonaws.services.dynamodbv2.document.PutItemOutcome;
-import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.google.common.collect.Iterables;
 
 /**
- * This is a utility class with methods to write items to DynamoDB table. from /
- * to a DynamoDB table.
+ * This is a utility class with methods to read and write items from / to a
+ * DynamoDB table.
  * 
  * @author Ravi Itha, Amazon Web Services, Inc.
  *
  */
 public class DDBUtil {
 
+	// BatchGetItem reads up to 100 items per request
+	private static final int MAX_BATCH_GET_SIZE = 100;
+
+	private final ApiConcurrencyLimits apiConcurrencyLimits;
+	private final InvocationMetrics metrics;
+
+	public DDBUtil() {
+		this(ApiConcurrencyLimits.none());
+	}
+
+	public DDBUtil(ApiConcurrencyLimits apiConcurrencyLimits) {
+		this(apiConcurrencyLimits, new InvocationMetrics(""));
+	}
+
+	/**
+	 * Creates a DDBUtil which records the latency and outcome of every call.
+	 * 
+	 * @param apiConcurrencyLimits
+	 * @param metrics
+	 */
+	public DDBUtil(ApiConcurrencyLimits apiConcurrencyLimits, InvocationMetrics metrics) {
+		this.apiConcurrencyLimits = apiConcurrencyLimits;
+		this.metrics = metrics;
+	}
+
 	public boolean insertCleanupStatusToDynamoDB(AmazonDynamoDB ddbClient, String ddbTableName, String hashKey,
 			String rangeKey, long executionId, String executionBatchId, String databaseName, String tableName,
 			int numTableVersionsB4Cleanup, int numVersionsRetained, int numDeletedVersions) {
 
-		boolean itemInserted = false;
-		DynamoDB dynamoDB = new DynamoDB(ddbClient);
-		Table table = dynamoDB.getTable(ddbTableName);
-		Item item = new Item()
-				.withPrimaryKey(hashKey, executionId)
-				.withNumber(rangeKey, Long.parseLong(executionBatchId))
-				.withString("table_name", tableName)
-				.withString("database_name", databaseName)
-				.withNumber("number_of_versions_before_cleanup", numTableVersionsB4Cleanup)
-				.withNumber("number_of_versions_retained", numVersionsRetained)
-				.withNumber("number_of_versions_deleted", numDeletedVersions);
-		// Write the item to the table
-		PutItemOutcome outcome = table.putItem(item);
-		int statusCode = outcome.getPutItemResult().getSdkHttpMetadata().getHttpStatusCode();
-		if (statusCode == 200) {
-			itemInserted = true;
-			System.out.println("Table version inserted to DynamoDB table: " + ddbTableName);
-		}
-		return itemInserted;
+		Map<String, AttributeValue> item = createCleanupStatusItem(hashKey, rangeKey, executionId, executionBatchId,
+				databaseName, tableName, numTableVersionsB4Cleanup, numVersionsRetained, numDeletedVersions);
+		return putItem(ddbClient, ddbTableName, item);
+	}
+
+	/**
+	 * Method to buffer the cleanup status of a table. The item is written by the
+	 * batch writer together with other items.
+	 * 
+	 * @param batchWriter
+	 * @param ddbTableName
+	 * @param hashKey
+	 * @param rangeKey
+	 * @param executionId
+	 * @param executionBatchId
+	 * @param databaseName
+	 * @param tableName
+	 * @param numTableVersionsB4Cleanup
+	 * @param numVersionsRetained
+	 * @param numDeletedVersions
+	 */
+	public void insertCleanupStatusToDynamoDB(DDBBatchWriter batchWriter, String ddbTableName, String hashKey,
+			String rangeKey, long executionId, String executionBatchId, String databaseName, String tableName,
+			int numTableVersionsB4Cleanup, int numVersionsRetained, int numDeletedVersions) {
+
+		batchWriter.write(ddbTableName, createCleanupStatusItem(hashKey, rangeKey, executionId, executionBatchId,
+				databaseName, tableName, numTableVersionsB4Cleanup, numVersionsRetained, numDeletedVersions), hashKey,
+				rangeKey);
 	}
 
 	/**
@@ -59,15 +108,249 @@ public class DDBUtil {
 	public boolean insertTableDetailsToDynamoDB(AmazonDynamoDB ddbClient, String ddbTableName, String hashKey,
 			String rangeKey, long executionBatchId, String databaseName, String tableName, String messageSentTime) {
 
+		Map<String, AttributeValue> item = createTableDetailsItem(hashKey, rangeKey, executionBatchId, databaseName,
+				tableName, messageSentTime);
+		return putItem(ddbClient, ddbTableName, item);
+	}
+
+	/**
+	 * Method to buffer Table version details. The item is written by the batch
+	 * writer together with other items.
+	 * 
+	 * @param batchWriter
+	 * @param ddbTableName
+	 * @param hashKey
+	 * @param rangeKey
+	 * @param executionBatchId
+	 * @param databaseName
+	 * @param tableName
+	 * @param messageSentTime
+	 */
+	public void insertTableDetailsToDynamoDB(DDBBatchWriter batchWriter, String ddbTableName, String hashKey,
+			String rangeKey, long executionBatchId, String databaseName, String tableName, String messageSentTime) {
+
+		batchWriter.write(ddbTableName, createTableDetailsItem(hashKey, rangeKey, executionBatchId, databaseName,
+				tableName, messageSentTime), hashKey, rangeKey);
+	}
+
+	/**
+	 * Method to create the item holding the cleanup status of a table.
+	 * 
+	 * @return
+	 */
+	public Map<String, AttributeValue> createCleanupStatusItem(String hashKey, String rangeKey, long executionId,
+			String executionBatchId, String databaseName, String tableName, int numTableVersionsB4Cleanup,
+			int numVersionsRetained, int numDeletedVersions) {
+
+		Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+		item.put(hashKey, new AttributeValue().withN(Long.toString(executionId)));
+		item.put(rangeKey, new AttributeValue().withN(Long.toString(Long.parseLong(executionBatchId))));
+		item.put("table_name", new AttributeValue(tableName));
+		item.put("database_name", new AttributeValue(databaseName));
+		item.put("number_of_versions_before_cleanup",
+				new AttributeValue().withN(Integer.toString(numTableVersionsB4Cleanup)));
+		item.put("number_of_versions_retained", new AttributeValue().withN(Integer.toString(numVersionsRetained)));
+		item.put("number_of_versions_deleted", new AttributeValue().withN(Integer.toString(numDeletedVersions)));
+		return item;
+	}
+
+	/**
+	 * Method to create the item holding the details of a table sent to SQS.
+	 * 
+	 * @return
+	 */
+	public Map<String, AttributeValue> createTableDetailsItem(String hashKey, String rangeKey, long executionBatchId,
+			String databaseName, String tableName, String messageSentTime) {
+
+		Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+		item.put(hashKey, new AttributeValue().withN(Long.toString(executionBatchId)));
+		item.put(rangeKey, new AttributeValue(databaseName.concat("|").concat(tableName)));
+		item.put("table_name", new AttributeValue(tableName));
+		item.put("database_name", new AttributeValue(databaseName));
+		item.put("message_sent_time", new AttributeValue(messageSentTime));
+		return item;
+	}
+
+	/**
+	 * Method to write the checkpoint of a planner shard.
+	 * 
+	 * @param ddbClient
+	 * @param ddbTableName
+	 * @param hashKey
+	 * @param rangeKey
+	 * @param executionBatchId
+	 * @param shardIndex
+	 * @param checkpoint
+	 * @return
+	 */
+	public boolean insertPlannerCheckpointToDynamoDB(AmazonDynamoDB ddbClient, String ddbTableName, String hashKey,
+			String rangeKey, long executionBatchId, int shardIndex, PlannerCheckpoint checkpoint) {
+
+		Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+		item.put(hashKey, new AttributeValue().withN(Long.toString(executionBatchId)));
+		item.put(rangeKey, new AttributeValue(PlannerCheckpoint.rangeKeyValue(shardIndex)));
+		if (checkpoint.getNextDatabase() != null)
+			item.put("next_database", new AttributeValue(checkpoint.getNextDatabase()));
+		if (checkpoint.getTablesNextToken() != null)
+			item.put("tables_next_token", new AttributeValue(checkpoint.getTablesNextToken()));
+		item.put("completed", new AttributeValue().withBOOL(checkpoint.isCompleted()));
+		item.put("continuation_count",
+				new AttributeValue().withN(Integer.toString(checkpoint.getContinuationCount())));
+		item.put("checkpoint_time", new AttributeValue(new Date().toString()));
+		return putItem(ddbClient, ddbTableName, item);
+	}
+
+	/**
+	 * Method to read the checkpoint of a planner shard.
+	 * 
+	 * @param ddbClient
+	 * @param ddbTableName
+	 * @param hashKey
+	 * @param rangeKey
+	 * @param executionBatchId
+	 * @param shardIndex
+	 * @return the checkpoint, or null if the shard has not written one yet
+	 */
+	public PlannerCheckpoint getPlannerCheckpointFromDynamoDB(AmazonDynamoDB ddbClient, String ddbTableName,
+			String hashKey, String rangeKey, long executionBatchId, int shardIndex) {
+
+		Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+		key.put(hashKey, new AttributeValue().withN(Long.toString(executionBatchId)));
+		key.put(rangeKey, new AttributeValue(PlannerCheckpoint.rangeKeyValue(shardIndex)));
+		GetItemRequest request = new GetItemRequest().withTableName(ddbTableName).withKey(key)
+				.withConsistentRead(true);
+		GetItemResult result = apiConcurrencyLimits.call("GetItem",
+				() -> metrics.call("GetItem", () -> ddbClient.getItem(request)));
+		Map<String, AttributeValue> item = result.getItem();
+		if (item == null || item.isEmpty())
+			return null;
+
+		PlannerCheckpoint checkpoint = new PlannerCheckpoint();
+		if (item.containsKey("next_database"))
+			checkpoint.setNextDatabase(item.get("next_database").getS());
+		if (item.containsKey("tables_next_token"))
+			checkpoint.setTablesNextToken(item.get("tables_next_token").getS());
+		if (item.containsKey("completed"))
+			checkpoint.setCompleted(Boolean.TRUE.equals(item.get("completed").getBOOL()));
+		if (item.containsKey("continuation_count"))
+			checkpoint.setContinuationCount(Integer.parseInt(item.get("continuation_count").getN()));
+		return checkpoint;
+	}
+
+	/**
+	 * Method to buffer the state of a table after its cleanup. The item is written
+	 * by the batch writer together with other items and replaces the state of
+	 * the previous cleanup.
+	 * 
+	 * @param batchWriter
+	 * @param ddbTableName
+	 * @param databaseName
+	 * @param tableName
+	 * @param tableState
+	 */
+	public void insertTableStateToDynamoDB(DDBBatchWriter batchWriter, String ddbTableName, String databaseName,
+			String tableName, TableState tableState) {
+
+		batchWriter.write(ddbTableName, createTableStateItem(databaseName, tableName, tableState),
+				TableState.HASH_KEY);
+	}
+
+	/**
+	 * Method to create the item holding the state of a table after its cleanup.
+	 * 
+	 * @return
+	 */
+	public Map<String, AttributeValue> createTableStateItem(String databaseName, String tableName,
+			TableState tableState) {
+
+		Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+		item.put(TableState.HASH_KEY, new AttributeValue(TableState.hashKeyValue(databaseName, tableName)));
+		item.put("table_name", new AttributeValue(tableName));
+		item.put("database_name", new AttributeValue(databaseName));
+		item.put("version_id", new AttributeValue().withN(Integer.toString(tableState.getVersionId())));
+		if (tableState.getUpdateTime() != null)
+			item.put("update_time",
+					new AttributeValue().withN(Long.toString(tableState.getUpdateTime().getTime())));
+		item.put("number_of_versions_retained",
+				new AttributeValue().withN(Integer.toString(tableState.getNumberOfVersionsRetained())));
+		item.put("cleanup_time", new AttributeValue(new Date().toString()));
+		return item;
+	}
+
+	/**
+	 * Method to read the states of tables with BatchGetItem requests of up to 100
+	 * keys. Keys that are still unprocessed after maxRetries retries are left
+	 * out, as are tables without a state.
+	 * 
+	 * @param ddbClient
+	 * @param ddbTableName
+	 * @param hashKeyValues values of {@link TableState#hashKeyValue(String, String)}
+	 * @param maxRetries
+	 * @return states by hash key value
+	 */
+	public Map<String, TableState> getTableStatesFromDynamoDB(AmazonDynamoDB ddbClient, String ddbTableName,
+			Collection<String> hashKeyValues, int maxRetries) {
+
+		Map<String, TableState> tableStates = new HashMap<String, TableState>();
+		for (List<String> batch : Iterables.partition(new LinkedHashSet<String>(hashKeyValues), MAX_BATCH_GET_SIZE)) {
+			List<Map<String, AttributeValue>> keys = new ArrayList<Map<String, AttributeValue>>();
+			for (String hashKeyValue : batch) {
+				Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+				key.put(TableState.HASH_KEY, new AttributeValue(hashKeyValue));
+				keys.add(key);
+			}
+			Map<String, KeysAndAttributes> requestItems = new HashMap<String, KeysAndAttributes>();
+			requestItems.put(ddbTableName, new KeysAndAttributes().withKeys(keys));
+			for (int attempt = 0; requestItems != null && !requestItems.isEmpty(); attempt++) {
+				if (attempt > maxRetries) {
+					System.out.printf("States of %d tables could not be read from DynamoDB after %d retries. \n",
+							requestItems.get(ddbTableName).getKeys().size(), maxRetries);
+					break;
+				}
+				if (attempt > 0)
+					backoff(attempt - 1);
+				BatchGetItemRequest request = new BatchGetItemRequest().withRequestItems(requestItems);
+				BatchGetItemResult result = apiConcurrencyLimits.call("BatchGetItem",
+						() -> metrics.call("BatchGetItem", () -> ddbClient.batchGetItem(request)));
+				List<Map<String, AttributeValue>> items = result.getResponses() == null ? null
+						: result.getResponses().get(ddbTableName);
+				if (items != null) {
+					for (Map<String, AttributeValue> item : items) {
+						tableStates.put(item.get(TableState.HASH_KEY).getS(), toTableState(item));
+					}
+				}
+				requestItems = result.getUnprocessedKeys();
+			}
+		}
+		return tableStates;
+	}
+
+	private static TableState toTableState(Map<String, AttributeValue> item) {
+		TableState tableState = new TableState();
+		tableState.setVersionId(Integer.parseInt(item.get("version_id").getN()));
+		if (item.containsKey("update_time"))
+			tableState.setUpdateTime(new Date(Long.parseLong(item.get("update_time").getN())));
+		tableState.setNumberOfVersionsRetained(Integer.parseInt(item.get("number_of_versions_retained").getN()));
+		return tableState;
+	}
+
+	private static void backoff(int attempt) {
+		long ceiling = Math.min(5000L, 50L << Math.min(attempt, 10));
+		try {
+			TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while reading items from DynamoDB.", e);
+		}
+	}
+
+	private boolean putItem(AmazonDynamoDB ddbClient, String ddbTableName, Map<String, AttributeValue> item) {
 		boolean itemInserted = false;
-		DynamoDB dynamoDB = new DynamoDB(ddbClient);
-		Table table = dynamoDB.getTable(ddbTableName);
-		Item item = new Item().withPrimaryKey(hashKey, executionBatchId)
-				.withString(rangeKey, databaseName.concat("|").concat(tableName)).withString("table_name", tableName)
-				.withString("database_name", databaseName).withString("message_sent_time", messageSentTime);
 		// Write the item to the table
-		PutItemOutcome outcome = table.putItem(item);
-		int statusCode = outcome.getPutItemResult().getSdkHttpMetadata().getHttpStatusCode();
+		PutItemRequest request = new PutItemRequest().withTableName(ddbTableName).withItem(item);
+		PutItemResult result = apiConcurrencyLimits.call("PutItem",
+				() -> metrics.call("PutItem", () -> ddbClient.putItem(request)));
+		int statusCode = result.getSdkHttpMetadata().getHttpStatusCode();
 		if (statusCode == 200) {
 			itemInserted = true;
 			System.out.println("Table version inserted to DynamoDB table: " + ddbTableName);
@@ -75,4 +358,4 @@ public class DDBUtil {
 		return itemInserted;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time after which no new work should be started. The cleanup
+ * Lambda derives it from the remaining time of the invocation minus a safety
+ * margin, which is left for in-flight requests, statistics and continuation
+ * messages.
+ */
+public class Deadline {
+
+	private static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+	// the margin takes at most this share of the remaining time, so a margin
+	// larger than the timeout of the function still leaves time for work
+	private static final double MAX_MARGIN_SHARE = 0.5;
+
+	private final long deadlineNanos;
+
+	private Deadline(long deadlineNanos) {
+		this.deadlineNanos = deadlineNanos;
+	}
+
+	/**
+	 * Returns a deadline that is reached after the given time.
+	 *
+	 * @param millis
+	 * @return
+	 */
+	public static Deadline after(long millis) {
+		return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis)));
+	}
+
+	/**
+	 * Returns the deadline of an invocation with the given remaining time. The
+	 * margin is left for in-flight requests and continuations; it is capped at
+	 * half of the remaining time.
+	 *
+	 * @param remainingMillis remaining time of the invocation
+	 * @param marginMillis
+	 * @return
+	 */
+	public static Deadline beforeTimeout(long remainingMillis, long marginMillis) {
+		return after(remainingMillis - Math.min(marginMillis, (long) (remainingMillis * MAX_MARGIN_SHARE)));
+	}
+
+	/**
+	 * Returns a deadline that is never reached.
+	 *
+	 * @return
+	 */
+	public static Deadline none() {
+		return NONE;
+	}
+
+	public boolean isExpired() {
+		return this != NONE && System.nanoTime() - deadlineNanos >= 0;
+	}
+
+	public long getRemainingMillis() {
+		if (this == NONE)
+			return Long.MAX_VALUE;
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+	}
+}
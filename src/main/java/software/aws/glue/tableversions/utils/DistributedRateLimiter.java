@@ -0,0 +1,312 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+
+/**
+ * This class limits the rate of calls per AWS API across all containers and
+ * hosts that share a DynamoDB table, e.g. at most 50 GetTableVersions calls
+ * per second for the whole fleet. Each API has a token bucket stored as an
+ * item of the table:
+ *
+ * api_name (String, partition key), tokens (Number), refilled_at (Number,
+ * epoch millis), version (Number)
+ *
+ * The bucket refills at the rate of its API and holds at most one second of
+ * tokens. Buckets are updated with optimistic locking on version, so
+ * concurrent workers never hand out the same tokens. To keep coordination
+ * traffic low, a worker leases tokens in blocks of leaseSize and hands them to
+ * its own calls locally. Leased tokens that are not used within a second
+ * expire, so a worker cannot save them up for a burst; they are returned to the
+ * shared bucket with the next lease of the worker, so the fleet does not lose
+ * the rate a worker leased but did not use.
+ *
+ * If the table cannot be read or written, calls are let through and the
+ * adaptive concurrency limiter remains the only protection against throttling.
+ */
+public class DistributedRateLimiter {
+
+	private static final DistributedRateLimiter NONE = new DistributedRateLimiter(() -> null, "",
+			Collections.<String, Double>emptyMap(), 1);
+	private static final String HASH_KEY = "api_name";
+	private static final long LEASE_TTL_MILLIS = 1000;
+	private static final long MAX_CONFLICT_BACKOFF_MILLIS = 20;
+
+	private final Supplier<AmazonDynamoDB> ddbClient;
+	private final String ddbTableName;
+	private final int leaseSize;
+	private final Map<String, TokenBucket> buckets = new HashMap<String, TokenBucket>();
+	private final AtomicLong numberOfLeases = new AtomicLong();
+	private final AtomicLong numberOfConflicts = new AtomicLong();
+	private final AtomicLong numberOfErrors = new AtomicLong();
+
+	/**
+	 * @param ddbClient    supplier of the DynamoDB client, called on first lease
+	 * @param ddbTableName table holding the token buckets
+	 * @param ratesPerApi  calls per second per API for the whole fleet
+	 * @param leaseSize    number of tokens leased at once
+	 */
+	public DistributedRateLimiter(Supplier<AmazonDynamoDB> ddbClient, String ddbTableName,
+			Map<String, Double> ratesPerApi, int leaseSize) {
+		this.ddbClient = ddbClient;
+		this.ddbTableName = ddbTableName;
+		this.leaseSize = Math.max(1, leaseSize);
+		for (Map.Entry<String, Double> rate : ratesPerApi.entrySet()) {
+			buckets.put(rate.getKey(), new TokenBucket(rate.getKey(), rate.getValue()));
+		}
+	}
+
+	/**
+	 * Returns a rate limiter that does not limit any API.
+	 *
+	 * @return
+	 */
+	public static DistributedRateLimiter none() {
+		return NONE;
+	}
+
+	/**
+	 * Creates a rate limiter from a list of 'Api:callsPerSecond' pairs separated
+	 * by commas, e.g. 'GetTableVersions:50,BatchDeleteTableVersion:50,GetTables:20'.
+	 * Without a table name or rates, no API is limited.
+	 *
+	 * @param ddbClient
+	 * @param ddbTableName
+	 * @param rates
+	 * @param leaseSize
+	 * @return
+	 */
+	public static DistributedRateLimiter fromConfig(Supplier<AmazonDynamoDB> ddbClient, String ddbTableName,
+			String rates, int leaseSize) {
+		Map<String, Double> ratesPerApi = new HashMap<String, Double>();
+		StringTokenizer tokenizer = new StringTokenizer(rates, ",");
+		while (tokenizer.hasMoreTokens()) {
+			String token = tokenizer.nextToken().trim();
+			int index = token.indexOf(':');
+			Double rate = null;
+			try {
+				rate = index > 0 ? Double.valueOf(token.substring(index + 1).trim()) : null;
+			} catch (NumberFormatException e) {
+				// reported below
+			}
+			if (rate == null || !(rate > 0))
+				throw new IllegalArgumentException("Invalid API rate limit: " + token);
+			ratesPerApi.put(token.substring(0, index).trim(), rate);
+		}
+		if (ratesPerApi.isEmpty() || ddbTableName.isEmpty())
+			return NONE;
+		return new DistributedRateLimiter(ddbClient, ddbTableName, ratesPerApi, leaseSize);
+	}
+
+	/**
+	 * Waits until a call to an API is allowed. APIs without a rate are not
+	 * limited.
+	 *
+	 * @param api name of the API operation, e.g. 'GetTableVersions'
+	 */
+	public void acquire(String api) {
+		TokenBucket bucket = buckets.get(api);
+		if (bucket != null)
+			bucket.acquire();
+	}
+
+	public boolean isEnabled() {
+		return !buckets.isEmpty();
+	}
+
+	public long getNumberOfLeases() {
+		return numberOfLeases.get();
+	}
+
+	public long getNumberOfConflicts() {
+		return numberOfConflicts.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("buckets=%s, lease size=%d, leases=%d, conflicts=%d, errors=%d", buckets.keySet(),
+				leaseSize, numberOfLeases.get(), numberOfConflicts.get(), numberOfErrors.get());
+	}
+
+	/**
+	 * The local view of the token bucket of an API: the tokens leased from the
+	 * shared bucket that are not used yet.
+	 */
+	private class TokenBucket {
+
+		private final String api;
+		private final double ratePerSecond;
+		private final double capacity;
+		// a ReentrantLock rather than a monitor, so virtual threads waiting for a
+		// lease are not pinned to their carrier while DynamoDB is called
+		private final ReentrantLock leaseLock = new ReentrantLock();
+		private int leasedTokens;
+		private long leaseExpiresAtMillis;
+
+		TokenBucket(String api, double ratePerSecond) {
+			this.api = api;
+			this.ratePerSecond = ratePerSecond;
+			this.capacity = Math.max(ratePerSecond, 1);
+		}
+
+		synchronized boolean tryAcquireLeased() {
+			if (leasedTokens > 0 && System.currentTimeMillis() < leaseExpiresAtMillis) {
+				leasedTokens--;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Takes a leased token, or leases a new block first. Only one thread per
+		 * API leases at a time; the other threads wait for its block.
+		 */
+		void acquire() {
+			while (!tryAcquireLeased()) {
+				leaseLock.lock();
+				try {
+					if (tryAcquireLeased())
+						return;
+					int expiredTokens;
+					synchronized (this) {
+						expiredTokens = leasedTokens;
+						leasedTokens = 0;
+					}
+					int leased = lease((int) Math.min(leaseSize, capacity), expiredTokens);
+					synchronized (this) {
+						leasedTokens = leased;
+						leaseExpiresAtMillis = System.currentTimeMillis() + LEASE_TTL_MILLIS;
+					}
+				} finally {
+					leaseLock.unlock();
+				}
+			}
+		}
+
+		/**
+		 * Takes a block of tokens from the shared bucket, waiting until the block
+		 * is available. The expired tokens of the previous lease are put back in
+		 * the same update.
+		 *
+		 * @param requested
+		 * @param expiredTokens tokens of the previous lease that were not used
+		 * @return number of tokens leased
+		 */
+		private int lease(int requested, int expiredTokens) {
+			while (true) {
+				Map<String, AttributeValue> item;
+				try {
+					item = getBucket();
+				} catch (RuntimeException e) {
+					return leaseFailed(requested, e);
+				}
+				long now = System.currentTimeMillis();
+				if (item == null) {
+					if (putBucket(capacity - requested, now, requested))
+						return requested;
+					continue;
+				}
+
+				double tokens = Double.parseDouble(item.get("tokens").getN());
+				long refilledAt = Long.parseLong(item.get("refilled_at").getN());
+				long version = Long.parseLong(item.get("version").getN());
+				// clocks of the workers may differ; time never goes back for a bucket
+				long refillTime = Math.max(now, refilledAt);
+				double available = Math.min(capacity,
+						tokens + (refillTime - refilledAt) * ratePerSecond / 1000.0 + expiredTokens);
+				if (available < requested) {
+					// wait for a full block rather than polling for single tokens
+					sleep((long) Math.ceil((requested - available) * 1000.0 / ratePerSecond));
+					continue;
+				}
+				if (updateBucket(available - requested, refillTime, version, requested))
+					return requested;
+			}
+		}
+
+		private Map<String, AttributeValue> getBucket() {
+			GetItemRequest request = new GetItemRequest().withTableName(ddbTableName).withKey(key())
+					.withConsistentRead(true);
+			return ddbClient.get().getItem(request).getItem();
+		}
+
+		private boolean putBucket(double tokens, long refilledAt, int requested) {
+			Map<String, AttributeValue> item = key();
+			item.put("tokens", new AttributeValue().withN(Double.toString(tokens)));
+			item.put("refilled_at", new AttributeValue().withN(Long.toString(refilledAt)));
+			item.put("version", new AttributeValue().withN("1"));
+			PutItemRequest request = new PutItemRequest().withTableName(ddbTableName).withItem(item)
+					.withConditionExpression("attribute_not_exists(" + HASH_KEY + ")");
+			return write(() -> ddbClient.get().putItem(request), requested);
+		}
+
+		private boolean updateBucket(double tokens, long refilledAt, long version, int requested) {
+			Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+			values.put(":tokens", new AttributeValue().withN(Double.toString(tokens)));
+			values.put(":refilled_at", new AttributeValue().withN(Long.toString(refilledAt)));
+			values.put(":version", new AttributeValue().withN(Long.toString(version)));
+			values.put(":next_version", new AttributeValue().withN(Long.toString(version + 1)));
+			UpdateItemRequest request = new UpdateItemRequest().withTableName(ddbTableName).withKey(key())
+					.withUpdateExpression("SET tokens = :tokens, refilled_at = :refilled_at, version = :next_version")
+					.withConditionExpression("version = :version").withExpressionAttributeValues(values);
+			return write(() -> ddbClient.get().updateItem(request), requested);
+		}
+
+		/**
+		 * Writes the bucket. Returns false if another worker changed the bucket in
+		 * the meantime; the lease is then tried again after a short random pause.
+		 */
+		private boolean write(Supplier<?> call, int requested) {
+			try {
+				call.get();
+				numberOfLeases.incrementAndGet();
+				return true;
+			} catch (ConditionalCheckFailedException e) {
+				numberOfConflicts.incrementAndGet();
+				sleep(ThreadLocalRandom.current().nextLong(MAX_CONFLICT_BACKOFF_MILLIS + 1));
+				return false;
+			} catch (RuntimeException e) {
+				leaseFailed(requested, e);
+				return true;
+			}
+		}
+
+		private int leaseFailed(int requested, RuntimeException e) {
+			numberOfErrors.incrementAndGet();
+			System.out.printf("Token bucket of %s in DynamoDB table '%s' is not available; calls are not rate limited. %s \n",
+					api, ddbTableName, e.getLocalizedMessage());
+			return requested;
+		}
+
+		private Map<String, AttributeValue> key() {
+			Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+			key.put(HASH_KEY, new AttributeValue(api));
+			return key;
+		}
+
+		private void sleep(long millis) {
+			try {
+				Thread.sleep(Math.max(1, millis));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while waiting for a token of " + api + ".", e);
+			}
+		}
+	}
+}
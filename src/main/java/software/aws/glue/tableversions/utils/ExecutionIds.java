@@ -0,0 +1,43 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * This class derives the execution id of a statistics item. All tables of a
+ * planner run share the execution batch id, the sort key of the statistics
+ * table, so the execution id, its partition key, has to differ per table;
+ * tables cleaned up concurrently in the same millisecond would otherwise
+ * overwrite each other's item.
+ *
+ * The execution id is a hash of what identifies the cleanup of a table, e.g.
+ * the SQS message id, the database name and the table name. A message that is
+ * delivered again therefore overwrites its own item instead of adding another
+ * one, while a continuation of the table, which is a new message, adds an
+ * item.
+ */
+public final class ExecutionIds {
+
+	private ExecutionIds() {
+	}
+
+	/**
+	 * Returns a non-negative execution id derived from the given parts.
+	 *
+	 * @param parts e.g. the SQS message id, the database name and the table name
+	 * @return
+	 */
+	public static long of(String... parts) {
+		Hasher hasher = Hashing.murmur3_128().newHasher();
+		for (String part : parts) {
+			// the length keeps ('ab', 'c') and ('a', 'bc') apart
+			hasher.putInt(part.length()).putString(part, StandardCharsets.UTF_8);
+		}
+		return hasher.hash().asLong() & Long.MAX_VALUE;
+	}
+}
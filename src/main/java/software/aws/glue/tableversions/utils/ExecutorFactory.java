@@ -0,0 +1,93 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * This class creates the executor services that run per-table and per-batch
+ * work. When the environment variable virtual_threads is true and the JVM
+ * supports virtual threads (Java 21 or later), every task runs on its own
+ * virtual thread; otherwise daemon platform threads are used. Virtual threads
+ * are created through reflection, so the code compiles for Java 8 and the same
+ * build uses virtual threads when it runs on Java 21.
+ *
+ * With virtual threads the number of concurrent tasks is not bounded by a
+ * thread pool; the number of requests per API is bounded by
+ * {@link ApiConcurrencyLimits} and the AWS Glue concurrency limiter instead.
+ */
+public final class ExecutorFactory {
+
+	private static final boolean VIRTUAL_THREADS = Boolean
+			.parseBoolean(Optional.ofNullable(System.getenv("virtual_threads")).orElse("false"))
+			&& supportsVirtualThreads();
+
+	private ExecutorFactory() {
+	}
+
+	public static boolean isVirtualThreadsEnabled() {
+		return VIRTUAL_THREADS;
+	}
+
+	/**
+	 * Returns an executor service that starts a thread for every task that
+	 * cannot be run by an idle thread.
+	 *
+	 * @param nameFormat thread name format, e.g. 'table-version-delete-%d'
+	 * @return
+	 */
+	public static ExecutorService newCachedExecutorService(String nameFormat) {
+		if (VIRTUAL_THREADS)
+			return newVirtualThreadPerTaskExecutor(nameFormat);
+		return Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build());
+	}
+
+	/**
+	 * Returns an executor service for tasks that are spread over parallelism
+	 * work-stealing threads, or over virtual threads.
+	 *
+	 * @param parallelism
+	 * @param nameFormat
+	 * @return
+	 */
+	public static ExecutorService newWorkStealingExecutorService(int parallelism, String nameFormat) {
+		if (VIRTUAL_THREADS)
+			return newVirtualThreadPerTaskExecutor(nameFormat);
+		return new ForkJoinPool(Math.max(1, parallelism));
+	}
+
+	private static boolean supportsVirtualThreads() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException e) {
+			System.out.println("Virtual threads are not supported by this JVM; platform threads are used.");
+			return false;
+		}
+	}
+
+	private static ExecutorService newVirtualThreadPerTaskExecutor(String nameFormat) {
+		try {
+			// Thread.ofVirtual().name(prefix, 0).factory()
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+			String prefix = nameFormat.replace("%d", "");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+			ThreadFactory threadFactory = (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+					.getMethod("factory").invoke(builder);
+			Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor",
+					ThreadFactory.class);
+			return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Cannot create virtual thread executor.", e);
+		}
+	}
+}
@@ -7,6 +7,20 @@ public class GlueTable {
 	
 	private String databaseName;
 	private String tableName;
+	// Set on continuation messages only: versions older than this version id are
+	// still to be deleted, and the number of times the table has been requeued.
+	private Integer deleteVersionsOlderThan;
+	private int continuationCount;
+	// Resume point of a continuation: the range of version ids whose deletion was
+	// skipped, and the GetTableVersions NextToken at which listing stopped.
+	private Integer deleteVersionsFrom;
+	private Integer deleteVersionsTo;
+	private String tableVersionsNextToken;
+	// Estimated number of versions to delete; the planner publishes the most
+	// expensive message groups first.
+	private int estimatedVersionsToDelete;
+	// Number of times the cleanup of the table failed inside a packed message
+	private int failureCount;
 	public String getDatabaseName() {
 		return databaseName;
 	}
@@ -19,6 +33,52 @@ public class GlueTable {
 	public void setTableName(String tableName) {
 		this.tableName = tableName;
 	}
+	public Integer getDeleteVersionsOlderThan() {
+		return deleteVersionsOlderThan;
+	}
+	public void setDeleteVersionsOlderThan(Integer deleteVersionsOlderThan) {
+		this.deleteVersionsOlderThan = deleteVersionsOlderThan;
+	}
+	public Integer getDeleteVersionsFrom() {
+		return deleteVersionsFrom;
+	}
+	public void setDeleteVersionsFrom(Integer deleteVersionsFrom) {
+		this.deleteVersionsFrom = deleteVersionsFrom;
+	}
+	public Integer getDeleteVersionsTo() {
+		return deleteVersionsTo;
+	}
+	public void setDeleteVersionsTo(Integer deleteVersionsTo) {
+		this.deleteVersionsTo = deleteVersionsTo;
+	}
+	public String getTableVersionsNextToken() {
+		return tableVersionsNextToken;
+	}
+	public void setTableVersionsNextToken(String tableVersionsNextToken) {
+		this.tableVersionsNextToken = tableVersionsNextToken;
+	}
+	public int getContinuationCount() {
+		return continuationCount;
+	}
+	public void setContinuationCount(int continuationCount) {
+		this.continuationCount = continuationCount;
+	}
+
+	public int getEstimatedVersionsToDelete() {
+		return estimatedVersionsToDelete;
+	}
+
+	public void setEstimatedVersionsToDelete(int estimatedVersionsToDelete) {
+		this.estimatedVersionsToDelete = estimatedVersionsToDelete;
+	}
+
+	public int getFailureCount() {
+		return failureCount;
+	}
+
+	public void setFailureCount(int failureCount) {
+		this.failureCount = failureCount;
+	}
 	
 
 }
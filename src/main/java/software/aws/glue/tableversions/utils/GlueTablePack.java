@@ -0,0 +1,85 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+/**
+ * This class is the payload of an SQS message that carries several small
+ * tables, e.g. {"tables":[{"databaseName":"db","tableName":"t1"},...]}. A
+ * message with a single table is sent as a plain {@link GlueTable}, so
+ * single-table messages keep their format.
+ */
+public class GlueTablePack {
+
+	private List<GlueTable> tables = new ArrayList<GlueTable>();
+
+	public GlueTablePack() {
+	}
+
+	public GlueTablePack(List<GlueTable> tables) {
+		this.tables = tables;
+	}
+
+	public static GlueTablePack of(GlueTable table) {
+		return new GlueTablePack(new ArrayList<GlueTable>(Collections.singletonList(table)));
+	}
+
+	public List<GlueTable> getTables() {
+		return tables;
+	}
+
+	public void setTables(List<GlueTable> tables) {
+		this.tables = tables;
+	}
+
+	public boolean isPacked() {
+		return tables.size() > 1;
+	}
+
+	/**
+	 * Returns the sum of the estimated versions to delete of the tables.
+	 *
+	 * @return
+	 */
+	public long getEstimatedVersionsToDelete() {
+		long estimatedVersionsToDelete = 0;
+		for (GlueTable table : tables) {
+			estimatedVersionsToDelete += table.getEstimatedVersionsToDelete();
+		}
+		return estimatedVersionsToDelete;
+	}
+
+	/**
+	 * Serializes the pack as message body; a single table is serialized as a
+	 * plain GlueTable.
+	 *
+	 * @param gson
+	 * @return
+	 */
+	public String toJson(Gson gson) {
+		return isPacked() ? gson.toJson(this) : gson.toJson(tables.get(0));
+	}
+
+	/**
+	 * Parses a message body holding either a single GlueTable or a pack of
+	 * tables.
+	 *
+	 * @param gson
+	 * @param message
+	 * @return
+	 */
+	public static GlueTablePack fromJson(Gson gson, String message) {
+		JsonElement json = JsonParser.parseString(message);
+		if (json.isJsonObject() && json.getAsJsonObject().has("tables"))
+			return gson.fromJson(json, GlueTablePack.class);
+		return of(gson.fromJson(json, GlueTable.class));
+	}
+}
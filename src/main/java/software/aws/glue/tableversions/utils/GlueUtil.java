@@ -4,20 +4,26 @@
 package software.aws.glue.tableversions.utils;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
 
 import com.amazonaws.services.glue.AWSGlue;
 import com.amazonaws.services.glue.model.BatchDeleteTableVersionRequest;
 import com.amazonaws.services.glue.model.BatchDeleteTableVersionResult;
 import com.amazonaws.services.glue.model.Database;
 import com.amazonaws.services.glue.model.EntityNotFoundException;
+import com.amazonaws.services.glue.model.ErrorDetail;
 import com.amazonaws.services.glue.model.GetDatabaseRequest;
 import com.amazonaws.services.glue.model.GetDatabaseResult;
 import com.amazonaws.services.glue.model.GetDatabasesRequest;
 import com.amazonaws.services.glue.model.GetDatabasesResult;
+import com.amazonaws.services.glue.model.GetTableRequest;
+import com.amazonaws.services.glue.model.GetTableResult;
 import com.amazonaws.services.glue.model.GetTableVersionsRequest;
 import com.amazonaws.services.glue.model.GetTableVersionsResult;
 import com.amazonaws.services.glue.model.GetTablesRequest;
@@ -26,9 +32,80 @@ import com.amazonaws.services.glue.model.Table;
 import com.amazonaws.services.glue.model.TableVersion;
 import com.amazonaws.services.glue.model.TableVersionError;
 import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
 
 public class GlueUtil {
 
+	private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+	private final ApiConcurrencyLimits apiConcurrencyLimits;
+	private final DistributedRateLimiter rateLimiter;
+	private final InvocationMetrics metrics;
+
+	public GlueUtil() {
+		this(null);
+	}
+
+	/**
+	 * Creates a GlueUtil which runs all AWS Glue calls under the given adaptive
+	 * concurrency limiter.
+	 * 
+	 * @param concurrencyLimiter
+	 */
+	public GlueUtil(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+		this(concurrencyLimiter, ApiConcurrencyLimits.none());
+	}
+
+	/**
+	 * Creates a GlueUtil which runs every AWS Glue call within the limit of its
+	 * API first and then under the given adaptive concurrency limiter.
+	 * 
+	 * @param concurrencyLimiter
+	 * @param apiConcurrencyLimits
+	 */
+	public GlueUtil(AdaptiveConcurrencyLimiter concurrencyLimiter, ApiConcurrencyLimits apiConcurrencyLimits) {
+		this(concurrencyLimiter, apiConcurrencyLimits, DistributedRateLimiter.none());
+	}
+
+	/**
+	 * Creates a GlueUtil which in addition takes a token of the fleet-wide rate
+	 * limiter before every attempt of an AWS Glue call, including retries after
+	 * throttling.
+	 * 
+	 * @param concurrencyLimiter
+	 * @param apiConcurrencyLimits
+	 * @param rateLimiter
+	 */
+	public GlueUtil(AdaptiveConcurrencyLimiter concurrencyLimiter, ApiConcurrencyLimits apiConcurrencyLimits,
+			DistributedRateLimiter rateLimiter) {
+		this(concurrencyLimiter, apiConcurrencyLimits, rateLimiter, new InvocationMetrics(""));
+	}
+
+	/**
+	 * Creates a GlueUtil which in addition records the latency and outcome of
+	 * every attempt of an AWS Glue call, and the number of table versions listed
+	 * and deleted.
+	 * 
+	 * @param concurrencyLimiter
+	 * @param apiConcurrencyLimits
+	 * @param rateLimiter
+	 * @param metrics
+	 */
+	public GlueUtil(AdaptiveConcurrencyLimiter concurrencyLimiter, ApiConcurrencyLimits apiConcurrencyLimits,
+			DistributedRateLimiter rateLimiter, InvocationMetrics metrics) {
+		this.concurrencyLimiter = concurrencyLimiter;
+		this.apiConcurrencyLimits = apiConcurrencyLimits;
+		this.rateLimiter = rateLimiter;
+		this.metrics = metrics;
+	}
+
+	public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+
+	public InvocationMetrics getMetrics() {
+		return metrics;
+	}
+
 	/**
 	 * Get all versions of a table
 	 * 
@@ -45,7 +122,7 @@ public class GlueUtil {
 		GetTableVersionsRequest getTableVersionsRequest = new GetTableVersionsRequest();
 		getTableVersionsRequest.setTableName(tableName);
 		getTableVersionsRequest.setDatabaseName(databaseName);
-		GetTableVersionsResult getTableVersionsResult = glueClient.getTableVersions(getTableVersionsRequest);
+		GetTableVersionsResult getTableVersionsResult = invokeGetTableVersions(glueClient, getTableVersionsRequest);
 		List<TableVersion> tableVersionList = getTableVersionsResult.getTableVersions();
 		masterTableVersionList.addAll(tableVersionList);
 
@@ -57,7 +134,7 @@ public class GlueUtil {
 				getTableVersionsRequest.setTableName(tableName);
 				getTableVersionsRequest.setDatabaseName(databaseName);
 				getTableVersionsRequest.setNextToken(tableVersionsNextToken);
-				getTableVersionsResult = glueClient.getTableVersions(getTableVersionsRequest);
+				getTableVersionsResult = invokeGetTableVersions(glueClient, getTableVersionsRequest);
 				tableVersionList = getTableVersionsResult.getTableVersions();
 				masterTableVersionList.addAll(tableVersionList);
 				tableVersionsNextToken = getTableVersionsResult.getNextToken();
@@ -66,6 +143,76 @@ public class GlueUtil {
 		return masterTableVersionList;
 	}
 
+	/**
+	 * Get all versions of a table in streaming mode. Each page of table versions
+	 * is projected down to primitive version ids right away and offered to a
+	 * bounded heap which retains the newest versions. Versions evicted from the
+	 * heap are handed to the eviction consumer while the listing continues.
+	 *
+	 * @param glueClient
+	 * @param tableName
+	 * @param databaseName
+	 * @param numberofVersionsToRetain
+	 * @param evictedVersionConsumer
+	 * @return
+	 */
+	public VersionRetentionHeap getTableVersionsStreaming(AWSGlue glueClient, String tableName, String databaseName,
+			int numberofVersionsToRetain, IntConsumer evictedVersionConsumer) {
+		return getTableVersionsStreaming(glueClient, tableName, databaseName, numberofVersionsToRetain,
+				evictedVersionConsumer, tableVersion -> {
+				});
+	}
+
+	/**
+	 * Get all versions of a table in streaming mode, and hand every listed table
+	 * version to the table version consumer before it is projected to its id.
+	 *
+	 * @param glueClient
+	 * @param tableName
+	 * @param databaseName
+	 * @param numberofVersionsToRetain
+	 * @param evictedVersionConsumer
+	 * @param tableVersionConsumer
+	 * @return
+	 */
+	public VersionRetentionHeap getTableVersionsStreaming(AWSGlue glueClient, String tableName, String databaseName,
+			int numberofVersionsToRetain, IntConsumer evictedVersionConsumer,
+			Consumer<TableVersion> tableVersionConsumer) {
+
+		VersionRetentionHeap retentionHeap = new VersionRetentionHeap(numberofVersionsToRetain,
+				evictedVersionConsumer);
+		String tableVersionsNextToken = null;
+		do {
+			GetTableVersionsResult getTableVersionsResult = getTableVersionsPage(glueClient, tableName, databaseName,
+					tableVersionsNextToken);
+			for (TableVersion tableVersion : getTableVersionsResult.getTableVersions()) {
+				tableVersionConsumer.accept(tableVersion);
+				retentionHeap.offer(Integer.parseInt(tableVersion.getVersionId()));
+			}
+			tableVersionsNextToken = getTableVersionsResult.getNextToken();
+		} while (Optional.ofNullable(tableVersionsNextToken).isPresent());
+		return retentionHeap;
+	}
+
+	/**
+	 * Get a single page of versions of a table.
+	 *
+	 * @param glueClient
+	 * @param tableName
+	 * @param databaseName
+	 * @param nextToken    NextToken of the previous page, or null for the first
+	 *                     page
+	 * @return
+	 */
+	public GetTableVersionsResult getTableVersionsPage(AWSGlue glueClient, String tableName, String databaseName,
+			String nextToken) {
+		GetTableVersionsRequest getTableVersionsRequest = new GetTableVersionsRequest();
+		getTableVersionsRequest.setTableName(tableName);
+		getTableVersionsRequest.setDatabaseName(databaseName);
+		getTableVersionsRequest.setNextToken(nextToken);
+		return invokeGetTableVersions(glueClient, getTableVersionsRequest);
+	}
+
 	/**
 	 * Get all tables of a database
 	 * 
@@ -78,43 +225,206 @@ public class GlueUtil {
 		List<Table> masterTableList = new ArrayList<Table>();
 		// Iterate through all the databases
 		for (Database db : databaseList) {
-			String databaseName = db.getName();
-			// Get tables
-			GetTablesRequest getTablesRequest = new GetTablesRequest();
-			getTablesRequest.setDatabaseName(databaseName);
-			GetTablesResult getTablesResult = glue.getTables(getTablesRequest);
-			List<Table> tableList = getTablesResult.getTableList();
-			for (Table table : tableList) {
-				if (!Optional.ofNullable(table.getTargetTable()).isPresent()) {
-					masterTableList.add(table);
-				} else {
-					System.out.printf("Table '%s' under database '%s' seems to have resource linked from AWS Account Id: '%s'. So, it will be skipped. \n",
-							table.getName(), table.getDatabaseName(), table.getTargetTable().getCatalogId());
-				}
-			}
-			String tableResultNextToken = getTablesResult.getNextToken();
-			if (Optional.ofNullable(tableResultNextToken).isPresent()) {
-				do {
-					getTablesRequest = new GetTablesRequest();
-					getTablesRequest.setDatabaseName(databaseName);
-					getTablesRequest.setNextToken(tableResultNextToken);
-					getTablesResult = glue.getTables(getTablesRequest);
-					tableList = getTablesResult.getTableList();
-					for (Table table : tableList) {
-						if (!Optional.ofNullable(table.getTargetTable()).isPresent()) {
-							masterTableList.add(table);
-						} else {
-							System.out.printf("Table '%s' under database '%s' seems to have resource linked from AWS Account Id: '%s'. So, it will be skipped. \n",
-									table.getName(), table.getDatabaseName(), table.getTargetTable().getCatalogId());
-						}
-					}
-					tableResultNextToken = getTablesResult.getNextToken();
-				} while (Optional.ofNullable(tableResultNextToken).isPresent());
-			}
+			getTables(glue, db.getName(), homeCatalogId, masterTableList::addAll);
 		}
 		return masterTableList;
 	}
 
+	/**
+	 * Get all tables of a single database. Each page of tables is handed to the
+	 * page consumer as soon as it arrives; tables that are resource linked from
+	 * another account are filtered out.
+	 * 
+	 * @param glue
+	 * @param databaseName
+	 * @param homeCatalogId
+	 * @param pageConsumer
+	 */
+	public void getTables(AWSGlue glue, String databaseName, String homeCatalogId,
+			Consumer<List<Table>> pageConsumer) {
+		getTables(glue, databaseName, homeCatalogId, null, pageConsumer);
+	}
+
+	/**
+	 * Get the tables of a single database whose names match an expression. The
+	 * expression is evaluated by AWS Glue, so tables that do not match are not
+	 * transferred at all.
+	 * 
+	 * @param glue
+	 * @param databaseName
+	 * @param homeCatalogId
+	 * @param expression    regular expression for table names, or null for all
+	 *                      tables
+	 * @param pageConsumer
+	 */
+	public void getTables(AWSGlue glue, String databaseName, String homeCatalogId, String expression,
+			Consumer<List<Table>> pageConsumer) {
+		getTables(glue, databaseName, homeCatalogId, expression, null,
+				(tableList, nextToken) -> pageConsumer.accept(tableList));
+	}
+
+	/**
+	 * Get the tables of a single database from a NextToken on. Each page is
+	 * handed to the page consumer with the NextToken of the page after it, which
+	 * is null for the last page.
+	 * 
+	 * @param glue
+	 * @param databaseName
+	 * @param homeCatalogId
+	 * @param expression    regular expression for table names, or null for all
+	 *                      tables
+	 * @param nextToken     NextToken of the first page, or null to start at the
+	 *                      first table
+	 * @param pageConsumer
+	 */
+	public void getTables(AWSGlue glue, String databaseName, String homeCatalogId, String expression,
+			String nextToken, BiConsumer<List<Table>, String> pageConsumer) {
+
+		String tableResultNextToken = nextToken;
+		do {
+			GetTablesResult getTablesResult = getTablesPage(glue, databaseName, expression, tableResultNextToken);
+			tableResultNextToken = getTablesResult.getNextToken();
+			pageConsumer.accept(filterResourceLinkedTables(getTablesResult.getTableList()), tableResultNextToken);
+		} while (Optional.ofNullable(tableResultNextToken).isPresent());
+	}
+
+	/**
+	 * Get a single page of tables of a database.
+	 * 
+	 * @param glue
+	 * @param databaseName
+	 * @param nextToken
+	 * @return
+	 */
+	public GetTablesResult getTablesPage(AWSGlue glue, String databaseName, String nextToken) {
+		return getTablesPage(glue, databaseName, null, nextToken);
+	}
+
+	/**
+	 * Get a single page of tables of a database whose names match an expression.
+	 * 
+	 * @param glue
+	 * @param databaseName
+	 * @param expression
+	 * @param nextToken
+	 * @return
+	 */
+	public GetTablesResult getTablesPage(AWSGlue glue, String databaseName, String expression, String nextToken) {
+		GetTablesRequest getTablesRequest = new GetTablesRequest();
+		getTablesRequest.setDatabaseName(databaseName);
+		getTablesRequest.setExpression(expression);
+		getTablesRequest.setNextToken(nextToken);
+		return invokeGetTables(glue, getTablesRequest);
+	}
+
+	/**
+	 * Filter out tables that are resource linked from another AWS account.
+	 * 
+	 * @param tableList
+	 * @return
+	 */
+	public List<Table> filterResourceLinkedTables(List<Table> tableList) {
+		List<Table> filteredTableList = new ArrayList<Table>(tableList.size());
+		for (Table table : tableList) {
+			if (!Optional.ofNullable(table.getTargetTable()).isPresent()) {
+				filteredTableList.add(table);
+			} else {
+				System.out.printf("Table '%s' under database '%s' seems to have resource linked from AWS Account Id: '%s'. So, it will be skipped. \n",
+						table.getName(), table.getDatabaseName(), table.getTargetTable().getCatalogId());
+			}
+		}
+		return filteredTableList;
+	}
+
+	/**
+	 * Check whether a table can have more versions than the number of versions to
+	 * retain, based on its current VersionId. Version ids are assigned in
+	 * ascending order starting from 0 or 1, so a table whose current version id
+	 * is V has at most V + 1 versions. Tables without a readable version id are
+	 * always considered for cleanup.
+	 * 
+	 * @param table
+	 * @param numberofVersionsToRetain
+	 * @return
+	 */
+	public static boolean canExceedRetention(Table table, int numberofVersionsToRetain) {
+		Integer currentVersionId = Ints.tryParse(Optional.ofNullable(table.getVersionId()).orElse(""));
+		if (currentVersionId == null)
+			return true;
+		return (long) currentVersionId + 1 > numberofVersionsToRetain;
+	}
+
+	/**
+	 * Check whether a table can have more versions than the number of versions to
+	 * retain, based on the state recorded after its last cleanup. Without a state
+	 * that describes the table, e.g. before its first cleanup, the check falls
+	 * back to its current VersionId.
+	 * 
+	 * @param table
+	 * @param tableState state of the table, or null
+	 * @param numberofVersionsToRetain
+	 * @return
+	 */
+	public static boolean canExceedRetention(Table table, TableState tableState, int numberofVersionsToRetain) {
+		if (tableState == null || !tableState.describes(table))
+			return canExceedRetention(table, numberofVersionsToRetain);
+		return tableState.getMaxNumberOfVersions(table) > numberofVersionsToRetain;
+	}
+
+	/**
+	 * Estimate the number of versions a cleanup of a table deletes, based on its
+	 * current VersionId: at most V + 1 versions minus the versions to retain. It
+	 * is an upper bound, as older versions may already have been deleted. Tables
+	 * without a readable version id are estimated at 0.
+	 * 
+	 * @param table
+	 * @param numberofVersionsToRetain
+	 * @return
+	 */
+	public static int estimateVersionsToDelete(Table table, int numberofVersionsToRetain) {
+		Integer currentVersionId = Ints.tryParse(Optional.ofNullable(table.getVersionId()).orElse(""));
+		if (currentVersionId == null)
+			return 0;
+		return (int) Math.max(0, (long) currentVersionId + 1 - numberofVersionsToRetain);
+	}
+
+	/**
+	 * Estimate the number of versions a cleanup of a table deletes, based on the
+	 * state recorded after its last cleanup, or on its current VersionId without
+	 * a state that describes the table.
+	 * 
+	 * @param table
+	 * @param tableState state of the table, or null
+	 * @param numberofVersionsToRetain
+	 * @return
+	 */
+	public static int estimateVersionsToDelete(Table table, TableState tableState, int numberofVersionsToRetain) {
+		if (tableState == null || !tableState.describes(table))
+			return estimateVersionsToDelete(table, numberofVersionsToRetain);
+		return (int) Math.max(0, tableState.getMaxNumberOfVersions(table) - numberofVersionsToRetain);
+	}
+
+	/**
+	 * This method gets an AWS Glue table. It returns null when the table does not
+	 * exist (anymore).
+	 * 
+	 * @param glue
+	 * @param databaseName
+	 * @param tableName
+	 * @return
+	 */
+	public Table getTable(AWSGlue glue, String databaseName, String tableName) {
+		GetTableRequest getTableRequest = new GetTableRequest();
+		getTableRequest.setDatabaseName(databaseName);
+		getTableRequest.setName(tableName);
+		try {
+			return invokeGetTable(glue, getTableRequest).getTable();
+		} catch (EntityNotFoundException exception) {
+			System.out.printf("Table '%s' under database '%s' does not exist. \n", tableName, databaseName);
+			return null;
+		}
+	}
+
 	/**
 	 * This method gets AWS Glue Database based on a provided name
 	 * 
@@ -128,7 +438,7 @@ public class GlueUtil {
 		getDatabaseRequest.setName(databaseName);
 		getDatabaseRequest.setCatalogId(homeCatalogId);
 		try {
-			GetDatabaseResult getDatabaseResult = glue.getDatabase(getDatabaseRequest);
+			GetDatabaseResult getDatabaseResult = invokeGetDatabase(glue, getDatabaseRequest);
 			database = getDatabaseResult.getDatabase();
 		} catch (EntityNotFoundException exception) {
 			System.out.printf(
@@ -148,7 +458,7 @@ public class GlueUtil {
 	public List<Database> getDatabases(AWSGlue glue, String homeCatalogId) {
 		List<Database> masterDatabaseList = new ArrayList<Database>();
 		GetDatabasesRequest getDatabasesRequest = new GetDatabasesRequest();
-		GetDatabasesResult getDatabasesResult = glue.getDatabases(getDatabasesRequest);
+		GetDatabasesResult getDatabasesResult = invokeGetDatabases(glue, getDatabasesRequest);
 		List<Database> databaseList = getDatabasesResult.getDatabaseList();
 		
 		// filter databases that are resource linked
@@ -166,7 +476,7 @@ public class GlueUtil {
 				// creating a new GetDatabasesRequest using next token.
 				getDatabasesRequest = new GetDatabasesRequest();
 				getDatabasesRequest.setNextToken(databaseResultNextToken);
-				getDatabasesResult = glue.getDatabases(getDatabasesRequest);
+				getDatabasesResult = invokeGetDatabases(glue, getDatabasesRequest);
 				databaseList = getDatabasesResult.getDatabaseList();
 				// filter databases that are resource linked
 				for (Database database : databaseList) {
@@ -196,50 +506,112 @@ public class GlueUtil {
 			String tableName, String databaseName) {
 
 		// This code deletes 100 versions at a time. So, it breaks the input list into
-		// smaller
-		// Lists of size 100.
+		// smaller Lists of size 100.
 		List<TableVersionStatus> versionsNotDeleted = new ArrayList<TableVersionStatus>();
-		List<List<Integer>> listofSmallerLists = Lists.partition(listofVersionsToDelete, 100);
+		for (List<String> versionIdSmallerList : partitionVersionIds(listofVersionsToDelete, 100)) {
+			versionsNotDeleted
+					.addAll(deleteTableVersionBatch(glueClient, versionIdSmallerList, tableName, databaseName));
+		}
+		return versionsNotDeleted;
+	}
+
+	/**
+	 * Method to delete a list of tables versions with up to maxInFlightRequests
+	 * BatchDeleteTableVersion requests in flight at a time.
+	 * 
+	 * @param glueClient
+	 * @param listofVersionsToDelete
+	 * @param tableName
+	 * @param databaseName
+	 * @param executorService
+	 * @param maxInFlightRequests
+	 * @return
+	 */
+	public List<TableVersionStatus> deleteTableVersions(AWSGlue glueClient, List<Integer> listofVersionsToDelete,
+			String tableName, String databaseName, ExecutorService executorService, int maxInFlightRequests) {
 
-		for (List<Integer> smallerList : listofSmallerLists) {
-			List<String> versionIdSmallerList = new ArrayList<String>();
+		if (executorService == null || maxInFlightRequests <= 1)
+			return deleteTableVersions(glueClient, listofVersionsToDelete, tableName, databaseName);
+
+		TableVersionDeleteExecutor deleteExecutor = new TableVersionDeleteExecutor(this, glueClient, tableName,
+				databaseName, executorService, maxInFlightRequests);
+		for (List<String> versionIdSmallerList : partitionVersionIds(listofVersionsToDelete, 100)) {
+			deleteExecutor.submit(versionIdSmallerList);
+		}
+		return deleteExecutor.awaitCompletion();
+	}
+
+	/**
+	 * Method to delete up to 100 table versions using a single
+	 * BatchDeleteTableVersion request.
+	 * 
+	 * @param glueClient
+	 * @param versionIds
+	 * @param tableName
+	 * @param databaseName
+	 * @return
+	 */
+	public List<TableVersionStatus> deleteTableVersionBatch(AWSGlue glueClient, List<String> versionIds,
+			String tableName, String databaseName) {
+
+		if (versionIds.isEmpty())
+			return new ArrayList<TableVersionStatus>();
+
+		// BatchDeleteTableVersionRequest
+		BatchDeleteTableVersionRequest batchDeleteTableVersionRequest = new BatchDeleteTableVersionRequest();
+		batchDeleteTableVersionRequest.setDatabaseName(databaseName);
+		batchDeleteTableVersionRequest.setTableName(tableName);
+		batchDeleteTableVersionRequest.setVersionIds(versionIds);
+
+		// execute batchDelete operation
+		BatchDeleteTableVersionResult batchDeleteTableVersionResult = invokeBatchDeleteTableVersion(glueClient,
+				batchDeleteTableVersionRequest);
+
+		return collectVersionsNotDeleted(batchDeleteTableVersionResult, tableName, databaseName);
+	}
+
+	private List<TableVersionStatus> collectVersionsNotDeleted(
+			BatchDeleteTableVersionResult batchDeleteTableVersionResult, String tableName, String databaseName) {
+
+		List<TableVersionStatus> versionsNotDeleted = new ArrayList<TableVersionStatus>();
+		// Check the result and collect rejected records
+		if (batchDeleteTableVersionResult.getErrors().isEmpty()) {
+			System.out.printf("Up to 100 table versions deleted successfully for table '%s' under database '%s' \n",
+					tableName, databaseName);
+		} else {
+			List<TableVersionError> tableVersionErrors = batchDeleteTableVersionResult.getErrors();
+			for (TableVersionError tvError : tableVersionErrors) {
+				TableVersionStatus tvStatus = new TableVersionStatus();
+				tvStatus.setDatabaseName(databaseName);
+				tvStatus.setDeleted(false);
+				tvStatus.setTableName(tvError.getTableName());
+				tvStatus.setVersionId(tvError.getVersionId());
+				tvStatus.setErrorCode(Optional.ofNullable(tvError.getErrorDetail()).map(ErrorDetail::getErrorCode)
+						.orElse(null));
+				versionsNotDeleted.add(tvStatus);
+			}
+		}
+		return versionsNotDeleted;
+	}
+
+	/**
+	 * Method to break a list of version ids into lists of version id strings of a
+	 * given size, as expected by BatchDeleteTableVersionRequest.
+	 * 
+	 * @param versionIds
+	 * @param batchSize
+	 * @return
+	 */
+	public static List<List<String>> partitionVersionIds(List<Integer> versionIds, int batchSize) {
+		List<List<String>> batches = new ArrayList<List<String>>();
+		for (List<Integer> smallerList : Lists.partition(versionIds, batchSize)) {
+			List<String> versionIdSmallerList = new ArrayList<String>(smallerList.size());
 			for (Integer versionId : smallerList) {
 				versionIdSmallerList.add(Integer.toString(versionId));
 			}
-			// Batch Delete Table versions 100 items at a time.
-			if (versionIdSmallerList.size() >= 1) {
-
-				// BatchDeleteTableVersionRequest
-				BatchDeleteTableVersionRequest batchDeleteTableVersionRequest = new BatchDeleteTableVersionRequest();
-				batchDeleteTableVersionRequest.setDatabaseName(databaseName);
-				batchDeleteTableVersionRequest.setTableName(tableName);
-				batchDeleteTableVersionRequest.setVersionIds(versionIdSmallerList);
-
-				// execute batchDelete operation
-				BatchDeleteTableVersionResult batchDeleteTableVersionResult = glueClient
-						.batchDeleteTableVersion(batchDeleteTableVersionRequest);
-
-				// Check the result and re-process rejected records
-				batchDeleteTableVersionResult.getSdkHttpMetadata().getHttpStatusCode();
-				if (batchDeleteTableVersionResult.getErrors().isEmpty()) {
-					System.out.printf(
-							"Up to 100 table versions deleted successfully for table '%s' under database '%s' \n",
-							tableName, databaseName);
-				} else {
-					List<TableVersionError> tableVersionErrors = batchDeleteTableVersionResult.getErrors();
-					for (TableVersionError tvError : tableVersionErrors) {
-						TableVersionStatus tvStatus = new TableVersionStatus();
-						tvStatus.setDatabaseName(databaseName);
-						tvStatus.setDeleted(false);
-						tvStatus.setTableName(tvError.getTableName());
-						tvStatus.setVersionId(tvError.getVersionId());
-						versionsNotDeleted.add(tvStatus);
-					}
-				}
-			}
-			versionIdSmallerList.clear();
+			batches.add(versionIdSmallerList);
 		}
-		return versionsNotDeleted;
+		return batches;
 	}
 
 	/**
@@ -254,24 +626,95 @@ public class GlueUtil {
 	public List<List<Integer>> determineOldVersions(List<TableVersion> tableVersionList, String tableName,
 			String databaseName, int numberofVersionsToKeep) {
 
-		List<Integer> versionIdList = new ArrayList<Integer>();
+		VersionSelection selection = selectVersions(tableVersionList, tableName,
+				TableVersionSelector.keepNewest(numberofVersionsToKeep));
+		List<List<Integer>> lists = new ArrayList<List<Integer>>();
+		lists.add(Ints.asList(selection.getVersionsToKeep()));
+		lists.add(Ints.asList(selection.getVersionsToDelete()));
+		return lists;
+	}
+
+	/**
+	 * Method to split table versions into versions to keep and versions to delete
+	 * using a version selector.
+	 * 
+	 * @param tableVersionList
+	 * @param tableName
+	 * @param versionSelector
+	 * @return
+	 */
+	public VersionSelection selectVersions(List<TableVersion> tableVersionList, String tableName,
+			TableVersionSelector versionSelector) {
+
+		VersionSelection selection = versionSelector.select(getVersionIds(tableVersionList));
+		System.out.printf("%d table versions found for table: %s \n", selection.getNumberOfVersions(), tableName);
+		System.out.printf("%d is the current (latest) version of the table: %s \n", selection.getCurrentVersion(),
+				tableName);
+		return selection;
+	}
+
+	/**
+	 * Method to project table versions to primitive version ids.
+	 * 
+	 * @param tableVersionList
+	 * @return
+	 */
+	public static int[] getVersionIds(List<TableVersion> tableVersionList) {
+		int[] versionIds = new int[tableVersionList.size()];
+		int i = 0;
 		for (TableVersion tableVersion : tableVersionList) {
-			// System.out.printf("Table name: %s, Table version: %s \n", tableName,
-			// tableVersion.getVersionId());
-			versionIdList.add(Integer.parseInt(tableVersion.getVersionId()));
+			versionIds[i++] = Integer.parseInt(tableVersion.getVersionId());
 		}
-		// sort the versions in descending order
-		Collections.sort(versionIdList, Collections.reverseOrder());
-		System.out.printf("%d table versions found for table: %s \n", versionIdList.size(), tableName);
-		System.out.printf("%d is the current (latest) version of the table: %s \n", versionIdList.get(0), tableName);
-
-		// Break the list into two parts. The first part is all the most recent table
-		// versions that need to be retained.
-		// the second list contains all the older table version which need to be deleted
-		List<List<Integer>> lists = new ArrayList<List<Integer>>(versionIdList.stream()
-				.collect(Collectors.partitioningBy(s -> versionIdList.indexOf(s) > numberofVersionsToKeep - 1))
-				.values());
-		return lists;
+		return versionIds;
+	}
+
+	private GetTableVersionsResult invokeGetTableVersions(AWSGlue glue, GetTableVersionsRequest request) {
+		return countVersionsListed(invoke("GetTableVersions", () -> glue.getTableVersions(request)));
+	}
+
+	private GetTablesResult invokeGetTables(AWSGlue glue, GetTablesRequest request) {
+		return invoke("GetTables", () -> glue.getTables(request));
+	}
+
+	private GetTableResult invokeGetTable(AWSGlue glue, GetTableRequest request) {
+		return invoke("GetTable", () -> glue.getTable(request));
+	}
+
+	private GetDatabaseResult invokeGetDatabase(AWSGlue glue, GetDatabaseRequest request) {
+		return invoke("GetDatabase", () -> glue.getDatabase(request));
+	}
+
+	private GetDatabasesResult invokeGetDatabases(AWSGlue glue, GetDatabasesRequest request) {
+		return invoke("GetDatabases", () -> glue.getDatabases(request));
 	}
 
+	private BatchDeleteTableVersionResult invokeBatchDeleteTableVersion(AWSGlue glue,
+			BatchDeleteTableVersionRequest request) {
+		return countVersionsDeleted(request.getVersionIds(),
+				invoke("BatchDeleteTableVersion", () -> glue.batchDeleteTableVersion(request)));
+	}
+
+	private GetTableVersionsResult countVersionsListed(GetTableVersionsResult result) {
+		metrics.count(InvocationMetrics.VERSIONS_LISTED, result.getTableVersions().size());
+		return result;
+	}
+
+	private BatchDeleteTableVersionResult countVersionsDeleted(List<String> versionIds,
+			BatchDeleteTableVersionResult result) {
+		metrics.count(InvocationMetrics.VERSIONS_DELETED, versionIds.size() - result.getErrors().size());
+		return result;
+	}
+
+	private <T> T invoke(String api, Supplier<T> call) {
+		// every attempt is measured, including retries after throttling
+		metrics.countCall(api);
+		Supplier<T> measuredCall = () -> metrics.attempt(api, call);
+		Supplier<T> rateLimitedCall = rateLimiter.isEnabled() ? () -> {
+			rateLimiter.acquire(api);
+			return measuredCall.get();
+		} : measuredCall;
+		if (concurrencyLimiter == null)
+			return apiConcurrencyLimits.call(api, rateLimitedCall);
+		return apiConcurrencyLimits.call(api, () -> concurrencyLimiter.execute(rateLimitedCall));
+	}
 }
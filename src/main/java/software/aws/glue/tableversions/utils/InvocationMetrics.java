@@ -0,0 +1,276 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.amazonaws.AmazonServiceException;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * This class collects the metrics of an invocation and writes them to
+ * System.out in the CloudWatch Embedded Metric Format (EMF) when the
+ * invocation ends, so CloudWatch Logs turns them into metrics without
+ * PutMetricData calls:
+ *
+ * Per AWS API operation (dimensions Function, Api): Latency of every attempt as
+ * a histogram and as LatencyP50, LatencyP90, LatencyP99 and LatencyMax; Calls,
+ * Retries, Throttles and Errors.
+ *
+ * Per invocation (dimension Function): VersionsListed and VersionsDeleted, also
+ * per second, TablesCleanedUp and TableCleanupTime as a histogram and
+ * percentiles.
+ *
+ * The metrics of an invocation start with its first recorded event and end
+ * with {@link #flush(String)}, which also resets them for the next invocation
+ * of the container. Without a namespace, nothing is written.
+ */
+public class InvocationMetrics {
+
+	public static final String VERSIONS_LISTED = "VersionsListed";
+	public static final String VERSIONS_DELETED = "VersionsDeleted";
+	public static final String TABLES_CLEANED_UP = "TablesCleanedUp";
+	public static final String TABLE_CLEANUP_TIME = "TableCleanupTime";
+
+	// CloudWatch accepts up to 100 distinct values per metric
+	private static final int MAX_HISTOGRAM_VALUES = 100;
+
+	private final String namespace;
+	private final Gson gson = new Gson();
+	private final AtomicReference<Window> window = new AtomicReference<Window>();
+
+	/**
+	 * @param namespace CloudWatch namespace of the metrics, or an empty string
+	 *                  to not write any metrics
+	 */
+	public InvocationMetrics(String namespace) {
+		this.namespace = namespace;
+	}
+
+	/**
+	 * Execute a call to an API that is not retried, and record its latency and
+	 * outcome.
+	 *
+	 * @param api  name of the API operation, e.g. 'SendMessageBatch'
+	 * @param call
+	 * @return
+	 */
+	public <T> T call(String api, Supplier<T> call) {
+		countCall(api);
+		return attempt(api, call);
+	}
+
+	/**
+	 * Count a call to an API whose attempts are recorded with
+	 * {@link #attempt(String, Supplier)}. Attempts beyond the calls are
+	 * reported as retries.
+	 *
+	 * @param api
+	 */
+	public void countCall(String api) {
+		apiStats(api).calls.increment();
+	}
+
+	/**
+	 * Execute one attempt of a call to an API, and record its latency and
+	 * whether it was throttled or failed.
+	 *
+	 * @param api
+	 * @param attempt
+	 * @return
+	 */
+	public <T> T attempt(String api, Supplier<T> attempt) {
+		ApiStats stats = apiStats(api);
+		long startNanos = System.nanoTime();
+		try {
+			T result = attempt.get();
+			stats.record(System.nanoTime() - startNanos, null);
+			return result;
+		} catch (RuntimeException e) {
+			stats.record(System.nanoTime() - startNanos, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Add to a counter of the invocation, e.g. {@link #VERSIONS_DELETED}.
+	 *
+	 * @param metric
+	 * @param value
+	 */
+	public void count(String metric, long value) {
+		currentWindow().counters.computeIfAbsent(metric, key -> new LongAdder()).add(value);
+	}
+
+	/**
+	 * Record a duration of the invocation, e.g. {@link #TABLE_CLEANUP_TIME}.
+	 *
+	 * @param metric
+	 * @param nanos
+	 */
+	public void recordDuration(String metric, long nanos) {
+		currentWindow().durations.computeIfAbsent(metric, key -> new LatencyHistogram()).recordNanos(nanos);
+	}
+
+	/**
+	 * Write the metrics recorded since the last flush as EMF, one line per AWS
+	 * API operation and one for the invocation, and start over.
+	 *
+	 * @param function value of the Function dimension, e.g. 'Planner'
+	 */
+	public void flush(String function) {
+		Window flushed = window.getAndSet(null);
+		if (flushed == null || namespace.isEmpty())
+			return;
+		long timestamp = System.currentTimeMillis();
+		for (Map.Entry<String, ApiStats> api : flushed.apis.entrySet()) {
+			System.out.println(gson.toJson(toEmf(function, api.getKey(), api.getValue(), timestamp)));
+		}
+		System.out.println(gson.toJson(toEmf(function, flushed, timestamp)));
+	}
+
+	private JsonObject toEmf(String function, String api, ApiStats stats, long timestamp) {
+		JsonObject document = new JsonObject();
+		JsonArray metrics = new JsonArray();
+		document.addProperty("Function", function);
+		document.addProperty("Api", api);
+		addHistogram(document, metrics, "Latency", stats.latency);
+		long calls = stats.calls.sum();
+		addMetric(document, metrics, "Calls", "Count", calls);
+		addMetric(document, metrics, "Retries", "Count", Math.max(0, stats.latency.getCount() - calls));
+		addMetric(document, metrics, "Throttles", "Count", stats.throttles.sum());
+		addMetric(document, metrics, "Errors", "Count", stats.errors.sum());
+		document.add("_aws", metadata(timestamp, metrics, "Function", "Api"));
+		return document;
+	}
+
+	private JsonObject toEmf(String function, Window flushed, long timestamp) {
+		JsonObject document = new JsonObject();
+		JsonArray metrics = new JsonArray();
+		document.addProperty("Function", function);
+		double seconds = Math.max(1, System.nanoTime() - flushed.startNanos) / 1e9;
+		for (Map.Entry<String, LongAdder> counter : flushed.counters.entrySet()) {
+			long value = counter.getValue().sum();
+			addMetric(document, metrics, counter.getKey(), "Count", value);
+			if (VERSIONS_LISTED.equals(counter.getKey()) || VERSIONS_DELETED.equals(counter.getKey()))
+				addMetric(document, metrics, counter.getKey() + "PerSecond", "Count/Second", value / seconds);
+		}
+		for (Map.Entry<String, LatencyHistogram> duration : flushed.durations.entrySet()) {
+			addHistogram(document, metrics, duration.getKey(), duration.getValue());
+		}
+		document.add("_aws", metadata(timestamp, metrics, "Function"));
+		return document;
+	}
+
+	/**
+	 * Adds a histogram as EMF values and counts, and its percentiles as separate
+	 * metrics for alarms.
+	 */
+	private static void addHistogram(JsonObject document, JsonArray metrics, String name,
+			LatencyHistogram histogram) {
+		List<List<Number>> valuesAndCounts = histogram.getValuesAndCounts(MAX_HISTOGRAM_VALUES);
+		JsonObject value = new JsonObject();
+		value.add("Values", toJsonArray(valuesAndCounts.get(0)));
+		value.add("Counts", toJsonArray(valuesAndCounts.get(1)));
+		value.addProperty("Max", histogram.getMaxMillis());
+		value.addProperty("Min", histogram.getMinMillis());
+		value.addProperty("Count", histogram.getCount());
+		value.addProperty("Sum", histogram.getSumMillis());
+		document.add(name, value);
+		metrics.add(metricDefinition(name, "Milliseconds"));
+		addMetric(document, metrics, name + "P50", "Milliseconds", histogram.getPercentileMillis(0.5));
+		addMetric(document, metrics, name + "P90", "Milliseconds", histogram.getPercentileMillis(0.9));
+		addMetric(document, metrics, name + "P99", "Milliseconds", histogram.getPercentileMillis(0.99));
+		addMetric(document, metrics, name + "Max", "Milliseconds", histogram.getMaxMillis());
+	}
+
+	private static void addMetric(JsonObject document, JsonArray metrics, String name, String unit, Number value) {
+		document.addProperty(name, value);
+		metrics.add(metricDefinition(name, unit));
+	}
+
+	private static JsonObject metricDefinition(String name, String unit) {
+		JsonObject definition = new JsonObject();
+		definition.addProperty("Name", name);
+		definition.addProperty("Unit", unit);
+		return definition;
+	}
+
+	private JsonObject metadata(long timestamp, JsonArray metrics, String... dimensions) {
+		JsonArray dimensionSet = new JsonArray();
+		for (String dimension : dimensions) {
+			dimensionSet.add(dimension);
+		}
+		JsonArray dimensionSets = new JsonArray();
+		dimensionSets.add(dimensionSet);
+		JsonObject directive = new JsonObject();
+		directive.addProperty("Namespace", namespace);
+		directive.add("Dimensions", dimensionSets);
+		directive.add("Metrics", metrics);
+		JsonArray directives = new JsonArray();
+		directives.add(directive);
+		JsonObject metadata = new JsonObject();
+		metadata.addProperty("Timestamp", timestamp);
+		metadata.add("CloudWatchMetrics", directives);
+		return metadata;
+	}
+
+	private static JsonArray toJsonArray(List<Number> numbers) {
+		JsonArray array = new JsonArray();
+		for (Number number : numbers) {
+			array.add(number);
+		}
+		return array;
+	}
+
+	private ApiStats apiStats(String api) {
+		return currentWindow().apis.computeIfAbsent(api, key -> new ApiStats());
+	}
+
+	private Window currentWindow() {
+		Window current = window.get();
+		if (current == null) {
+			window.compareAndSet(null, new Window());
+			current = window.get();
+		}
+		return current;
+	}
+
+	/**
+	 * The metrics recorded since the first event after the last flush.
+	 */
+	private static class Window {
+
+		private final long startNanos = System.nanoTime();
+		private final Map<String, ApiStats> apis = new ConcurrentHashMap<String, ApiStats>();
+		private final Map<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+		private final Map<String, LatencyHistogram> durations = new ConcurrentHashMap<String, LatencyHistogram>();
+	}
+
+	private static class ApiStats {
+
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final LongAdder calls = new LongAdder();
+		private final LongAdder throttles = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+
+		void record(long nanos, Throwable error) {
+			latency.recordNanos(nanos);
+			if (error == null)
+				return;
+			if (error instanceof AmazonServiceException
+					&& AdaptiveConcurrencyLimiter.isThrottlingException((AmazonServiceException) error))
+				throttles.increment();
+			else
+				errors.increment();
+		}
+	}
+}
@@ -0,0 +1,39 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import com.amazonaws.services.lambda.AWSLambda;
+import com.amazonaws.services.lambda.model.InvocationType;
+import com.amazonaws.services.lambda.model.InvokeRequest;
+import com.amazonaws.services.lambda.model.InvokeResult;
+
+/**
+ * This is a utility class with methods to invoke AWS Lambda functions.
+ */
+public class LambdaUtil {
+
+	/**
+	 * This method invokes a Lambda function asynchronously.
+	 *
+	 * @param lambdaClient
+	 * @param functionName
+	 * @param payload
+	 * @return
+	 */
+	public boolean invokeAsync(AWSLambda lambdaClient, String functionName, String payload) {
+		int statusCode = 400;
+		InvokeRequest req = new InvokeRequest().withFunctionName(functionName)
+				.withInvocationType(InvocationType.Event).withPayload(payload);
+		try {
+			InvokeResult invokeRes = lambdaClient.invoke(req);
+			statusCode = invokeRes.getStatusCode();
+		} catch (Exception e) {
+			System.out.println("Exception thrown while invoking Lambda function. " + e.getLocalizedMessage());
+		}
+		if (statusCode == 202)
+			return true;
+		System.out.printf("Cannot invoke Lambda function '%s' with payload %s \n", functionName, payload);
+		return false;
+	}
+}
@@ -0,0 +1,149 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class records durations in microseconds into log-linear buckets: one
+ * bucket per microsecond below 16 us, then 8 buckets per power of two, so a
+ * bucket is at most 12.5% wide. Recording is a few atomic increments without
+ * locks or allocation, so it can run on every AWS call. Percentiles are
+ * reported as the middle of their bucket.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int LINEAR_BUCKETS = 2 * SUB_BUCKETS;
+	// covers up to 2^40 us, i.e. about 12 days
+	private static final int NUMBER_OF_BUCKETS = LINEAR_BUCKETS + (40 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(NUMBER_OF_BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sumMicros = new LongAdder();
+	private final AtomicLong minMicros = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	/**
+	 * Record a duration.
+	 *
+	 * @param nanos
+	 */
+	public void recordNanos(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		counts.incrementAndGet(bucketIndex(micros));
+		count.increment();
+		sumMicros.add(micros);
+		minMicros.accumulateAndGet(micros, Math::min);
+		maxMicros.accumulateAndGet(micros, Math::max);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public double getSumMillis() {
+		return sumMicros.sum() / 1000.0;
+	}
+
+	public double getMinMillis() {
+		return getCount() == 0 ? 0 : minMicros.get() / 1000.0;
+	}
+
+	public double getMaxMillis() {
+		return maxMicros.get() / 1000.0;
+	}
+
+	/**
+	 * Returns the duration below which a share of the recorded durations fall,
+	 * e.g. 0.99 for the 99th percentile, in milliseconds.
+	 *
+	 * @param quantile 0 to 1
+	 * @return
+	 */
+	public double getPercentileMillis(double quantile) {
+		long total = getCount();
+		if (total == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank)
+				return Math.min(bucketMiddleMicros(i), maxMicros.get()) / 1000.0;
+		}
+		return getMaxMillis();
+	}
+
+	/**
+	 * Returns the non-empty buckets as pairs of the middle of the bucket in
+	 * milliseconds and its count, merging neighbouring buckets until there are
+	 * at most maxValues pairs.
+	 *
+	 * @param maxValues
+	 * @return values at index 0 and counts at index 1
+	 */
+	public List<List<Number>> getValuesAndCounts(int maxValues) {
+		List<Double> values = new ArrayList<Double>();
+		List<Long> valueCounts = new ArrayList<Long>();
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+			long bucketCount = counts.get(i);
+			if (bucketCount > 0) {
+				values.add(bucketMiddleMicros(i) / 1000.0);
+				valueCounts.add(bucketCount);
+			}
+		}
+		while (values.size() > maxValues) {
+			List<Double> mergedValues = new ArrayList<Double>();
+			List<Long> mergedCounts = new ArrayList<Long>();
+			for (int i = 0; i < values.size(); i += 2) {
+				if (i + 1 == values.size()) {
+					mergedValues.add(values.get(i));
+					mergedCounts.add(valueCounts.get(i));
+					continue;
+				}
+				long mergedCount = valueCounts.get(i) + valueCounts.get(i + 1);
+				mergedValues.add((values.get(i) * valueCounts.get(i) + values.get(i + 1) * valueCounts.get(i + 1))
+						/ mergedCount);
+				mergedCounts.add(mergedCount);
+			}
+			values = mergedValues;
+			valueCounts = mergedCounts;
+		}
+		List<List<Number>> valuesAndCounts = new ArrayList<List<Number>>();
+		valuesAndCounts.add(new ArrayList<Number>(values));
+		valuesAndCounts.add(new ArrayList<Number>(valueCounts));
+		return valuesAndCounts;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d, p50=%.1f ms, p90=%.1f ms, p99=%.1f ms, max=%.1f ms", getCount(),
+				getPercentileMillis(0.5), getPercentileMillis(0.9), getPercentileMillis(0.99), getMaxMillis());
+	}
+
+	static int bucketIndex(long micros) {
+		if (micros < LINEAR_BUCKETS)
+			return (int) micros;
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		int index = LINEAR_BUCKETS + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+		return Math.min(index, NUMBER_OF_BUCKETS - 1);
+	}
+
+	static double bucketMiddleMicros(int index) {
+		if (index < LINEAR_BUCKETS)
+			return index;
+		int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+		int subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		long lowerBound = (1L << exponent) + subBucket * width;
+		return lowerBound + width / 2.0;
+	}
+}
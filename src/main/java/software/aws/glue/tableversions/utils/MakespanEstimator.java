@@ -0,0 +1,152 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * This class predicts the makespan of a run, i.e. the time until the last
+ * message is processed, when messages are handed to a number of workers in
+ * publishing order. Costs are in table versions to delete.
+ *
+ * Messages of an SQS FIFO message group are delivered one at a time, so a
+ * message cannot start before the previous message of its group is finished.
+ * Whenever a worker becomes free, it takes the earliest published message
+ * whose group is not busy, or waits for the group that is free first. With
+ * one message group per database (message_group_shards = 1), the tables of a
+ * database are thus cleaned up one after another, however many workers there
+ * are.
+ */
+public class MakespanEstimator {
+
+	private final int numberOfWorkers;
+	private final List<Message> messages = new ArrayList<Message>();
+	private final Map<String, Long> groupCosts = new HashMap<String, Long>();
+	private long totalCost;
+	private long makespan = -1;
+
+	public MakespanEstimator(int numberOfWorkers) {
+		this.numberOfWorkers = Math.max(1, numberOfWorkers);
+	}
+
+	/**
+	 * Add the next message in publishing order.
+	 *
+	 * @param cost
+	 * @param messageGroupId
+	 */
+	public void add(long cost, String messageGroupId) {
+		messages.add(new Message(messages.size(), cost, messageGroupId));
+		groupCosts.merge(messageGroupId, cost, Long::sum);
+		totalCost += cost;
+		makespan = -1;
+	}
+
+	/**
+	 * Returns the predicted makespan.
+	 *
+	 * @return
+	 */
+	public long getMakespan() {
+		if (makespan < 0)
+			makespan = schedule();
+		return makespan;
+	}
+
+	/**
+	 * Returns a lower bound of the makespan of any schedule: the larger of the
+	 * most expensive message group, whose messages run one after another, and
+	 * the total cost spread evenly over the workers.
+	 *
+	 * @return
+	 */
+	public long getLowerBound() {
+		long maxGroupCost = 0;
+		for (long groupCost : groupCosts.values()) {
+			maxGroupCost = Math.max(maxGroupCost, groupCost);
+		}
+		return Math.max(maxGroupCost, (totalCost + numberOfWorkers - 1) / numberOfWorkers);
+	}
+
+	public long getTotalCost() {
+		return totalCost;
+	}
+
+	public int getNumberOfMessages() {
+		return messages.size();
+	}
+
+	public int getNumberOfMessageGroups() {
+		return groupCosts.size();
+	}
+
+	/**
+	 * Simulates the workers. The first waiting message of every group is kept
+	 * in one of two queues: by publishing order once its group is free, and by
+	 * the time its group becomes free before.
+	 */
+	private long schedule() {
+		Map<String, List<Message>> groups = new HashMap<String, List<Message>>();
+		for (Message message : messages) {
+			groups.computeIfAbsent(message.messageGroupId, messageGroupId -> new ArrayList<Message>()).add(message);
+		}
+		Map<String, Integer> nextInGroup = new HashMap<String, Integer>();
+		PriorityQueue<Message> ready = new PriorityQueue<Message>(Comparator.comparingInt(m -> m.index));
+		PriorityQueue<Message> waiting = new PriorityQueue<Message>(
+				Comparator.<Message>comparingLong(m -> m.readyAt).thenComparingInt(m -> m.index));
+		for (List<Message> group : groups.values()) {
+			ready.add(group.get(0));
+			nextInGroup.put(group.get(0).messageGroupId, 1);
+		}
+		PriorityQueue<Long> workersFreeAt = new PriorityQueue<Long>();
+		for (int i = 0; i < numberOfWorkers; i++) {
+			workersFreeAt.add(0L);
+		}
+
+		long end = 0;
+		while (!ready.isEmpty() || !waiting.isEmpty()) {
+			long now = workersFreeAt.poll();
+			while (!waiting.isEmpty() && waiting.peek().readyAt <= now) {
+				ready.add(waiting.poll());
+			}
+			Message message = ready.isEmpty() ? waiting.poll() : ready.poll();
+			long finishedAt = Math.max(now, message.readyAt) + message.cost;
+			workersFreeAt.add(finishedAt);
+			end = Math.max(end, finishedAt);
+
+			List<Message> group = groups.get(message.messageGroupId);
+			int next = nextInGroup.get(message.messageGroupId);
+			if (next < group.size()) {
+				group.get(next).readyAt = finishedAt;
+				waiting.add(group.get(next));
+				nextInGroup.put(message.messageGroupId, next + 1);
+			}
+		}
+		return end;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("messages=%d, message groups=%d, versions to delete=%d, workers=%d, predicted makespan=%d versions, lower bound=%d versions",
+				messages.size(), groupCosts.size(), totalCost, numberOfWorkers, getMakespan(), getLowerBound());
+	}
+
+	private static class Message {
+		private final int index;
+		private final long cost;
+		private final String messageGroupId;
+		private long readyAt;
+
+		private Message(int index, long cost, String messageGroupId) {
+			this.index = index;
+			this.cost = cost;
+			this.messageGroupId = messageGroupId;
+		}
+	}
+}
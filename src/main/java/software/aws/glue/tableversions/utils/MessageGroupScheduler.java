@@ -0,0 +1,74 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class decides the order in which the tables of many message groups are
+ * published. The messages of an SQS FIFO message group are processed one after
+ * another, so a message group is a chain of work that cannot be split, and the
+ * run takes at least as long as its most expensive group. Tables are therefore
+ * collected per message group and published group by group in descending order
+ * of the estimated versions to delete of the group (longest processing time
+ * first over the groups); within a group, the largest tables come first.
+ *
+ * The order is decided among the tables collected since the last
+ * {@link #flush()}. The class is not thread-safe.
+ */
+public class MessageGroupScheduler {
+
+	private final TableMessagePacker messagePacker;
+	private final Map<String, List<GlueTable>> groups = new HashMap<String, List<GlueTable>>();
+	private final Map<String, Long> groupCosts = new HashMap<String, Long>();
+	private int numberOfTables;
+
+	/**
+	 * @param messagePacker receives the tables in publishing order
+	 */
+	public MessageGroupScheduler(TableMessagePacker messagePacker) {
+		this.messagePacker = messagePacker;
+	}
+
+	public void add(GlueTable table, String messageGroupId) {
+		groups.computeIfAbsent(messageGroupId, id -> new ArrayList<GlueTable>()).add(table);
+		groupCosts.merge(messageGroupId, (long) Math.max(1, table.getEstimatedVersionsToDelete()), Long::sum);
+		numberOfTables++;
+	}
+
+	/**
+	 * Returns the number of tables collected since the last flush.
+	 *
+	 * @return
+	 */
+	public int getNumberOfTables() {
+		return numberOfTables;
+	}
+
+	/**
+	 * Hand all collected tables to the message packer, most expensive message
+	 * group first, and publish the open packs of every group before the next
+	 * group starts.
+	 */
+	public void flush() {
+		List<String> messageGroupIds = new ArrayList<String>(groups.keySet());
+		messageGroupIds.sort(Comparator.<String>comparingLong(groupCosts::get).reversed()
+				.thenComparing(Comparator.naturalOrder()));
+		for (String messageGroupId : messageGroupIds) {
+			List<GlueTable> tables = groups.get(messageGroupId);
+			tables.sort(Comparator.comparingInt(GlueTable::getEstimatedVersionsToDelete).reversed());
+			for (GlueTable table : tables) {
+				messagePacker.add(table, messageGroupId);
+			}
+			messagePacker.flush();
+		}
+		groups.clear();
+		groupCosts.clear();
+		numberOfTables = 0;
+	}
+}
@@ -0,0 +1,88 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Ints;
+
+/**
+ * A message group strategy assigns the SQS FIFO message group of a table.
+ * Messages of one group are delivered one at a time, so the number of groups
+ * bounds the number of tables the cleanup Lambda can work on concurrently. A
+ * strategy must always assign the same group to the same table so that
+ * messages of a table stay in order.
+ */
+public interface MessageGroupStrategy {
+
+	/**
+	 * Returns the message group id of a table.
+	 *
+	 * @param databaseName
+	 * @param tableName
+	 * @return
+	 */
+	String messageGroupId(String databaseName, String tableName);
+
+	/**
+	 * Strategy that uses one message group per database.
+	 *
+	 * @return
+	 */
+	static MessageGroupStrategy byDatabase() {
+		return (databaseName, tableName) -> databaseName;
+	}
+
+	/**
+	 * Strategy that spreads the tables of a database over a number of message
+	 * groups by hashing 'database|table'. A database with a single shard uses the
+	 * database name as its group, as {@link #byDatabase()} does.
+	 *
+	 * @param defaultNumberOfShards number of shards of databases not in the map
+	 * @param numberOfShardsPerDatabase number of shards by database name
+	 * @return
+	 */
+	static MessageGroupStrategy hashSharded(int defaultNumberOfShards, Map<String, Integer> numberOfShardsPerDatabase) {
+		return (databaseName, tableName) -> {
+			int numberOfShards = numberOfShardsPerDatabase.getOrDefault(databaseName, defaultNumberOfShards);
+			if (numberOfShards <= 1)
+				return databaseName;
+			int hash = Hashing.murmur3_32().hashString(databaseName + "|" + tableName, StandardCharsets.UTF_8)
+					.asInt();
+			return databaseName + "-" + Math.floorMod(hash, numberOfShards);
+		};
+	}
+
+	/**
+	 * Creates a strategy from its configuration. The per database configuration
+	 * is a list of 'database:shards' pairs separated by the separator, e.g.
+	 * 'database_1:16$database_2:4'.
+	 *
+	 * @param defaultNumberOfShards
+	 * @param numberOfShardsPerDatabase
+	 * @param separator
+	 * @return
+	 */
+	static MessageGroupStrategy fromConfig(int defaultNumberOfShards, String numberOfShardsPerDatabase,
+			String separator) {
+		Map<String, Integer> shardsPerDatabase = new HashMap<String, Integer>();
+		StringTokenizer tokenizer = new StringTokenizer(numberOfShardsPerDatabase, separator);
+		while (tokenizer.hasMoreTokens()) {
+			String token = tokenizer.nextToken().trim();
+			int index = token.lastIndexOf(':');
+			Integer numberOfShards = index > 0 ? Ints.tryParse(token.substring(index + 1).trim()) : null;
+			if (numberOfShards == null || numberOfShards < 1)
+				throw new IllegalArgumentException("Invalid number of message group shards: " + token);
+			shardsPerDatabase.put(token.substring(0, index).trim(), numberOfShards);
+		}
+		if (defaultNumberOfShards <= 1 && shardsPerDatabase.isEmpty())
+			return byDatabase();
+		return hashSharded(defaultNumberOfShards, Collections.unmodifiableMap(shardsPerDatabase));
+	}
+}
@@ -0,0 +1,84 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+/**
+ * Progress of a planner shard within an execution batch. Databases of a shard
+ * are planned in the order of their names; all databases before nextDatabase
+ * have been published to SQS, and so have the tables of nextDatabase before
+ * the page of tablesNextToken if it is set. The checkpoint is stored in the planner's
+ * DynamoDB table under the execution batch id, using a range key that cannot
+ * clash with a 'database|table' range key.
+ */
+public class PlannerCheckpoint {
+
+	private static final String RANGE_KEY_PREFIX = "#checkpoint#shard-";
+
+	private String nextDatabase;
+	private String tablesNextToken;
+	private boolean completed;
+	private int continuationCount;
+
+	public PlannerCheckpoint() {
+	}
+
+	public PlannerCheckpoint(String nextDatabase, boolean completed, int continuationCount) {
+		this(nextDatabase, null, completed, continuationCount);
+	}
+
+	public PlannerCheckpoint(String nextDatabase, String tablesNextToken, boolean completed, int continuationCount) {
+		this.nextDatabase = nextDatabase;
+		this.tablesNextToken = tablesNextToken;
+		this.completed = completed;
+		this.continuationCount = continuationCount;
+	}
+
+	/**
+	 * Returns the range key value of the checkpoint of a shard.
+	 *
+	 * @param shardIndex
+	 * @return
+	 */
+	public static String rangeKeyValue(int shardIndex) {
+		return RANGE_KEY_PREFIX + shardIndex;
+	}
+
+	public String getNextDatabase() {
+		return nextDatabase;
+	}
+
+	public void setNextDatabase(String nextDatabase) {
+		this.nextDatabase = nextDatabase;
+	}
+
+	/**
+	 * Returns the GetTables NextToken of the first page of nextDatabase that is
+	 * not planned yet, or null if none of its tables are planned.
+	 *
+	 * @return
+	 */
+	public String getTablesNextToken() {
+		return tablesNextToken;
+	}
+
+	public void setTablesNextToken(String tablesNextToken) {
+		this.tablesNextToken = tablesNextToken;
+	}
+
+	public boolean isCompleted() {
+		return completed;
+	}
+
+	public void setCompleted(boolean completed) {
+		this.completed = completed;
+	}
+
+	public int getContinuationCount() {
+		return continuationCount;
+	}
+
+	public void setContinuationCount(int continuationCount) {
+		this.continuationCount = continuationCount;
+	}
+}
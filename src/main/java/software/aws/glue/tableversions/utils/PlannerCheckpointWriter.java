@@ -0,0 +1,69 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+
+/**
+ * This class writes the checkpoints of a planner shard to DynamoDB. Before a
+ * checkpoint is written, the planned tables are published and tracked by the
+ * given publisher, so a continuation that resumes at the checkpoint neither
+ * loses nor repeats tables.
+ */
+public class PlannerCheckpointWriter {
+
+	private final DDBUtil ddbUtil;
+	private final AmazonDynamoDB dynamoDBClient;
+	private final String ddbTableName;
+	private final String hashKey;
+	private final String rangeKey;
+	private final long executionBatchId;
+	private final int shardIndex;
+	private final int continuationCount;
+	private final Runnable publisher;
+	private long lastCheckpointMillis = System.currentTimeMillis();
+
+	/**
+	 * @param ddbUtil
+	 * @param dynamoDBClient
+	 * @param ddbTableName
+	 * @param hashKey
+	 * @param rangeKey
+	 * @param executionBatchId
+	 * @param shardIndex
+	 * @param continuationCount
+	 * @param publisher         publishes and tracks everything planned so far
+	 */
+	public PlannerCheckpointWriter(DDBUtil ddbUtil, AmazonDynamoDB dynamoDBClient, String ddbTableName,
+			String hashKey, String rangeKey, long executionBatchId, int shardIndex, int continuationCount,
+			Runnable publisher) {
+		this.ddbUtil = ddbUtil;
+		this.dynamoDBClient = dynamoDBClient;
+		this.ddbTableName = ddbTableName;
+		this.hashKey = hashKey;
+		this.rangeKey = rangeKey;
+		this.executionBatchId = executionBatchId;
+		this.shardIndex = shardIndex;
+		this.continuationCount = continuationCount;
+		this.publisher = publisher;
+	}
+
+	/**
+	 * Publish everything planned so far and write the progress of the table
+	 * planner as checkpoint.
+	 *
+	 * @param tablePlanner
+	 */
+	public void write(TablePlanner tablePlanner) {
+		publisher.run();
+		ddbUtil.insertPlannerCheckpointToDynamoDB(dynamoDBClient, ddbTableName, hashKey, rangeKey, executionBatchId,
+				shardIndex, new PlannerCheckpoint(tablePlanner.getNextDatabase(), tablePlanner.getTablesNextToken(),
+						tablePlanner.isCompleted(), continuationCount));
+		lastCheckpointMillis = System.currentTimeMillis();
+	}
+
+	public long getMillisSinceLastCheckpoint() {
+		return System.currentTimeMillis() - lastCheckpointMillis;
+	}
+}
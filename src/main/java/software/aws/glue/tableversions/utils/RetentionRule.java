@@ -0,0 +1,39 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+/**
+ * A retention rule decides how many of the newest table versions must be
+ * retained. {@link TableVersionSelector} retains the largest number asked for
+ * by any of its rules.
+ */
+public interface RetentionRule {
+
+	/**
+	 * Returns the number of newest versions to retain.
+	 * 
+	 * @param versionIdsNewestFirst version ids sorted in descending order
+	 * @return
+	 */
+	int versionsToRetain(int[] versionIdsNewestFirst);
+
+	/**
+	 * Rule to retain the newest N versions of a table.
+	 * 
+	 * @param numberofVersionsToRetain
+	 * @return
+	 */
+	static RetentionRule keepNewest(int numberofVersionsToRetain) {
+		return versionIdsNewestFirst -> Math.min(numberofVersionsToRetain, versionIdsNewestFirst.length);
+	}
+
+	/**
+	 * Rule to always retain the current (latest) version of a table.
+	 * 
+	 * @return
+	 */
+	static RetentionRule keepCurrentVersion() {
+		return versionIdsNewestFirst -> Math.min(1, versionIdsNewestFirst.length);
+	}
+}
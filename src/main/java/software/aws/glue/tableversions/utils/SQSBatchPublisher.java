@@ -0,0 +1,165 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+
+/**
+ * This class publishes messages to an SQS queue using SendMessageBatch requests
+ * of up to 10 messages. Entries that fail are re-sent on their own, up to
+ * maxRetries times. The delivery listener is told the outcome of every message
+ * so callers can keep per-message bookkeeping.
+ *
+ * @param <T> the type of the object that identifies a message to the listener
+ */
+public class SQSBatchPublisher<T> {
+
+	public static final int MAX_BATCH_SIZE = 10;
+	// SQS limits the total payload of a batch to 256 KiB.
+	private static final int MAX_BATCH_PAYLOAD_BYTES = 256 * 1024;
+	private static final int MESSAGE_ATTRIBUTE_BYTES = 64;
+
+	private final SQSUtil sqsUtil;
+	private final AmazonSQS sqs;
+	private final String queueURI;
+	private final int maxRetries;
+	private final BiConsumer<T, Boolean> deliveryListener;
+	private final List<PendingMessage<T>> pendingMessages = new ArrayList<PendingMessage<T>>();
+	private int pendingPayloadBytes;
+	private int numberOfBatchesSent;
+
+	public SQSBatchPublisher(SQSUtil sqsUtil, AmazonSQS sqs, String queueURI, int maxRetries,
+			BiConsumer<T, Boolean> deliveryListener) {
+		this.sqsUtil = sqsUtil;
+		this.sqs = sqs;
+		this.queueURI = queueURI;
+		this.maxRetries = maxRetries;
+		this.deliveryListener = deliveryListener;
+	}
+
+	/**
+	 * Add a message to the current batch. The batch is sent when it is full.
+	 *
+	 * @param key
+	 * @param message
+	 * @param executionBatchId
+	 * @param messageGroupId
+	 */
+	public synchronized void publish(T key, String message, long executionBatchId, String messageGroupId) {
+		int payloadBytes = message.getBytes(StandardCharsets.UTF_8).length + MESSAGE_ATTRIBUTE_BYTES;
+		if (!pendingMessages.isEmpty() && pendingPayloadBytes + payloadBytes > MAX_BATCH_PAYLOAD_BYTES)
+			flush();
+		pendingMessages.add(new PendingMessage<T>(key, message, executionBatchId, messageGroupId));
+		pendingPayloadBytes += payloadBytes;
+		if (pendingMessages.size() == MAX_BATCH_SIZE)
+			flush();
+	}
+
+	/**
+	 * Send the messages of the current batch.
+	 */
+	public synchronized void flush() {
+		List<PendingMessage<T>> batch = new ArrayList<PendingMessage<T>>(pendingMessages);
+		pendingMessages.clear();
+		pendingPayloadBytes = 0;
+
+		int attempt = 0;
+		while (!batch.isEmpty()) {
+			batch = send(batch);
+			if (batch.isEmpty())
+				break;
+			if (attempt++ >= maxRetries) {
+				for (PendingMessage<T> pendingMessage : batch) {
+					System.out.printf("Cannot write Table schema %s to SQS queue. \n", pendingMessage.message);
+					deliveryListener.accept(pendingMessage.key, false);
+				}
+				break;
+			}
+			backoff(attempt);
+		}
+	}
+
+	public synchronized int getNumberOfBatchesSent() {
+		return numberOfBatchesSent;
+	}
+
+	/**
+	 * Send one batch and return the messages that were not sent.
+	 */
+	private List<PendingMessage<T>> send(List<PendingMessage<T>> batch) {
+		Map<String, PendingMessage<T>> messagesById = new HashMap<String, PendingMessage<T>>();
+		List<SendMessageBatchRequestEntry> entries = new ArrayList<SendMessageBatchRequestEntry>();
+		for (int i = 0; i < batch.size(); i++) {
+			PendingMessage<T> pendingMessage = batch.get(i);
+			String id = Integer.toString(i);
+			messagesById.put(id, pendingMessage);
+			entries.add(sqsUtil.createBatchEntry(id, pendingMessage.message, pendingMessage.executionBatchId,
+					pendingMessage.messageGroupId));
+		}
+
+		SendMessageBatchResult result;
+		try {
+			numberOfBatchesSent++;
+			result = sqsUtil.sendTableSchemasToSQSQueue(sqs, queueURI, entries);
+		} catch (Exception e) {
+			System.out.println("Exception thrown while writing message batch to SQS. " + e.getLocalizedMessage());
+			return batch;
+		}
+
+		for (SendMessageBatchResultEntry successful : result.getSuccessful()) {
+			PendingMessage<T> pendingMessage = messagesById.remove(successful.getId());
+			if (pendingMessage != null)
+				deliveryListener.accept(pendingMessage.key, true);
+		}
+		List<PendingMessage<T>> failedMessages = new ArrayList<PendingMessage<T>>();
+		for (BatchResultErrorEntry failed : result.getFailed()) {
+			PendingMessage<T> pendingMessage = messagesById.remove(failed.getId());
+			if (pendingMessage == null)
+				continue;
+			System.out.printf("SQS rejected a message with code '%s': %s \n", failed.getCode(), failed.getMessage());
+			if (Boolean.TRUE.equals(failed.getSenderFault()))
+				deliveryListener.accept(pendingMessage.key, false);
+			else
+				failedMessages.add(pendingMessage);
+		}
+		// Entries that are neither reported as successful nor as failed are re-sent
+		failedMessages.addAll(messagesById.values());
+		return failedMessages;
+	}
+
+	private void backoff(int attempt) {
+		try {
+			TimeUnit.MILLISECONDS.sleep(Math.min(2000L, 50L << attempt));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while re-sending messages to SQS.", e);
+		}
+	}
+
+	private static class PendingMessage<T> {
+		private final T key;
+		private final String message;
+		private final long executionBatchId;
+		private final String messageGroupId;
+
+		private PendingMessage(T key, String message, long executionBatchId, String messageGroupId) {
+			this.key = key;
+			this.message = message;
+			this.executionBatchId = executionBatchId;
+			this.messageGroupId = messageGroupId;
+		}
+	}
+}
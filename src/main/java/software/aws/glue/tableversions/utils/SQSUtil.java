@@ -4,15 +4,41 @@
 package software.aws.glue.tableversions.utils;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
 import com.amazonaws.services.sqs.model.SendMessageRequest;
 import com.amazonaws.services.sqs.model.SendMessageResult;
 
 public class SQSUtil {
 
+	private final ApiConcurrencyLimits apiConcurrencyLimits;
+	private final InvocationMetrics metrics;
+
+	public SQSUtil() {
+		this(ApiConcurrencyLimits.none());
+	}
+
+	public SQSUtil(ApiConcurrencyLimits apiConcurrencyLimits) {
+		this(apiConcurrencyLimits, new InvocationMetrics(""));
+	}
+
+	/**
+	 * Creates a SQSUtil which records the latency and outcome of every call.
+	 * 
+	 * @param apiConcurrencyLimits
+	 * @param metrics
+	 */
+	public SQSUtil(ApiConcurrencyLimits apiConcurrencyLimits, InvocationMetrics metrics) {
+		this.apiConcurrencyLimits = apiConcurrencyLimits;
+		this.metrics = metrics;
+	}
+
 	/**
 	 * This method send a message to SQS queue.
 	 * @param sqs
@@ -26,13 +52,11 @@ public class SQSUtil {
 			String databaseName) {
 		int statusCode = 400;
 		boolean messageSentToSQS = false;
-		Map<String, MessageAttributeValue> messageAttributes = new HashMap<>();
-		messageAttributes.put("ExecutionBatchId", new MessageAttributeValue().withDataType("String.ExecutionBatchId")
-				.withStringValue(Long.toString(executionBatchId)));
 		SendMessageRequest req = new SendMessageRequest().withQueueUrl(queueURI).withMessageBody(message)
-				.withMessageGroupId(databaseName).withMessageAttributes(messageAttributes);
+				.withMessageGroupId(databaseName).withMessageAttributes(createMessageAttributes(executionBatchId));
 		try {
-			SendMessageResult sendMsgRes = sqs.sendMessage(req);
+			SendMessageResult sendMsgRes = apiConcurrencyLimits.call("SendMessage",
+					() -> metrics.call("SendMessage", () -> sqs.sendMessage(req)));
 			statusCode = sendMsgRes.getSdkHttpMetadata().getHttpStatusCode();
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -45,4 +69,42 @@ public class SQSUtil {
 		return messageSentToSQS;
 	}
 
+	/**
+	 * This method sends up to 10 messages to SQS queue using a single
+	 * SendMessageBatch request.
+	 * 
+	 * @param sqs
+	 * @param queueURI
+	 * @param entries
+	 * @return
+	 */
+	public SendMessageBatchResult sendTableSchemasToSQSQueue(AmazonSQS sqs, String queueURI,
+			List<SendMessageBatchRequestEntry> entries) {
+		SendMessageBatchRequest req = new SendMessageBatchRequest().withQueueUrl(queueURI).withEntries(entries);
+		return apiConcurrencyLimits.call("SendMessageBatch",
+				() -> metrics.call("SendMessageBatch", () -> sqs.sendMessageBatch(req)));
+	}
+
+	/**
+	 * This method creates an entry of a SendMessageBatch request.
+	 * 
+	 * @param id
+	 * @param message
+	 * @param executionBatchId
+	 * @param messageGroupId
+	 * @return
+	 */
+	public SendMessageBatchRequestEntry createBatchEntry(String id, String message, long executionBatchId,
+			String messageGroupId) {
+		return new SendMessageBatchRequestEntry().withId(id).withMessageBody(message)
+				.withMessageGroupId(messageGroupId).withMessageAttributes(createMessageAttributes(executionBatchId));
+	}
+
+	private Map<String, MessageAttributeValue> createMessageAttributes(long executionBatchId) {
+		Map<String, MessageAttributeValue> messageAttributes = new HashMap<>();
+		messageAttributes.put("ExecutionBatchId", new MessageAttributeValue().withDataType("String.ExecutionBatchId")
+				.withStringValue(Long.toString(executionBatchId)));
+		return messageAttributes;
+	}
+
 }
@@ -0,0 +1,101 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * This class is an AWS Glue Data Catalog state change event as delivered by
+ * Amazon EventBridge, e.g.
+ *
+ * {"detail-type":"Glue Data Catalog Table State Change","source":"aws.glue",
+ * "detail":{"databaseName":"db","tableName":"t1","typeOfChange":"UpdateTable"}}
+ *
+ * Table state change events name a single table in tableName; database state
+ * change events list the tables in changedTables. See
+ * src/test/resources/glue_table_state_change_event.json for a recorded event.
+ */
+public class TableChangeEvent {
+
+	public static final String TABLE_STATE_CHANGE = "Glue Data Catalog Table State Change";
+	public static final String DATABASE_STATE_CHANGE = "Glue Data Catalog Database State Change";
+
+	private final String detailType;
+	private final String typeOfChange;
+	private final String databaseName;
+	private final List<String> tableNames;
+
+	public TableChangeEvent(String detailType, String typeOfChange, String databaseName, List<String> tableNames) {
+		this.detailType = detailType;
+		this.typeOfChange = typeOfChange;
+		this.databaseName = databaseName;
+		this.tableNames = tableNames;
+	}
+
+	/**
+	 * Parses an EventBridge event. Throws IllegalArgumentException if the event
+	 * has no detail or no database name.
+	 *
+	 * @param event
+	 * @return
+	 */
+	public static TableChangeEvent fromJson(String event) {
+		JsonElement json = JsonParser.parseString(event);
+		if (!json.isJsonObject() || !json.getAsJsonObject().has("detail"))
+			throw new IllegalArgumentException("Not an EventBridge event: " + event);
+		JsonObject detail = json.getAsJsonObject().getAsJsonObject("detail");
+		String databaseName = stringOf(detail, "databaseName");
+		if (databaseName == null)
+			throw new IllegalArgumentException("Event without databaseName: " + event);
+
+		List<String> tableNames = new ArrayList<String>();
+		Optional.ofNullable(stringOf(detail, "tableName")).ifPresent(tableNames::add);
+		if (detail.has("changedTables") && detail.get("changedTables").isJsonArray()) {
+			JsonArray changedTables = detail.getAsJsonArray("changedTables");
+			for (JsonElement changedTable : changedTables) {
+				tableNames.add(changedTable.getAsString());
+			}
+		}
+		return new TableChangeEvent(stringOf(json.getAsJsonObject(), "detail-type"), stringOf(detail, "typeOfChange"),
+				databaseName, tableNames);
+	}
+
+	private static String stringOf(JsonObject json, String memberName) {
+		JsonElement member = json.get(memberName);
+		return member == null || member.isJsonNull() ? null : member.getAsString();
+	}
+
+	/**
+	 * Returns true for UpdateTable events, the only change that adds a table
+	 * version.
+	 *
+	 * @return
+	 */
+	public boolean isUpdateTable() {
+		return "UpdateTable".equals(typeOfChange);
+	}
+
+	public String getDetailType() {
+		return detailType;
+	}
+
+	public String getTypeOfChange() {
+		return typeOfChange;
+	}
+
+	public String getDatabaseName() {
+		return databaseName;
+	}
+
+	public List<String> getTableNames() {
+		return tableNames;
+	}
+}
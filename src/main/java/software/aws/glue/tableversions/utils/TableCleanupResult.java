@@ -0,0 +1,112 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of cleaning up the versions of a single table. A cleanup that ran
+ * into its deadline is incomplete: versions older than
+ * {@link #getDeleteVersionsOlderThan()} may still have to be deleted. The
+ * result then tells where to resume: the range of version ids whose deletion
+ * was skipped, and the NextToken of the table versions that were not listed.
+ */
+public class TableCleanupResult {
+
+	private final List<TableVersionStatus> versionsNotDeleted;
+	private final int numberOfVersionsDeleted;
+	private final int numberOfVersionsSkipped;
+	private final Integer deleteVersionsOlderThan;
+	private final Integer deleteVersionsFrom;
+	private final Integer deleteVersionsTo;
+	private final String tableVersionsNextToken;
+
+	public TableCleanupResult(List<TableVersionStatus> versionsNotDeleted, int numberOfVersionsDeleted,
+			int numberOfVersionsSkipped, Integer deleteVersionsOlderThan) {
+		this(versionsNotDeleted, numberOfVersionsDeleted, numberOfVersionsSkipped, deleteVersionsOlderThan, null, null,
+				null);
+	}
+
+	public TableCleanupResult(List<TableVersionStatus> versionsNotDeleted, int numberOfVersionsDeleted,
+			int numberOfVersionsSkipped, Integer deleteVersionsOlderThan, Integer deleteVersionsFrom,
+			Integer deleteVersionsTo, String tableVersionsNextToken) {
+		this.versionsNotDeleted = versionsNotDeleted;
+		this.numberOfVersionsDeleted = numberOfVersionsDeleted;
+		this.numberOfVersionsSkipped = numberOfVersionsSkipped;
+		this.deleteVersionsOlderThan = deleteVersionsOlderThan;
+		this.deleteVersionsFrom = deleteVersionsFrom;
+		this.deleteVersionsTo = deleteVersionsTo;
+		this.tableVersionsNextToken = tableVersionsNextToken;
+	}
+
+	/**
+	 * Result of a table that did not have any versions to delete.
+	 *
+	 * @return
+	 */
+	public static TableCleanupResult nothingToDelete() {
+		return new TableCleanupResult(Collections.<TableVersionStatus>emptyList(), 0, 0, null);
+	}
+
+	public List<TableVersionStatus> getVersionsNotDeleted() {
+		return versionsNotDeleted;
+	}
+
+	public int getNumberOfVersionsDeleted() {
+		return numberOfVersionsDeleted;
+	}
+
+	/**
+	 * Returns the number of versions that were not attempted because the deadline
+	 * had passed.
+	 *
+	 * @return
+	 */
+	public int getNumberOfVersionsSkipped() {
+		return numberOfVersionsSkipped;
+	}
+
+	/**
+	 * Returns the oldest version id that was retained; all versions older than it
+	 * were selected for deletion. Null if nothing was selected.
+	 *
+	 * @return
+	 */
+	public Integer getDeleteVersionsOlderThan() {
+		return deleteVersionsOlderThan;
+	}
+
+	/**
+	 * Returns the lowest version id whose deletion was skipped, or null.
+	 *
+	 * @return
+	 */
+	public Integer getDeleteVersionsFrom() {
+		return deleteVersionsFrom;
+	}
+
+	/**
+	 * Returns the highest version id whose deletion was skipped, or null.
+	 *
+	 * @return
+	 */
+	public Integer getDeleteVersionsTo() {
+		return deleteVersionsTo;
+	}
+
+	/**
+	 * Returns the NextToken of the first page of table versions that was not
+	 * listed, or null if all versions were listed.
+	 *
+	 * @return
+	 */
+	public String getTableVersionsNextToken() {
+		return tableVersionsNextToken;
+	}
+
+	public boolean isComplete() {
+		return numberOfVersionsSkipped == 0 && tableVersionsNextToken == null;
+	}
+}
@@ -0,0 +1,78 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * This class packs small tables into one message per message group, so that a
+ * worker invocation is not spent on a single table with little or nothing to
+ * delete. Tables are added to the open pack of their message group until the
+ * estimated versions to delete reach costBudget or the pack holds
+ * maxTablesPerMessage tables; then the pack is published. A table whose
+ * estimate alone reaches costBudget is published in its own message. Each
+ * table counts at least 1 towards the budget.
+ *
+ * A costBudget of 0 or a maxTablesPerMessage of 1 disables packing. The class
+ * is not thread-safe.
+ */
+public class TableMessagePacker {
+
+	private final long costBudget;
+	private final int maxTablesPerMessage;
+	private final BiConsumer<GlueTablePack, String> publisher;
+	private final Map<String, List<GlueTable>> openPacks = new LinkedHashMap<String, List<GlueTable>>();
+	private final Map<String, Long> openPackCosts = new LinkedHashMap<String, Long>();
+
+	/**
+	 * @param costBudget
+	 * @param maxTablesPerMessage
+	 * @param publisher           receives each pack and its message group id
+	 */
+	public TableMessagePacker(long costBudget, int maxTablesPerMessage, BiConsumer<GlueTablePack, String> publisher) {
+		this.costBudget = costBudget;
+		this.maxTablesPerMessage = maxTablesPerMessage;
+		this.publisher = publisher;
+	}
+
+	public void add(GlueTable table, String messageGroupId) {
+		long cost = Math.max(1, table.getEstimatedVersionsToDelete());
+		if (costBudget <= 0 || maxTablesPerMessage <= 1 || cost >= costBudget) {
+			publisher.accept(GlueTablePack.of(table), messageGroupId);
+			return;
+		}
+		long openPackCost = openPackCosts.getOrDefault(messageGroupId, 0L);
+		if (openPackCost + cost > costBudget)
+			publish(messageGroupId);
+		List<GlueTable> openPack = openPacks.get(messageGroupId);
+		if (openPack == null) {
+			openPack = new ArrayList<GlueTable>();
+			openPacks.put(messageGroupId, openPack);
+		}
+		openPack.add(table);
+		openPackCosts.put(messageGroupId, openPackCosts.getOrDefault(messageGroupId, 0L) + cost);
+		if (openPack.size() >= maxTablesPerMessage)
+			publish(messageGroupId);
+	}
+
+	/**
+	 * Publish all open packs.
+	 */
+	public void flush() {
+		for (String messageGroupId : new ArrayList<String>(openPacks.keySet())) {
+			publish(messageGroupId);
+		}
+	}
+
+	private void publish(String messageGroupId) {
+		List<GlueTable> openPack = openPacks.remove(messageGroupId);
+		openPackCosts.remove(messageGroupId);
+		if (openPack != null && !openPack.isEmpty())
+			publisher.accept(new GlueTablePack(openPack), messageGroupId);
+	}
+}
@@ -0,0 +1,236 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.glue.model.Database;
+import com.amazonaws.services.glue.model.Table;
+
+import software.aws.glue.tableversions.utils.CatalogCrawler.TablePage;
+
+/**
+ * This class plans the tables of the databases of a planner shard as the
+ * {@link CatalogCrawler} hands over their pages. Databases are planned in the
+ * order of the shard: the pages of the next database are planned as they
+ * arrive, and pages of later databases are held until all databases before
+ * them are planned. What is planned is thus always a prefix of the shard,
+ * which a {@link PlannerCheckpoint} records as the next database and the
+ * GetTables NextToken of its next page.
+ *
+ * A table is planned if it matches the table patterns, its current version id
+ * is above the number of versions to retain and it can have gained more than
+ * that many versions since its last cleanup. Planned tables are handed to the
+ * message group scheduler. The class is not thread-safe.
+ */
+public class TablePlanner {
+
+	private final List<Database> databases;
+	private final CatalogFilter catalogFilter;
+	private final int numberofVersionsToRetain;
+	private final DDBUtil ddbUtil;
+	private final AmazonDynamoDB dynamoDBClient;
+	private final String tableStateTableName;
+	private final MessageGroupStrategy messageGroupStrategy;
+	private final MessageGroupScheduler messageGroupScheduler;
+	// pages of databases after the next database, by database name
+	private final Map<String, List<HeldPage>> heldPages = new HashMap<String, List<HeldPage>>();
+	private int numberOfDatabasesPlanned;
+	private String tablesNextToken;
+	private int numberOfPagesPlanned;
+	private int numberOfTablesFiltered;
+	private int numberOfTablesSkipped;
+	private int numberOfTablesUnchanged;
+
+	/**
+	 * @param databases              databases of the shard in planning order
+	 * @param tablesNextToken        NextToken of the first page of the first
+	 *                               database, or null to plan all of its tables
+	 * @param catalogFilter
+	 * @param numberofVersionsToRetain
+	 * @param ddbUtil
+	 * @param dynamoDBClient
+	 * @param tableStateTableName    DynamoDB table of the table states; empty to
+	 *                               plan by version ids alone
+	 * @param messageGroupStrategy
+	 * @param messageGroupScheduler
+	 */
+	public TablePlanner(List<Database> databases, String tablesNextToken, CatalogFilter catalogFilter,
+			int numberofVersionsToRetain, DDBUtil ddbUtil, AmazonDynamoDB dynamoDBClient, String tableStateTableName,
+			MessageGroupStrategy messageGroupStrategy, MessageGroupScheduler messageGroupScheduler) {
+		this.databases = databases;
+		this.tablesNextToken = tablesNextToken;
+		this.catalogFilter = catalogFilter;
+		this.numberofVersionsToRetain = numberofVersionsToRetain;
+		this.ddbUtil = ddbUtil;
+		this.dynamoDBClient = dynamoDBClient;
+		this.tableStateTableName = tableStateTableName;
+		this.messageGroupStrategy = messageGroupStrategy;
+		this.messageGroupScheduler = messageGroupScheduler;
+	}
+
+	/**
+	 * Plan a page of tables, or hold it if it belongs to a later database. Once
+	 * the next database is finished, the held pages of the databases after it
+	 * are planned.
+	 *
+	 * @param page
+	 * @return true if the page was planned
+	 */
+	public boolean offer(TablePage page) {
+		List<Table> tables = tablesToPlan(page.getTables());
+		String databaseName = page.getDatabase().getName();
+		if (!databaseName.equals(getNextDatabase())) {
+			heldPages.computeIfAbsent(databaseName, name -> new ArrayList<HeldPage>())
+					.add(new HeldPage(tables, page.getNextToken()));
+			return false;
+		}
+		plan(tables, 1, page.getNextToken());
+		while (!isCompleted() && heldPages.containsKey(getNextDatabase())) {
+			List<HeldPage> pages = heldPages.remove(getNextDatabase());
+			List<Table> heldTables = new ArrayList<Table>();
+			for (HeldPage heldPage : pages) {
+				heldTables.addAll(heldPage.tables);
+			}
+			plan(heldTables, pages.size(), pages.get(pages.size() - 1).nextToken);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the first database that is not completely planned, or null if all
+	 * databases are.
+	 *
+	 * @return
+	 */
+	public String getNextDatabase() {
+		return isCompleted() ? null : databases.get(numberOfDatabasesPlanned).getName();
+	}
+
+	/**
+	 * Returns the NextToken of the first page of the next database that is not
+	 * planned, or null if none of its pages are.
+	 *
+	 * @return
+	 */
+	public String getTablesNextToken() {
+		return tablesNextToken;
+	}
+
+	public boolean isCompleted() {
+		return numberOfDatabasesPlanned == databases.size();
+	}
+
+	public int getNumberOfDatabasesPlanned() {
+		return numberOfDatabasesPlanned;
+	}
+
+	public int getNumberOfPagesPlanned() {
+		return numberOfPagesPlanned;
+	}
+
+	public int getNumberOfTablesFiltered() {
+		return numberOfTablesFiltered;
+	}
+
+	public int getNumberOfTablesSkipped() {
+		return numberOfTablesSkipped;
+	}
+
+	public int getNumberOfTablesUnchanged() {
+		return numberOfTablesUnchanged;
+	}
+
+	private void plan(List<Table> tables, int numberOfPages, String nextToken) {
+		planTables(tables);
+		numberOfPagesPlanned += numberOfPages;
+		tablesNextToken = nextToken;
+		if (nextToken == null)
+			numberOfDatabasesPlanned++;
+	}
+
+	/**
+	 * Returns the tables of a page that can have versions to delete, with only
+	 * the fields needed to plan them, so held pages take little memory.
+	 */
+	private List<Table> tablesToPlan(List<Table> tables) {
+		List<Table> tablesToPlan = new ArrayList<Table>(tables.size());
+		for (Table table : tables) {
+			if (!catalogFilter.matchesTable(table.getName())) {
+				numberOfTablesFiltered++;
+				continue;
+			}
+			// A table whose current version id is within the retention count cannot
+			// have versions to delete, so it is not sent to the cleanup Lambda.
+			if (!GlueUtil.canExceedRetention(table, numberofVersionsToRetain)) {
+				numberOfTablesSkipped++;
+				continue;
+			}
+			tablesToPlan.add(new Table().withDatabaseName(table.getDatabaseName()).withName(table.getName())
+					.withVersionId(table.getVersionId()).withCreateTime(table.getCreateTime()));
+		}
+		return tablesToPlan;
+	}
+
+	/**
+	 * Hand the tables that have gained enough versions since their last cleanup
+	 * to the message group scheduler. The states of the tables are read with one
+	 * BatchGetItem per 100 tables.
+	 */
+	private void planTables(List<Table> tables) {
+		Map<String, TableState> tableStates = getTableStates(tables);
+		for (Table table : tables) {
+			TableState tableState = tableStates.get(TableState.hashKeyValue(table.getDatabaseName(), table.getName()));
+			if (!GlueUtil.canExceedRetention(table, tableState, numberofVersionsToRetain)) {
+				numberOfTablesUnchanged++;
+				continue;
+			}
+			GlueTable tableMessage = new GlueTable();
+			tableMessage.setDatabaseName(table.getDatabaseName());
+			tableMessage.setTableName(table.getName());
+			tableMessage.setEstimatedVersionsToDelete(
+					GlueUtil.estimateVersionsToDelete(table, tableState, numberofVersionsToRetain));
+			messageGroupScheduler.add(tableMessage,
+					messageGroupStrategy.messageGroupId(table.getDatabaseName(), table.getName()));
+		}
+	}
+
+	/**
+	 * Read the states recorded after the last cleanup of tables. If the states
+	 * cannot be read, the tables are planned by their version ids alone.
+	 *
+	 * @return states by {@link TableState#hashKeyValue(String, String)}
+	 */
+	private Map<String, TableState> getTableStates(List<Table> tables) {
+		if (tableStateTableName.isEmpty() || tables.isEmpty())
+			return Collections.emptyMap();
+		List<String> hashKeyValues = new ArrayList<String>(tables.size());
+		for (Table table : tables) {
+			hashKeyValues.add(TableState.hashKeyValue(table.getDatabaseName(), table.getName()));
+		}
+		try {
+			return ddbUtil.getTableStatesFromDynamoDB(dynamoDBClient, tableStateTableName, hashKeyValues,
+					DDBBatchWriter.DEFAULT_MAX_RETRIES);
+		} catch (RuntimeException e) {
+			System.out.printf("Table states could not be read from DynamoDB table '%s'. %s \n", tableStateTableName,
+					e.getLocalizedMessage());
+			return Collections.emptyMap();
+		}
+	}
+
+	private static class HeldPage {
+		private final List<Table> tables;
+		private final String nextToken;
+
+		private HeldPage(List<Table> tables, String nextToken) {
+			this.tables = tables;
+			this.nextToken = nextToken;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.Date;
+import java.util.Optional;
+
+import com.amazonaws.services.glue.model.Table;
+import com.amazonaws.services.glue.model.TableVersion;
+import com.google.common.primitives.Ints;
+
+/**
+ * Fingerprint of a table after its last cleanup: the newest version id seen
+ * while listing, the UpdateTime of that version and the number of versions
+ * the table was left with. As every update of a table adds one version with
+ * the next version id, a table cannot have more versions than those retained
+ * plus the difference of its current version id to the recorded one, so the
+ * planner can tell from GetTables alone whether a table needs cleaning again.
+ *
+ * The state is stored in a DynamoDB table with the partition key
+ * database_name_table_name ('database|table').
+ */
+public class TableState {
+
+	public static final String HASH_KEY = "database_name_table_name";
+
+	private int versionId = -1;
+	private Date updateTime;
+	private int numberOfVersionsRetained;
+
+	public TableState() {
+	}
+
+	public TableState(int versionId, Date updateTime, int numberOfVersionsRetained) {
+		this.versionId = versionId;
+		this.updateTime = updateTime;
+		this.numberOfVersionsRetained = numberOfVersionsRetained;
+	}
+
+	/**
+	 * Returns the partition key value of the state of a table.
+	 *
+	 * @param databaseName
+	 * @param tableName
+	 * @return
+	 */
+	public static String hashKeyValue(String databaseName, String tableName) {
+		return databaseName.concat("|").concat(tableName);
+	}
+
+	/**
+	 * Offer a listed table version; the newest version and its UpdateTime are
+	 * kept.
+	 *
+	 * @param tableVersion
+	 */
+	public void offer(TableVersion tableVersion) {
+		int offeredVersionId = Integer.parseInt(tableVersion.getVersionId());
+		if (offeredVersionId > versionId) {
+			versionId = offeredVersionId;
+			updateTime = tableVersion.getTable() == null ? null : tableVersion.getTable().getUpdateTime();
+		}
+	}
+
+	/**
+	 * Tells whether this state was recorded for the given table as it is now.
+	 * It is not if the version id of the table went back or the table was
+	 * created after the recorded update, i.e. the table was dropped and created
+	 * again since.
+	 *
+	 * @param table
+	 * @return
+	 */
+	public boolean describes(Table table) {
+		Integer currentVersionId = Ints.tryParse(Optional.ofNullable(table.getVersionId()).orElse(""));
+		if (currentVersionId == null || versionId < 0 || currentVersionId < versionId)
+			return false;
+		return updateTime == null || table.getCreateTime() == null || !table.getCreateTime().after(updateTime);
+	}
+
+	/**
+	 * Returns the maximum number of versions the table can have now: the
+	 * versions retained by the last cleanup plus one per version added since.
+	 * Only meaningful if the state {@link #describes(Table)} the table.
+	 *
+	 * @param table
+	 * @return
+	 */
+	public long getMaxNumberOfVersions(Table table) {
+		return (long) numberOfVersionsRetained + Integer.parseInt(table.getVersionId()) - versionId;
+	}
+
+	public int getVersionId() {
+		return versionId;
+	}
+
+	public void setVersionId(int versionId) {
+		this.versionId = versionId;
+	}
+
+	public Date getUpdateTime() {
+		return updateTime;
+	}
+
+	public void setUpdateTime(Date updateTime) {
+		this.updateTime = updateTime;
+	}
+
+	public int getNumberOfVersionsRetained() {
+		return numberOfVersionsRetained;
+	}
+
+	public void setNumberOfVersionsRetained(int numberOfVersionsRetained) {
+		this.numberOfVersionsRetained = numberOfVersionsRetained;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("version id=%d, update time=%s, versions retained=%d", versionId, updateTime,
+				numberOfVersionsRetained);
+	}
+}
@@ -0,0 +1,84 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * This class collects table version ids to be deleted and deletes them as soon
+ * as a full batch of 100 version ids is available. It is used as the eviction
+ * consumer of {@link VersionRetentionHeap} in streaming mode. Batches are handed
+ * to a {@link TableVersionDeleteExecutor}, so listing continues while earlier
+ * batches are being deleted.
+ */
+public class TableVersionDeleteBuffer implements IntConsumer {
+
+	public static final int BATCH_SIZE = 100;
+
+	private final TableVersionDeleteExecutor deleteExecutor;
+	private final int[] buffer = new int[BATCH_SIZE];
+	private int size;
+	private int numberOfVersionsSubmitted;
+
+	public TableVersionDeleteBuffer(TableVersionDeleteExecutor deleteExecutor) {
+		this.deleteExecutor = deleteExecutor;
+	}
+
+	@Override
+	public void accept(int versionId) {
+		buffer[size++] = versionId;
+		if (size == BATCH_SIZE)
+			flush();
+	}
+
+	/**
+	 * Submit the version ids that are still buffered for deletion.
+	 */
+	public void flush() {
+		if (size == 0)
+			return;
+		List<String> versionIds = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++) {
+			versionIds.add(Integer.toString(buffer[i]));
+		}
+		size = 0;
+		numberOfVersionsSubmitted += versionIds.size();
+		deleteExecutor.submit(versionIds);
+	}
+
+	/**
+	 * Flush the buffer, wait for all deletes and return the versions that could
+	 * not be deleted.
+	 * 
+	 * @return
+	 */
+	public List<TableVersionStatus> awaitCompletion() {
+		flush();
+		return deleteExecutor.awaitCompletion();
+	}
+
+	public int getNumberOfVersionsSubmitted() {
+		return numberOfVersionsSubmitted;
+	}
+
+	/**
+	 * Returns the number of version ids that were not deleted because the
+	 * deadline of the delete executor had passed.
+	 * 
+	 * @return
+	 */
+	public int getNumberOfVersionsSkipped() {
+		return deleteExecutor.getNumberOfVersionsSkipped();
+	}
+
+	public Integer getLowestVersionIdSkipped() {
+		return deleteExecutor.getLowestVersionIdSkipped();
+	}
+
+	public Integer getHighestVersionIdSkipped() {
+		return deleteExecutor.getHighestVersionIdSkipped();
+	}
+}
@@ -0,0 +1,169 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import com.amazonaws.services.glue.AWSGlue;
+
+/**
+ * This class deletes table versions of a single table using a shared executor
+ * service. At most maxInFlightRequests BatchDeleteTableVersion requests are in
+ * flight at a time; {@link #submit(List)} blocks the caller until a slot is
+ * free. Versions that could not be deleted are collected as the requests
+ * complete. Once the deadline has passed, further batches are not submitted
+ * but counted as skipped, along with the range of their version ids.
+ *
+ * Only the versions BatchDeleteTableVersion reports as errors count as not
+ * deleted. A request that fails as a whole leaves it unknown which versions
+ * are gone, so its exception is kept, no further batches are submitted, and
+ * {@link #awaitCompletion()} rethrows it.
+ */
+public class TableVersionDeleteExecutor {
+
+	private final GlueUtil glueUtil;
+	private final AWSGlue glueClient;
+	private final String tableName;
+	private final String databaseName;
+	private final ExecutorService executorService;
+	private final Semaphore inFlightRequests;
+	private final Deadline deadline;
+	private final List<Future<?>> futures = new ArrayList<Future<?>>();
+	private final List<TableVersionStatus> versionsNotDeleted = new ArrayList<TableVersionStatus>();
+	private int numberOfVersionsSkipped;
+	private int lowestVersionIdSkipped = Integer.MAX_VALUE;
+	private int highestVersionIdSkipped = -1;
+	private volatile RuntimeException failure;
+
+	public TableVersionDeleteExecutor(GlueUtil glueUtil, AWSGlue glueClient, String tableName, String databaseName,
+			ExecutorService executorService, int maxInFlightRequests) {
+		this(glueUtil, glueClient, tableName, databaseName, executorService, maxInFlightRequests, Deadline.none());
+	}
+
+	public TableVersionDeleteExecutor(GlueUtil glueUtil, AWSGlue glueClient, String tableName, String databaseName,
+			ExecutorService executorService, int maxInFlightRequests, Deadline deadline) {
+		this.glueUtil = glueUtil;
+		this.glueClient = glueClient;
+		this.tableName = tableName;
+		this.databaseName = databaseName;
+		this.executorService = executorService;
+		this.inFlightRequests = new Semaphore(Math.max(1, maxInFlightRequests));
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Submit a BatchDeleteTableVersion request for up to 100 version ids.
+	 *
+	 * @param versionIds
+	 * @return false if the deadline has passed or an earlier request failed and
+	 *         the version ids were skipped
+	 */
+	public boolean submit(List<String> versionIds) {
+		if (deadline.isExpired() || failure != null) {
+			skip(versionIds);
+			return false;
+		}
+		inFlightRequests.acquireUninterruptibly();
+		// waiting for a free slot may have taken us past the deadline
+		if (deadline.isExpired()) {
+			inFlightRequests.release();
+			skip(versionIds);
+			return false;
+		}
+		try {
+			futures.add(executorService.submit(() -> {
+				try {
+					List<TableVersionStatus> notDeleted = glueUtil.deleteTableVersionBatch(glueClient, versionIds,
+							tableName, databaseName);
+					synchronized (versionsNotDeleted) {
+						versionsNotDeleted.addAll(notDeleted);
+					}
+				} catch (RuntimeException e) {
+					System.out.printf("Exception thrown while deleting versions of table '%s' under database '%s'. %s \n",
+							tableName, databaseName, e.getLocalizedMessage());
+					failure = e;
+				} finally {
+					inFlightRequests.release();
+				}
+			}));
+		} catch (RuntimeException e) {
+			inFlightRequests.release();
+			throw e;
+		}
+		return true;
+	}
+
+	/**
+	 * Wait for all submitted requests and return the versions that could not be
+	 * deleted. If a request failed, its exception is thrown once all requests
+	 * are done.
+	 *
+	 * @return
+	 */
+	public List<TableVersionStatus> awaitCompletion() {
+		boolean interrupted = false;
+		for (Future<?> future : futures) {
+			while (true) {
+				try {
+					future.get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+		}
+		futures.clear();
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (failure != null)
+			throw failure;
+		synchronized (versionsNotDeleted) {
+			return new ArrayList<TableVersionStatus>(versionsNotDeleted);
+		}
+	}
+
+	/**
+	 * Returns the number of version ids that were not submitted because the
+	 * deadline had passed.
+	 *
+	 * @return
+	 */
+	public int getNumberOfVersionsSkipped() {
+		return numberOfVersionsSkipped;
+	}
+
+	/**
+	 * Returns the lowest version id that was skipped, or null if none was.
+	 *
+	 * @return
+	 */
+	public Integer getLowestVersionIdSkipped() {
+		return numberOfVersionsSkipped == 0 ? null : lowestVersionIdSkipped;
+	}
+
+	/**
+	 * Returns the highest version id that was skipped, or null if none was.
+	 *
+	 * @return
+	 */
+	public Integer getHighestVersionIdSkipped() {
+		return numberOfVersionsSkipped == 0 ? null : highestVersionIdSkipped;
+	}
+
+	private void skip(List<String> versionIds) {
+		numberOfVersionsSkipped += versionIds.size();
+		for (String versionId : versionIds) {
+			int id = Integer.parseInt(versionId);
+			lowestVersionIdSkipped = Math.min(lowestVersionIdSkipped, id);
+			highestVersionIdSkipped = Math.max(highestVersionIdSkipped, id);
+		}
+	}
+}
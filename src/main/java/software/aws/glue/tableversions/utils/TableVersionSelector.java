@@ -0,0 +1,62 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.Arrays;
+
+/**
+ * This class splits the version ids of a table into versions to keep and
+ * versions to delete. It works on primitive int arrays only: version ids are
+ * sorted once and the keep / delete sets are contiguous ranges of the sorted
+ * array.
+ */
+public class TableVersionSelector {
+
+	private final RetentionRule[] retentionRules;
+
+	public TableVersionSelector(RetentionRule... retentionRules) {
+		this.retentionRules = retentionRules;
+	}
+
+	/**
+	 * Selector that retains the newest N versions and always the current version.
+	 * 
+	 * @param numberofVersionsToRetain
+	 * @return
+	 */
+	public static TableVersionSelector keepNewest(int numberofVersionsToRetain) {
+		return new TableVersionSelector(RetentionRule.keepNewest(numberofVersionsToRetain),
+				RetentionRule.keepCurrentVersion());
+	}
+
+	/**
+	 * Select versions to keep and versions to delete. The input array is not
+	 * modified.
+	 * 
+	 * @param versionIds
+	 * @return
+	 */
+	public VersionSelection select(int[] versionIds) {
+		int[] sorted = versionIds.clone();
+		Arrays.sort(sorted);
+		reverse(sorted);
+
+		int numberToKeep = 0;
+		for (RetentionRule rule : retentionRules) {
+			numberToKeep = Math.max(numberToKeep, rule.versionsToRetain(sorted));
+		}
+		numberToKeep = Math.min(Math.max(numberToKeep, 0), sorted.length);
+
+		return new VersionSelection(Arrays.copyOfRange(sorted, 0, numberToKeep),
+				Arrays.copyOfRange(sorted, numberToKeep, sorted.length));
+	}
+
+	private static void reverse(int[] array) {
+		for (int i = 0, j = array.length - 1; i < j; i++, j--) {
+			int tmp = array[i];
+			array[i] = array[j];
+			array[j] = tmp;
+		}
+	}
+}
@@ -9,6 +9,7 @@ public class TableVersionStatus {
 	private String databaseName;
 	private String versionId;
 	private boolean deleted;
+	private String errorCode;
 	
 	public String getTableName() {
 		return tableName;
@@ -34,5 +35,11 @@ public class TableVersionStatus {
 	public void setDeleted(boolean deleted) {
 		this.deleted = deleted;
 	}
+	public String getErrorCode() {
+		return errorCode;
+	}
+	public void setErrorCode(String errorCode) {
+		this.errorCode = errorCode;
+	}
 	
 }
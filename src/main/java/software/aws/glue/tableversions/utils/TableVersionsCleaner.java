@@ -0,0 +1,283 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import com.amazonaws.services.glue.AWSGlue;
+import com.amazonaws.services.glue.model.GetTableVersionsResult;
+import com.amazonaws.services.glue.model.TableVersion;
+
+/**
+ * This class cleans up the versions of a table: it lists the table versions,
+ * determines the versions to delete, deletes them and writes the statistics of
+ * the cleanup to DynamoDB. It is shared by all tables of an event and is
+ * thread-safe.
+ *
+ * A table that carries deleteVersionsOlderThan, i.e. a continuation of an
+ * earlier cleanup, only has versions older than that version id deleted, so the
+ * continuation finishes the decision of the earlier cleanup. It resumes where
+ * the earlier cleanup stopped instead of listing all versions again.
+ *
+ * After a table is cleaned up, its {@link TableState} is recorded along with
+ * the statistics, even if it had nothing to delete.
+ */
+public class TableVersionsCleaner {
+
+	private static final String VERSION_NOT_FOUND = "EntityNotFoundException";
+
+	private final GlueUtil glueUtil;
+	private final DDBUtil ddbUtil;
+	private final AWSGlue glueClient;
+	private final DDBBatchWriter statisticsWriter;
+	private final String dynamoDBTableName;
+	private final String hashKey;
+	private final String rangeKey;
+	private final int numberofVersionsToRetain;
+	private final boolean streamingMode;
+	private final ExecutorService deleteExecutorService;
+	private final int deleteConcurrency;
+	private final TableVersionSelector versionSelector;
+	private final String tableStateTableName;
+
+	public TableVersionsCleaner(GlueUtil glueUtil, DDBUtil ddbUtil, AWSGlue glueClient,
+			DDBBatchWriter statisticsWriter, String dynamoDBTableName, String hashKey, String rangeKey,
+			int numberofVersionsToRetain, boolean streamingMode, ExecutorService deleteExecutorService,
+			int deleteConcurrency) {
+		this(glueUtil, ddbUtil, glueClient, statisticsWriter, dynamoDBTableName, hashKey, rangeKey,
+				numberofVersionsToRetain, streamingMode, deleteExecutorService, deleteConcurrency, "");
+	}
+
+	/**
+	 * Creates a cleaner which also records the {@link TableState} of every table
+	 * it cleans up, so the planner can skip the table until it has gained enough
+	 * versions.
+	 *
+	 * @param glueUtil
+	 * @param ddbUtil
+	 * @param glueClient
+	 * @param statisticsWriter
+	 * @param dynamoDBTableName
+	 * @param hashKey
+	 * @param rangeKey
+	 * @param numberofVersionsToRetain
+	 * @param streamingMode
+	 * @param deleteExecutorService
+	 * @param deleteConcurrency
+	 * @param tableStateTableName DynamoDB table of the table states; empty to not
+	 *                            record them
+	 */
+	public TableVersionsCleaner(GlueUtil glueUtil, DDBUtil ddbUtil, AWSGlue glueClient,
+			DDBBatchWriter statisticsWriter, String dynamoDBTableName, String hashKey, String rangeKey,
+			int numberofVersionsToRetain, boolean streamingMode, ExecutorService deleteExecutorService,
+			int deleteConcurrency, String tableStateTableName) {
+		this.glueUtil = glueUtil;
+		this.ddbUtil = ddbUtil;
+		this.glueClient = glueClient;
+		this.statisticsWriter = statisticsWriter;
+		this.dynamoDBTableName = dynamoDBTableName;
+		this.hashKey = hashKey;
+		this.rangeKey = rangeKey;
+		this.numberofVersionsToRetain = numberofVersionsToRetain;
+		this.streamingMode = streamingMode;
+		this.deleteExecutorService = deleteExecutorService;
+		this.deleteConcurrency = deleteConcurrency;
+		this.versionSelector = TableVersionSelector.keepNewest(numberofVersionsToRetain);
+		this.tableStateTableName = tableStateTableName;
+	}
+
+	/**
+	 * Clean up the versions of a table. No delete requests are submitted after
+	 * the deadline; the result then tells which versions are left.
+	 *
+	 * @param glueTable
+	 * @param executionId
+	 * @param executionBatchId
+	 * @param deadline
+	 * @return
+	 */
+	public TableCleanupResult cleanupTable(GlueTable glueTable, long executionId, String executionBatchId,
+			Deadline deadline) {
+		long startNanos = System.nanoTime();
+		TableCleanupResult result = cleanupTableVersions(glueTable, executionId, executionBatchId, deadline);
+		InvocationMetrics metrics = glueUtil.getMetrics();
+		metrics.recordDuration(InvocationMetrics.TABLE_CLEANUP_TIME, System.nanoTime() - startNanos);
+		metrics.count(InvocationMetrics.TABLES_CLEANED_UP, 1);
+		return result;
+	}
+
+	private TableCleanupResult cleanupTableVersions(GlueTable glueTable, long executionId, String executionBatchId,
+			Deadline deadline) {
+		if (glueTable.getDeleteVersionsOlderThan() != null)
+			return cleanupContinuation(glueTable, executionId, executionBatchId, deadline);
+		if (streamingMode)
+			return cleanupTableStreaming(glueTable, executionId, executionBatchId, deadline);
+
+		// get table versions
+		List<TableVersion> tableVersionList = glueUtil.getTableVersions(glueClient, glueTable.getTableName(),
+				glueTable.getDatabaseName());
+		TableState tableState = new TableState();
+		tableVersionList.forEach(tableState::offer);
+
+		if (tableVersionList.size() <= numberofVersionsToRetain) {
+			System.out.printf("Table '%s' does not have more than %d versions. Skipping. \n",
+					glueTable.getTableName(), numberofVersionsToRetain);
+			recordState(glueTable, tableState, tableVersionList.size());
+			return TableCleanupResult.nothingToDelete();
+		}
+
+		// identify the versions that are older than numberofVersionsToRetain
+		VersionSelection selection = glueUtil.selectVersions(tableVersionList, glueTable.getTableName(),
+				versionSelector);
+		int[] versionsToKeep = selection.getVersionsToKeep();
+		int[] versionsToDelete = selection.getVersionsToDelete();
+		System.out.printf("For table '%s', versions to be deleted: %d, versions to be retaind: %d \n",
+				glueTable.getTableName(), versionsToDelete.length, versionsToKeep.length);
+
+		// delete older versions
+		TableVersionDeleteBuffer deleteBuffer = new TableVersionDeleteBuffer(newDeleteExecutor(glueTable, deadline));
+		for (int versionId : versionsToDelete) {
+			deleteBuffer.accept(versionId);
+		}
+		List<TableVersionStatus> tblVersionsNotDeletedList = deleteBuffer.awaitCompletion();
+		int numDeletedVersions = versionsToDelete.length - tblVersionsNotDeletedList.size()
+				- deleteBuffer.getNumberOfVersionsSkipped();
+
+		return complete(glueTable, executionId, executionBatchId, tableVersionList.size(), versionsToKeep.length,
+				numDeletedVersions, tblVersionsNotDeletedList, deleteBuffer, versionsToKeep[versionsToKeep.length - 1],
+				tableState, null);
+	}
+
+	/**
+	 * Clean up a table in streaming mode. Table versions are never held in memory
+	 * as a whole; only the newest numberofVersionsToRetain version ids are kept
+	 * and older version ids are deleted in batches of 100 while the table
+	 * versions are being listed. Once the newest versions are known and the
+	 * deadline has passed, listing stops; a continuation lists the rest.
+	 */
+	private TableCleanupResult cleanupTableStreaming(GlueTable glueTable, long executionId, String executionBatchId,
+			Deadline deadline) {
+
+		TableVersionDeleteBuffer deleteBuffer = new TableVersionDeleteBuffer(newDeleteExecutor(glueTable, deadline));
+		VersionRetentionHeap retentionHeap = new VersionRetentionHeap(numberofVersionsToRetain, deleteBuffer);
+		TableState tableState = new TableState();
+		String tableVersionsNextToken = null;
+		do {
+			GetTableVersionsResult getTableVersionsResult = glueUtil.getTableVersionsPage(glueClient,
+					glueTable.getTableName(), glueTable.getDatabaseName(), tableVersionsNextToken);
+			for (TableVersion tableVersion : getTableVersionsResult.getTableVersions()) {
+				tableState.offer(tableVersion);
+				retentionHeap.offer(Integer.parseInt(tableVersion.getVersionId()));
+			}
+			tableVersionsNextToken = getTableVersionsResult.getNextToken();
+		} while (tableVersionsNextToken != null && !(deadline.isExpired() && retentionHeap.isFull()));
+		List<TableVersionStatus> tblVersionsNotDeletedList = deleteBuffer.awaitCompletion();
+
+		if (deleteBuffer.getNumberOfVersionsSubmitted() == 0 && tableVersionsNextToken == null) {
+			System.out.printf("Table '%s' does not have more than %d versions. Skipping. \n", glueTable.getTableName(),
+					numberofVersionsToRetain);
+			recordState(glueTable, tableState, retentionHeap.getNumberOfVersionsOffered());
+			return TableCleanupResult.nothingToDelete();
+		}
+
+		int numDeletedVersions = deleteBuffer.getNumberOfVersionsSubmitted() - tblVersionsNotDeletedList.size()
+				- deleteBuffer.getNumberOfVersionsSkipped();
+		// the state of a table is only known once all of its versions are listed
+		return complete(glueTable, executionId, executionBatchId, retentionHeap.getNumberOfVersionsOffered(),
+				retentionHeap.getNumberOfVersionsOffered() - deleteBuffer.getNumberOfVersionsSubmitted(),
+				numDeletedVersions, tblVersionsNotDeletedList, deleteBuffer, retentionHeap.getOldestRetainedVersionId(),
+				tableVersionsNextToken == null ? tableState : null, tableVersionsNextToken);
+	}
+
+	/**
+	 * Continue the cleanup of a table that was stopped by the deadline. The
+	 * earlier cleanup decided which versions to retain, so the versions whose
+	 * deletion was skipped are deleted by their version ids, and table versions
+	 * are only listed from the NextToken at which the earlier listing stopped.
+	 * Listed versions older than deleteVersionsOlderThan are deleted. A
+	 * continuation without a resume point lists all versions. Version ids that
+	 * no longer exist are not counted as deleted nor as not deleted.
+	 */
+	private TableCleanupResult cleanupContinuation(GlueTable glueTable, long executionId, String executionBatchId,
+			Deadline deadline) {
+
+		int deleteVersionsOlderThan = glueTable.getDeleteVersionsOlderThan();
+		System.out.printf("Continuation %d for table '%s', versions older than %d to be deleted. \n",
+				glueTable.getContinuationCount(), glueTable.getTableName(), deleteVersionsOlderThan);
+		TableVersionDeleteBuffer deleteBuffer = new TableVersionDeleteBuffer(newDeleteExecutor(glueTable, deadline));
+		Integer deleteVersionsFrom = glueTable.getDeleteVersionsFrom();
+		if (deleteVersionsFrom != null) {
+			for (int versionId = glueTable.getDeleteVersionsTo(); versionId >= deleteVersionsFrom; versionId--) {
+				deleteBuffer.accept(versionId);
+			}
+		}
+		String tableVersionsNextToken = glueTable.getTableVersionsNextToken();
+		if (tableVersionsNextToken != null || deleteVersionsFrom == null) {
+			do {
+				GetTableVersionsResult getTableVersionsResult = glueUtil.getTableVersionsPage(glueClient,
+						glueTable.getTableName(), glueTable.getDatabaseName(), tableVersionsNextToken);
+				for (TableVersion tableVersion : getTableVersionsResult.getTableVersions()) {
+					int versionId = Integer.parseInt(tableVersion.getVersionId());
+					if (versionId < deleteVersionsOlderThan)
+						deleteBuffer.accept(versionId);
+				}
+				tableVersionsNextToken = getTableVersionsResult.getNextToken();
+			} while (tableVersionsNextToken != null && !deadline.isExpired());
+		}
+		List<TableVersionStatus> tblVersionsNotDeletedList = deleteBuffer.awaitCompletion();
+
+		int numberOfVersionsSkipped = deleteBuffer.getNumberOfVersionsSkipped();
+		int numDeletedVersions = deleteBuffer.getNumberOfVersionsSubmitted() - tblVersionsNotDeletedList.size()
+				- numberOfVersionsSkipped;
+		tblVersionsNotDeletedList.removeIf(tvStatus -> VERSION_NOT_FOUND.equals(tvStatus.getErrorCode()));
+		int numVersionsLeft = tblVersionsNotDeletedList.size() + numberOfVersionsSkipped;
+		// the earlier cleanup recorded the state of the table
+		return complete(glueTable, executionId, executionBatchId, numDeletedVersions + numVersionsLeft,
+				numVersionsLeft, numDeletedVersions, tblVersionsNotDeletedList, deleteBuffer, deleteVersionsOlderThan,
+				null, tableVersionsNextToken);
+	}
+
+	private TableCleanupResult complete(GlueTable glueTable, long executionId, String executionBatchId,
+			int numTableVersionsB4Cleanup, int numVersionsRetained, int numDeletedVersions,
+			List<TableVersionStatus> tblVersionsNotDeletedList, TableVersionDeleteBuffer deleteBuffer,
+			int oldestRetainedVersionId, TableState tableState, String tableVersionsNextToken) {
+
+		ddbUtil.insertCleanupStatusToDynamoDB(statisticsWriter, dynamoDBTableName, hashKey, rangeKey, executionId,
+				executionBatchId, glueTable.getDatabaseName(), glueTable.getTableName(), numTableVersionsB4Cleanup,
+				numVersionsRetained, numDeletedVersions);
+		// versions that could not be deleted or were skipped are still there
+		if (tableState != null)
+			recordState(glueTable, tableState, numTableVersionsB4Cleanup - numDeletedVersions);
+
+		int numberOfVersionsSkipped = deleteBuffer.getNumberOfVersionsSkipped();
+		if (numberOfVersionsSkipped > 0 || tableVersionsNextToken != null)
+			System.out.printf("Deadline reached for table '%s' under database '%s'. Versions deleted: %d, versions left: %d, listing complete: %b \n",
+					glueTable.getTableName(), glueTable.getDatabaseName(), numDeletedVersions, numberOfVersionsSkipped,
+					tableVersionsNextToken == null);
+		else if (tblVersionsNotDeletedList.isEmpty())
+			System.out.printf("Older versions of table '%s' under database '%s' were deleted. \n",
+					glueTable.getTableName(), glueTable.getDatabaseName());
+		return new TableCleanupResult(tblVersionsNotDeletedList, numDeletedVersions, numberOfVersionsSkipped,
+				oldestRetainedVersionId, deleteBuffer.getLowestVersionIdSkipped(),
+				deleteBuffer.getHighestVersionIdSkipped(), tableVersionsNextToken);
+	}
+
+	/**
+	 * Records the state of a table after its cleanup, unless the table has no
+	 * versions or states are not recorded.
+	 */
+	private void recordState(GlueTable glueTable, TableState tableState, int numberOfVersionsRetained) {
+		if (tableStateTableName.isEmpty() || tableState.getVersionId() < 0)
+			return;
+		tableState.setNumberOfVersionsRetained(numberOfVersionsRetained);
+		ddbUtil.insertTableStateToDynamoDB(statisticsWriter, tableStateTableName, glueTable.getDatabaseName(),
+				glueTable.getTableName(), tableState);
+	}
+
+	private TableVersionDeleteExecutor newDeleteExecutor(GlueTable glueTable, Deadline deadline) {
+		return new TableVersionDeleteExecutor(glueUtil, glueClient, glueTable.getTableName(),
+				glueTable.getDatabaseName(), deleteExecutorService, deleteConcurrency, deadline);
+	}
+}
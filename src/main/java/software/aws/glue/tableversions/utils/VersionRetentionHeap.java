@@ -0,0 +1,130 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * This is a bounded min-heap of primitive table version ids. It keeps the
+ * newest N version ids offered to it; every version id that falls out of the
+ * newest N is handed to an eviction consumer straight away, so memory grows
+ * with the number of versions to retain instead of with the total number of
+ * versions of a table.
+ */
+public class VersionRetentionHeap {
+
+	private final int[] heap;
+	private final IntConsumer evictedVersionConsumer;
+	private int size;
+	private int numberOfVersionsOffered;
+	private int numberOfVersionsEvicted;
+
+	public VersionRetentionHeap(int numberofVersionsToRetain, IntConsumer evictedVersionConsumer) {
+		if (numberofVersionsToRetain < 1)
+			throw new IllegalArgumentException("Number of versions to retain must be at least 1.");
+		this.heap = new int[numberofVersionsToRetain];
+		this.evictedVersionConsumer = evictedVersionConsumer;
+	}
+
+	/**
+	 * Offer a version id. When the heap is full, either the offered version id or
+	 * the oldest retained version id is evicted.
+	 *
+	 * @param versionId
+	 */
+	public void offer(int versionId) {
+		numberOfVersionsOffered++;
+		if (size < heap.length) {
+			heap[size] = versionId;
+			siftUp(size++);
+		} else if (versionId > heap[0]) {
+			int evicted = heap[0];
+			heap[0] = versionId;
+			siftDown(0);
+			evict(evicted);
+		} else {
+			evict(versionId);
+		}
+	}
+
+	/**
+	 * Returns the retained version ids sorted in descending order.
+	 *
+	 * @return
+	 */
+	public int[] getRetainedVersionIds() {
+		int[] retained = Arrays.copyOf(heap, size);
+		Arrays.sort(retained);
+		for (int i = 0, j = retained.length - 1; i < j; i++, j--) {
+			int tmp = retained[i];
+			retained[i] = retained[j];
+			retained[j] = tmp;
+		}
+		return retained;
+	}
+
+	/**
+	 * Returns the oldest retained version id, or -1 when nothing is retained.
+	 *
+	 * @return
+	 */
+	public int getOldestRetainedVersionId() {
+		return size == 0 ? -1 : heap[0];
+	}
+
+	public int getNumberOfVersionsRetained() {
+		return size;
+	}
+
+	/**
+	 * Returns whether numberofVersionsToRetain versions are retained, so every
+	 * version older than the oldest retained one is to be deleted.
+	 *
+	 * @return
+	 */
+	public boolean isFull() {
+		return size == heap.length;
+	}
+
+	public int getNumberOfVersionsOffered() {
+		return numberOfVersionsOffered;
+	}
+
+	public int getNumberOfVersionsEvicted() {
+		return numberOfVersionsEvicted;
+	}
+
+	private void evict(int versionId) {
+		numberOfVersionsEvicted++;
+		evictedVersionConsumer.accept(versionId);
+	}
+
+	private void siftUp(int index) {
+		int value = heap[index];
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (heap[parent] <= value)
+				break;
+			heap[index] = heap[parent];
+			index = parent;
+		}
+		heap[index] = value;
+	}
+
+	private void siftDown(int index) {
+		int value = heap[index];
+		int half = size >>> 1;
+		while (index < half) {
+			int child = 2 * index + 1;
+			if (child + 1 < size && heap[child + 1] < heap[child])
+				child++;
+			if (value <= heap[child])
+				break;
+			heap[index] = heap[child];
+			index = child;
+		}
+		heap[index] = value;
+	}
+}
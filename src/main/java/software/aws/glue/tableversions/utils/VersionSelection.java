@@ -0,0 +1,41 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+/**
+ * Result of {@link TableVersionSelector}. Both arrays are sorted in descending
+ * order.
+ */
+public class VersionSelection {
+
+	private final int[] versionsToKeep;
+	private final int[] versionsToDelete;
+
+	public VersionSelection(int[] versionsToKeep, int[] versionsToDelete) {
+		this.versionsToKeep = versionsToKeep;
+		this.versionsToDelete = versionsToDelete;
+	}
+
+	public int[] getVersionsToKeep() {
+		return versionsToKeep;
+	}
+
+	public int[] getVersionsToDelete() {
+		return versionsToDelete;
+	}
+
+	/**
+	 * Returns the current (latest) version, or -1 when there are no versions.
+	 * 
+	 * @return
+	 */
+	public int getCurrentVersion() {
+		return versionsToKeep.length > 0 ? versionsToKeep[0]
+				: versionsToDelete.length > 0 ? versionsToDelete[0] : -1;
+	}
+
+	public int getNumberOfVersions() {
+		return versionsToKeep.length + versionsToDelete.length;
+	}
+}
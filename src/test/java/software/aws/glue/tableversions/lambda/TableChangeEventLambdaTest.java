@@ -0,0 +1,285 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.lambda;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.amazonaws.services.glue.AbstractAWSGlue;
+import com.amazonaws.services.glue.model.AWSGlueException;
+import com.amazonaws.services.glue.model.BatchDeleteTableVersionRequest;
+import com.amazonaws.services.glue.model.BatchDeleteTableVersionResult;
+import com.amazonaws.services.glue.model.EntityNotFoundException;
+import com.amazonaws.services.glue.model.GetTableRequest;
+import com.amazonaws.services.glue.model.GetTableResult;
+import com.amazonaws.services.glue.model.GetTableVersionsRequest;
+import com.amazonaws.services.glue.model.GetTableVersionsResult;
+import com.amazonaws.services.glue.model.Table;
+import com.amazonaws.services.glue.model.TableVersion;
+import com.amazonaws.services.glue.model.TableVersionError;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
+import com.amazonaws.services.sqs.AbstractAmazonSQS;
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import software.aws.glue.tableversions.lambda.SQSBatchResponse.BatchItemFailure;
+import software.aws.glue.tableversions.utils.AWSClientHolder;
+import software.aws.glue.tableversions.utils.CatalogFilter;
+import software.aws.glue.tableversions.utils.Deadline;
+
+/**
+ * Runs {@link TableChangeEventLambda#processEvent} on the recorded event in
+ * glue_table_state_change_event.json, and variations of it, against a stub AWS
+ * Glue client.
+ */
+public class TableChangeEventLambdaTest {
+
+	private static final int NUMBER_OF_VERSIONS_TO_RETAIN = 100;
+
+	private StubGlue glue;
+	private StubDynamoDB dynamoDB;
+
+	@Before
+	public void setUp() {
+		glue = new StubGlue();
+		dynamoDB = new StubDynamoDB();
+		AWSClientHolder.overrideInstance(AWSClientHolder.withClients(glue, new AbstractAmazonSQS() {
+		}, dynamoDB, "123456789012"));
+	}
+
+	@After
+	public void tearDown() {
+		AWSClientHolder.overrideInstance(null);
+	}
+
+	@Test
+	public void cleansUpTheTableOfTheRecordedEvent() {
+		glue.addTable("sales_db", "orders", 150);
+
+		SQSBatchResponse response = processEvent(message("m1", recordedEvent()));
+
+		assertEquals(0, response.getBatchItemFailures().size());
+		assertEquals(NUMBER_OF_VERSIONS_TO_RETAIN, glue.versionsOf("sales_db", "orders").size());
+		assertEquals(51, glue.versionsOf("sales_db", "orders").first().intValue());
+		assertEquals(1, dynamoDB.numberOfItemsWritten.get());
+	}
+
+	@Test
+	public void mergesTheEventsOfATable() {
+		glue.addTable("sales_db", "orders", 150);
+		glue.addTable("sales_db", "customers", 120);
+
+		SQSBatchResponse response = processEvent(message("m1", recordedEvent()), message("m2", recordedEvent()),
+				message("m3", event("UpdateTable", "customers")), message("m4", recordedEvent()));
+
+		assertEquals(0, response.getBatchItemFailures().size());
+		// the three events of orders are looked up and cleaned up once
+		assertEquals(1, glue.getTableCalls("sales_db", "orders"));
+		assertEquals(1, glue.getTableCalls("sales_db", "customers"));
+		assertEquals(NUMBER_OF_VERSIONS_TO_RETAIN, glue.versionsOf("sales_db", "orders").size());
+		assertEquals(NUMBER_OF_VERSIONS_TO_RETAIN, glue.versionsOf("sales_db", "customers").size());
+		assertEquals(2, dynamoDB.numberOfItemsWritten.get());
+	}
+
+	@Test
+	public void skipsEventsOtherThanUpdateTable() {
+		glue.addTable("sales_db", "orders", 150);
+
+		SQSBatchResponse response = processEvent(message("m1", event("CreateTable", "orders")),
+				message("m2", event("DeleteTable", "orders")), message("m3", event("BatchDeleteTable", "orders")));
+
+		assertEquals(0, response.getBatchItemFailures().size());
+		assertEquals(0, glue.getTableCalls("sales_db", "orders"));
+		assertEquals(150, glue.versionsOf("sales_db", "orders").size());
+	}
+
+	@Test
+	public void skipsTablesThatCannotExceedTheRetention() {
+		glue.addTable("sales_db", "orders", 80);
+
+		SQSBatchResponse response = processEvent(message("m1", recordedEvent()));
+
+		assertEquals(0, response.getBatchItemFailures().size());
+		assertEquals(1, glue.getTableCalls("sales_db", "orders"));
+		assertEquals(0, glue.numberOfVersionsListed.get());
+		assertEquals(80, glue.versionsOf("sales_db", "orders").size());
+	}
+
+	@Test
+	public void reportsTheMessagesOfFailedTables() {
+		glue.addTable("sales_db", "orders", 150);
+		glue.addTable("sales_db", "customers", 150);
+		glue.failingTables.add("sales_db.customers");
+
+		SQSBatchResponse response = processEvent(message("m1", recordedEvent()),
+				message("m2", event("UpdateTable", "customers")), message("m3", "not an event"),
+				message("m4", event("UpdateTable", "customers")));
+
+		// both events of the failed table and the message that is not an event are
+		// delivered again
+		assertEquals(Arrays.asList("m3", "m2", "m4"), response.getBatchItemFailures().stream()
+				.map(BatchItemFailure::getItemIdentifier).collect(Collectors.toList()));
+		assertEquals(NUMBER_OF_VERSIONS_TO_RETAIN, glue.versionsOf("sales_db", "orders").size());
+		assertEquals(150, glue.versionsOf("sales_db", "customers").size());
+	}
+
+	@Test
+	public void failsTheMessagesOfTablesNotStartedBeforeTheDeadline() {
+		glue.addTable("sales_db", "orders", 150);
+
+		SQSBatchResponse response = new TableChangeEventLambda().processEvent(glue, dynamoDB,
+				Collections.singletonList(message("m1", recordedEvent())), noFilter(), NUMBER_OF_VERSIONS_TO_RETAIN,
+				"statistics", "execution_id", "execution_batch_id", false, 4, 8, Deadline.after(0), "");
+
+		assertEquals(1, response.getBatchItemFailures().size());
+		assertEquals("m1", response.getBatchItemFailures().get(0).getItemIdentifier());
+		assertEquals(150, glue.versionsOf("sales_db", "orders").size());
+	}
+
+	private SQSBatchResponse processEvent(SQSMessage... messages) {
+		return new TableChangeEventLambda().processEvent(glue, dynamoDB, Arrays.asList(messages), noFilter(),
+				NUMBER_OF_VERSIONS_TO_RETAIN, "statistics", "execution_id", "execution_batch_id", false, 4, 8,
+				Deadline.none(), "");
+	}
+
+	private static CatalogFilter noFilter() {
+		return CatalogFilter.fromConfig("", "", "", "", ",");
+	}
+
+	private static SQSMessage message(String messageId, String body) {
+		SQSMessage message = new SQSMessage();
+		message.setMessageId(messageId);
+		message.setBody(body);
+		return message;
+	}
+
+	private static String recordedEvent() {
+		try (InputStream inputStream = TableChangeEventLambdaTest.class
+				.getResourceAsStream("/glue_table_state_change_event.json")) {
+			return new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * The recorded event with another type of change and table name.
+	 */
+	private static String event(String typeOfChange, String tableName) {
+		JsonObject event = JsonParser.parseString(recordedEvent()).getAsJsonObject();
+		JsonObject detail = event.getAsJsonObject("detail");
+		detail.addProperty("typeOfChange", typeOfChange);
+		detail.addProperty("tableName", tableName);
+		return event.toString();
+	}
+
+	/**
+	 * AWS Glue stand-in that keeps the version ids of its tables. Tables named in
+	 * failingTables fail GetTable.
+	 */
+	private static class StubGlue extends AbstractAWSGlue {
+
+		private final Map<String, NavigableSet<Integer>> tableVersions = new ConcurrentHashMap<String, NavigableSet<Integer>>();
+		private final Map<String, AtomicInteger> getTableCalls = new ConcurrentHashMap<String, AtomicInteger>();
+		private final List<String> failingTables = Collections.synchronizedList(new ArrayList<String>());
+		private final AtomicInteger numberOfVersionsListed = new AtomicInteger();
+
+		void addTable(String databaseName, String tableName, int numberOfVersions) {
+			NavigableSet<Integer> versionIds = Collections.synchronizedNavigableSet(new TreeSet<Integer>());
+			for (int versionId = 1; versionId <= numberOfVersions; versionId++) {
+				versionIds.add(versionId);
+			}
+			tableVersions.put(databaseName + "." + tableName, versionIds);
+		}
+
+		NavigableSet<Integer> versionsOf(String databaseName, String tableName) {
+			return tableVersions.get(databaseName + "." + tableName);
+		}
+
+		int getTableCalls(String databaseName, String tableName) {
+			AtomicInteger calls = getTableCalls.get(databaseName + "." + tableName);
+			return calls == null ? 0 : calls.get();
+		}
+
+		@Override
+		public GetTableResult getTable(GetTableRequest request) {
+			String key = request.getDatabaseName() + "." + request.getName();
+			getTableCalls.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+			if (failingTables.contains(key))
+				throw new AWSGlueException("GetTable failed for " + key);
+			NavigableSet<Integer> versionIds = tableVersions.get(key);
+			if (versionIds == null)
+				throw new EntityNotFoundException("Table not found: " + key);
+			return new GetTableResult().withTable(new Table().withDatabaseName(request.getDatabaseName())
+					.withName(request.getName()).withVersionId(Integer.toString(versionIds.last())));
+		}
+
+		@Override
+		public GetTableVersionsResult getTableVersions(GetTableVersionsRequest request) {
+			String key = request.getDatabaseName() + "." + request.getTableName();
+			List<Integer> versionIds;
+			synchronized (tableVersions.get(key)) {
+				versionIds = new ArrayList<Integer>(tableVersions.get(key).descendingSet());
+			}
+			// pages of 100 versions, newest first
+			int from = request.getNextToken() == null ? 0 : Integer.parseInt(request.getNextToken());
+			int to = Math.min(from + 100, versionIds.size());
+			List<TableVersion> page = new ArrayList<TableVersion>();
+			for (Integer versionId : versionIds.subList(from, to)) {
+				page.add(new TableVersion().withVersionId(Integer.toString(versionId))
+						.withTable(new Table().withName(request.getTableName())));
+			}
+			numberOfVersionsListed.addAndGet(page.size());
+			return new GetTableVersionsResult().withTableVersions(page)
+					.withNextToken(to < versionIds.size() ? Integer.toString(to) : null);
+		}
+
+		@Override
+		public BatchDeleteTableVersionResult batchDeleteTableVersion(BatchDeleteTableVersionRequest request) {
+			NavigableSet<Integer> versionIds = tableVersions.get(request.getDatabaseName() + "." + request.getTableName());
+			for (String versionId : request.getVersionIds()) {
+				versionIds.remove(Integer.parseInt(versionId));
+			}
+			return new BatchDeleteTableVersionResult().withErrors(Collections.<TableVersionError>emptyList());
+		}
+	}
+
+	/**
+	 * DynamoDB stand-in that accepts every statistics item.
+	 */
+	private static class StubDynamoDB extends AbstractAmazonDynamoDB {
+
+		private final AtomicInteger numberOfItemsWritten = new AtomicInteger();
+
+		@Override
+		public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+			for (List<WriteRequest> writeRequests : request.getRequestItems().values()) {
+				numberOfItemsWritten.addAndGet(writeRequests.size());
+			}
+			return new BatchWriteItemResult().withUnprocessedItems(Collections.<String, List<WriteRequest>>emptyMap());
+		}
+	}
+}
@@ -0,0 +1,348 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.lambda;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.http.HttpResponse;
+import com.amazonaws.http.SdkHttpMetadata;
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.amazonaws.services.glue.AbstractAWSGlue;
+import com.amazonaws.services.glue.model.AWSGlueException;
+import com.amazonaws.services.glue.model.BatchDeleteTableVersionRequest;
+import com.amazonaws.services.glue.model.BatchDeleteTableVersionResult;
+import com.amazonaws.services.glue.model.GetTableVersionsRequest;
+import com.amazonaws.services.glue.model.GetTableVersionsResult;
+import com.amazonaws.services.glue.model.TableVersion;
+import com.amazonaws.services.glue.model.TableVersionError;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.MessageAttribute;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
+import com.amazonaws.services.sqs.AbstractAmazonSQS;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import com.google.gson.Gson;
+
+import software.aws.glue.tableversions.lambda.SQSBatchResponse.BatchItemFailure;
+import software.aws.glue.tableversions.utils.AWSClientHolder;
+import software.aws.glue.tableversions.utils.Deadline;
+import software.aws.glue.tableversions.utils.GlueTable;
+import software.aws.glue.tableversions.utils.GlueTablePack;
+
+/**
+ * Runs {@link TableVersionsCleanupLambda#processEvent} against stub AWS Glue,
+ * Amazon SQS and DynamoDB clients: partial batch failures, continuations of
+ * tables stopped by the deadline, and the requeueing and isolation of the
+ * tables of packed messages. Every table has 20 versions, of which 5 are
+ * retained.
+ */
+public class TableVersionsCleanupLambdaTest {
+
+	private static final int NUMBER_OF_VERSIONS_TO_RETAIN = 5;
+	private static final int NUMBER_OF_VERSIONS = 20;
+
+	private final Gson gson = new Gson();
+	private StubGlue glue;
+	private StubSQS sqs;
+	private StubDynamoDB dynamoDB;
+
+	@Before
+	public void setUp() {
+		glue = new StubGlue();
+		sqs = new StubSQS();
+		dynamoDB = new StubDynamoDB();
+		AWSClientHolder.overrideInstance(AWSClientHolder.withClients(glue, sqs, dynamoDB, "123456789012"));
+	}
+
+	@After
+	public void tearDown() {
+		AWSClientHolder.overrideInstance(null);
+	}
+
+	@Test
+	public void reportsOnlyTheFailedMessages() {
+		glue.addTable("orders");
+		glue.addTable("customers");
+		glue.failingTables.add("customers");
+
+		SQSBatchResponse response = processEvent(Deadline.none(), message("m1", table("orders")),
+				message("m2", table("customers")));
+
+		assertEquals(Arrays.asList("m2"), failedMessageIds(response));
+		assertEquals(NUMBER_OF_VERSIONS_TO_RETAIN, glue.versionsOf("orders").size());
+		assertEquals(NUMBER_OF_VERSIONS, glue.versionsOf("customers").size());
+		assertTrue(sqs.sentMessages.isEmpty());
+	}
+
+	@Test
+	public void requeuesATableStoppedByTheDeadline() {
+		glue.addTable("orders");
+		glue.listingDelayMillis = 200;
+
+		SQSBatchResponse response = processEvent(Deadline.after(100), message("m1", table("orders")));
+
+		assertTrue(response.getBatchItemFailures().isEmpty());
+		assertEquals(1, sqs.sentMessages.size());
+		assertEquals("sales_db", sqs.sentMessages.get(0).getMessageGroupId());
+		GlueTable continuation = gson.fromJson(sqs.sentMessages.get(0).getMessageBody(), GlueTable.class);
+		assertEquals(1, continuation.getContinuationCount());
+		assertEquals(Integer.valueOf(16), continuation.getDeleteVersionsOlderThan());
+		assertEquals(Integer.valueOf(1), continuation.getDeleteVersionsFrom());
+		assertEquals(Integer.valueOf(15), continuation.getDeleteVersionsTo());
+		assertNull(continuation.getTableVersionsNextToken());
+		assertEquals(NUMBER_OF_VERSIONS, glue.versionsOf("orders").size());
+	}
+
+	@Test
+	public void requeuesTheTablesOfAPackNotStartedBeforeTheDeadline() {
+		glue.addTable("orders");
+		glue.addTable("customers");
+		glue.listingDelayMillis = 200;
+
+		SQSBatchResponse response = processEvent(Deadline.after(100),
+				message("m1", pack(table("orders"), table("customers"))));
+
+		assertTrue(response.getBatchItemFailures().isEmpty());
+		assertEquals(1, sqs.sentMessages.size());
+		List<GlueTable> requeued = GlueTablePack.fromJson(gson, sqs.sentMessages.get(0).getMessageBody())
+				.getTables();
+		assertEquals(Arrays.asList("orders", "customers"), tableNames(requeued));
+		// the continuation of orders and customers, which was not started
+		assertEquals(Integer.valueOf(16), requeued.get(0).getDeleteVersionsOlderThan());
+		assertNull(requeued.get(1).getDeleteVersionsOlderThan());
+		assertEquals(1, requeued.get(1).getContinuationCount());
+		assertEquals(Arrays.asList("orders"), glue.tablesListed);
+	}
+
+	@Test
+	public void requeuesTheFailedTablesOfAPack() {
+		glue.addTable("orders");
+		glue.addTable("customers");
+		glue.failingTables.add("customers");
+
+		SQSBatchResponse response = processEvent(Deadline.none(),
+				message("m1", pack(table("orders"), table("customers"))));
+
+		assertTrue(response.getBatchItemFailures().isEmpty());
+		assertEquals(NUMBER_OF_VERSIONS_TO_RETAIN, glue.versionsOf("orders").size());
+		assertEquals(1, sqs.sentMessages.size());
+		GlueTable requeued = gson.fromJson(sqs.sentMessages.get(0).getMessageBody(), GlueTable.class);
+		assertEquals("customers", requeued.getTableName());
+		assertEquals(1, requeued.getFailureCount());
+	}
+
+	@Test
+	public void isolatesATableThatKeepsFailing() {
+		glue.addTable("orders");
+		glue.addTable("customers");
+		glue.addTable("products");
+		glue.failingTables.addAll(Arrays.asList("customers", "products"));
+		GlueTable customers = table("customers");
+		customers.setFailureCount(2);
+
+		SQSBatchResponse response = processEvent(Deadline.none(),
+				message("m1", pack(table("orders"), customers, table("products"))));
+
+		assertTrue(response.getBatchItemFailures().isEmpty());
+		// the isolated table is sent before the pack of the other failed tables
+		assertEquals(2, sqs.sentMessages.size());
+		GlueTable isolated = gson.fromJson(sqs.sentMessages.get(0).getMessageBody(), GlueTable.class);
+		assertEquals("customers", isolated.getTableName());
+		assertEquals(3, isolated.getFailureCount());
+		GlueTable requeued = gson.fromJson(sqs.sentMessages.get(1).getMessageBody(), GlueTable.class);
+		assertEquals("products", requeued.getTableName());
+		assertEquals(1, requeued.getFailureCount());
+	}
+
+	@Test
+	public void requeuesAnIsolatedTableWithThePackIfItCannotBeSentAlone() {
+		glue.addTable("orders");
+		glue.addTable("customers");
+		glue.failingTables.add("customers");
+		GlueTable customers = table("customers");
+		customers.setFailureCount(2);
+		sqs.failingSends = 1;
+
+		SQSBatchResponse response = processEvent(Deadline.none(), message("m1", pack(table("orders"), customers)));
+
+		assertTrue(response.getBatchItemFailures().isEmpty());
+		assertEquals(1, sqs.sentMessages.size());
+		GlueTable requeued = gson.fromJson(sqs.sentMessages.get(0).getMessageBody(), GlueTable.class);
+		assertEquals("customers", requeued.getTableName());
+		assertEquals(3, requeued.getFailureCount());
+	}
+
+	@Test
+	public void failsTheMessageIfTheRequeuedTablesCannotBeSent() {
+		glue.addTable("orders");
+		glue.addTable("customers");
+		glue.failingTables.add("customers");
+		sqs.failingSends = 1;
+
+		SQSBatchResponse response = processEvent(Deadline.none(),
+				message("m1", pack(table("orders"), table("customers"))));
+
+		assertEquals(Arrays.asList("m1"), failedMessageIds(response));
+		assertEquals(NUMBER_OF_VERSIONS_TO_RETAIN, glue.versionsOf("orders").size());
+		assertTrue(sqs.sentMessages.isEmpty());
+	}
+
+	private SQSBatchResponse processEvent(Deadline deadline, SQSMessage... messages) {
+		TableVersionsCleanupSettings settings = new TableVersionsCleanupSettings();
+		settings.setSqsQueueURI("https://sqs.us-east-1.amazonaws.com/123456789012/cleanup.fifo");
+		settings.setNumberofVersionsToRetain(NUMBER_OF_VERSIONS_TO_RETAIN);
+		settings.setMessageConcurrency(2);
+		return new TableVersionsCleanupLambda().processEvent(glue, dynamoDB, sqs, Arrays.asList(messages),
+				settings, deadline);
+	}
+
+	private static List<String> failedMessageIds(SQSBatchResponse response) {
+		return response.getBatchItemFailures().stream().map(BatchItemFailure::getItemIdentifier)
+				.collect(Collectors.toList());
+	}
+
+	private static List<String> tableNames(List<GlueTable> tables) {
+		return tables.stream().map(GlueTable::getTableName).collect(Collectors.toList());
+	}
+
+	private static GlueTable table(String tableName) {
+		GlueTable glueTable = new GlueTable();
+		glueTable.setDatabaseName("sales_db");
+		glueTable.setTableName(tableName);
+		return glueTable;
+	}
+
+	private String pack(GlueTable... tables) {
+		return new GlueTablePack(new ArrayList<GlueTable>(Arrays.asList(tables))).toJson(gson);
+	}
+
+	private SQSMessage message(String messageId, GlueTable glueTable) {
+		return message(messageId, gson.toJson(glueTable));
+	}
+
+	private static SQSMessage message(String messageId, String body) {
+		SQSMessage message = new SQSMessage();
+		message.setMessageId(messageId);
+		message.setBody(body);
+		MessageAttribute executionBatchId = new MessageAttribute();
+		executionBatchId.setStringValue("1600000000000");
+		message.setMessageAttributes(Collections.singletonMap("ExecutionBatchId", executionBatchId));
+		Map<String, String> attributes = new HashMap<String, String>();
+		attributes.put("MessageGroupId", "sales_db");
+		message.setAttributes(attributes);
+		return message;
+	}
+
+	/**
+	 * AWS Glue stand-in with the versions of the tables of one database, listed in
+	 * a single page. Tables named in failingTables fail GetTableVersions.
+	 */
+	private static class StubGlue extends AbstractAWSGlue {
+
+		private final Map<String, NavigableSet<Integer>> tableVersions = new ConcurrentHashMap<String, NavigableSet<Integer>>();
+		private final List<String> failingTables = Collections.synchronizedList(new ArrayList<String>());
+		private final List<String> tablesListed = Collections.synchronizedList(new ArrayList<String>());
+		private volatile long listingDelayMillis;
+
+		void addTable(String tableName) {
+			NavigableSet<Integer> versionIds = Collections.synchronizedNavigableSet(new TreeSet<Integer>());
+			for (int versionId = 1; versionId <= NUMBER_OF_VERSIONS; versionId++) {
+				versionIds.add(versionId);
+			}
+			tableVersions.put(tableName, versionIds);
+		}
+
+		NavigableSet<Integer> versionsOf(String tableName) {
+			return tableVersions.get(tableName);
+		}
+
+		@Override
+		public GetTableVersionsResult getTableVersions(GetTableVersionsRequest request) {
+			tablesListed.add(request.getTableName());
+			if (failingTables.contains(request.getTableName()))
+				throw new AWSGlueException("GetTableVersions failed for " + request.getTableName());
+			if (listingDelayMillis > 0)
+				sleep(listingDelayMillis);
+			List<TableVersion> page = new ArrayList<TableVersion>();
+			synchronized (tableVersions.get(request.getTableName())) {
+				for (Integer versionId : tableVersions.get(request.getTableName()).descendingSet()) {
+					page.add(new TableVersion().withVersionId(Integer.toString(versionId)));
+				}
+			}
+			return new GetTableVersionsResult().withTableVersions(page);
+		}
+
+		@Override
+		public BatchDeleteTableVersionResult batchDeleteTableVersion(BatchDeleteTableVersionRequest request) {
+			for (String versionId : request.getVersionIds()) {
+				tableVersions.get(request.getTableName()).remove(Integer.parseInt(versionId));
+			}
+			return new BatchDeleteTableVersionResult().withErrors(Collections.<TableVersionError>emptyList());
+		}
+
+		private static void sleep(long millis) {
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Amazon SQS stand-in that keeps the messages sent. The first failingSends
+	 * messages are answered with status code 500.
+	 */
+	private static class StubSQS extends AbstractAmazonSQS {
+
+		private final List<SendMessageRequest> sentMessages = Collections
+				.synchronizedList(new ArrayList<SendMessageRequest>());
+		private volatile int failingSends;
+
+		@Override
+		public synchronized SendMessageResult sendMessage(SendMessageRequest request) {
+			HttpResponse response = new HttpResponse(null, null);
+			if (failingSends > 0) {
+				failingSends--;
+				response.setStatusCode(500);
+			} else {
+				sentMessages.add(request);
+				response.setStatusCode(200);
+			}
+			SendMessageResult result = new SendMessageResult();
+			result.setSdkHttpMetadata(SdkHttpMetadata.from(response));
+			return result;
+		}
+	}
+
+	/**
+	 * DynamoDB stand-in that accepts every statistics item.
+	 */
+	private static class StubDynamoDB extends AbstractAmazonDynamoDB {
+
+		@Override
+		public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+			return new BatchWriteItemResult().withUnprocessedItems(Collections.<String, List<WriteRequest>>emptyMap());
+		}
+	}
+}
@@ -0,0 +1,52 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests how {@link Deadline#beforeTimeout(long, long)} caps the margin.
+ */
+public class DeadlineTest {
+
+	@Test
+	public void leavesTheMarginBeforeTheTimeout() {
+		Deadline deadline = Deadline.beforeTimeout(900000, 60000);
+
+		assertRemaining(840000, deadline);
+	}
+
+	@Test
+	public void capsAMarginAsLongAsTheTimeout() {
+		// a function with a 60 second timeout and the default margin
+		Deadline deadline = Deadline.beforeTimeout(60000, 60000);
+
+		assertFalse(deadline.isExpired());
+		assertRemaining(30000, deadline);
+	}
+
+	@Test
+	public void capsAMarginLongerThanTheTimeout() {
+		Deadline deadline = Deadline.beforeTimeout(30000, 120000);
+
+		assertFalse(deadline.isExpired());
+		assertRemaining(15000, deadline);
+	}
+
+	@Test
+	public void expiresWithoutTimeLeft() {
+		assertTrue(Deadline.beforeTimeout(0, 60000).isExpired());
+		assertTrue(Deadline.after(-1).isExpired());
+		assertFalse(Deadline.none().isExpired());
+	}
+
+	private static void assertRemaining(long expectedMillis, Deadline deadline) {
+		long remainingMillis = deadline.getRemainingMillis();
+		assertTrue("remaining: " + remainingMillis,
+				remainingMillis <= expectedMillis && remainingMillis > expectedMillis - 1000);
+	}
+}
@@ -0,0 +1,133 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BillingMode;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+
+/**
+ * Runs several {@link DistributedRateLimiter} workers against DynamoDB Local,
+ * so the conditional writes are evaluated by DynamoDB itself. The test is
+ * skipped unless the endpoint of DynamoDB Local is given as system property
+ * dynamodb.local.endpoint or environment variable dynamodb_local_endpoint,
+ * e.g. http://localhost:8000. Each test creates its own table and deletes it
+ * afterwards.
+ */
+public class DistributedRateLimiterIntegrationTest {
+
+	private static final String API = "GetTableVersions";
+	private static final double RATE = 50;
+	private static final int LEASE_SIZE = 5;
+	private static final int NUMBER_OF_WORKERS = 4;
+	private static final int THREADS_PER_WORKER = 4;
+	private static final long RUN_MILLIS = 2000;
+
+	private AmazonDynamoDB dynamoDB;
+	private String tableName;
+
+	@Before
+	public void setUp() {
+		String endpoint = Optional.ofNullable(System.getProperty("dynamodb.local.endpoint"))
+				.orElse(Optional.ofNullable(System.getenv("dynamodb_local_endpoint")).orElse(""));
+		Assume.assumeTrue("DynamoDB Local endpoint is not set", !endpoint.isEmpty());
+
+		dynamoDB = AmazonDynamoDBClientBuilder.standard()
+				.withEndpointConfiguration(new EndpointConfiguration(endpoint, "us-east-1"))
+				.withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("local", "local"))).build();
+		tableName = "rate_limiter_" + System.currentTimeMillis();
+		dynamoDB.createTable(new CreateTableRequest().withTableName(tableName)
+				.withAttributeDefinitions(new AttributeDefinition("api_name", ScalarAttributeType.S))
+				.withKeySchema(new KeySchemaElement("api_name", KeyType.HASH))
+				.withBillingMode(BillingMode.PAY_PER_REQUEST));
+	}
+
+	@After
+	public void tearDown() {
+		if (dynamoDB == null)
+			return;
+		dynamoDB.deleteTable(tableName);
+		dynamoDB.shutdown();
+	}
+
+	@Test
+	public void keepsTheFleetWithinTheRate() throws Exception {
+		List<DistributedRateLimiter> workers = new ArrayList<DistributedRateLimiter>();
+		for (int i = 0; i < NUMBER_OF_WORKERS; i++) {
+			workers.add(new DistributedRateLimiter(() -> dynamoDB, tableName, Collections.singletonMap(API, RATE),
+					LEASE_SIZE));
+		}
+		AtomicInteger numberOfCalls = new AtomicInteger();
+		ExecutorService executorService = Executors.newFixedThreadPool(NUMBER_OF_WORKERS * THREADS_PER_WORKER);
+		long start = System.currentTimeMillis();
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (DistributedRateLimiter worker : workers) {
+				for (int i = 0; i < THREADS_PER_WORKER; i++) {
+					futures.add(executorService.submit(() -> {
+						while (System.currentTimeMillis() - start < RUN_MILLIS) {
+							worker.acquire(API);
+							numberOfCalls.incrementAndGet();
+						}
+					}));
+				}
+			}
+			for (Future<?> future : futures) {
+				future.get(RUN_MILLIS * 5, TimeUnit.MILLISECONDS);
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+		long elapsedMillis = System.currentTimeMillis() - start;
+
+		// the bucket starts with one second of tokens and refills at the rate
+		double maxCalls = RATE + RATE * elapsedMillis / 1000.0;
+		assertTrue("calls: " + numberOfCalls.get() + ", max: " + maxCalls, numberOfCalls.get() <= maxCalls);
+		assertTrue("calls: " + numberOfCalls.get(), numberOfCalls.get() >= RATE * RUN_MILLIS / 1000.0 / 2);
+
+		// every lease of every worker is one conditional write of the bucket
+		long numberOfLeases = 0;
+		for (DistributedRateLimiter worker : workers) {
+			numberOfLeases += worker.getNumberOfLeases();
+		}
+		assertEquals(numberOfLeases, Long.parseLong(getBucket().get("version").getN()));
+	}
+
+	private Map<String, AttributeValue> getBucket() {
+		Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+		key.put("api_name", new AttributeValue(API));
+		return dynamoDB.getItem(new GetItemRequest().withTableName(tableName).withKey(key).withConsistentRead(true))
+				.getItem();
+	}
+}
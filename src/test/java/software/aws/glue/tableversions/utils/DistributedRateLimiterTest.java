@@ -0,0 +1,232 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+
+/**
+ * Tests the token bucket arithmetic and the optimistic locking of
+ * {@link DistributedRateLimiter} against a DynamoDB stand-in holding the
+ * bucket of one API, 100 calls per second leased in blocks of 50.
+ */
+public class DistributedRateLimiterTest {
+
+	private static final String API = "GetTableVersions";
+	private static final double RATE = 100;
+	private static final int LEASE_SIZE = 50;
+
+	private StubDynamoDB dynamoDB;
+	private DistributedRateLimiter rateLimiter;
+
+	@Before
+	public void setUp() {
+		dynamoDB = new StubDynamoDB();
+		rateLimiter = new DistributedRateLimiter(() -> dynamoDB, "rate_limits", Collections.singletonMap(API, RATE),
+				LEASE_SIZE);
+	}
+
+	@Test
+	public void createsAFullBucketOnTheFirstLease() {
+		rateLimiter.acquire(API);
+
+		assertEquals(RATE - LEASE_SIZE, dynamoDB.tokens(), 0.0);
+		assertEquals(1, dynamoDB.version());
+		assertEquals(1, rateLimiter.getNumberOfLeases());
+	}
+
+	@Test
+	public void usesLeasedTokensWithoutCallingDynamoDB() {
+		for (int i = 0; i < LEASE_SIZE; i++) {
+			rateLimiter.acquire(API);
+		}
+
+		assertEquals(1, rateLimiter.getNumberOfLeases());
+		assertEquals(1, dynamoDB.numberOfWrites);
+	}
+
+	@Test
+	public void refillsAtTheRateOfTheApi() {
+		// empty half a second ago: 50 tokens have been refilled since
+		long refilledAt = System.currentTimeMillis() - 500;
+		dynamoDB.setBucket(0, refilledAt, 7);
+
+		rateLimiter.acquire(API);
+
+		assertEquals(8, dynamoDB.version());
+		assertTrue("tokens: " + dynamoDB.tokens(), dynamoDB.tokens() >= 0 && dynamoDB.tokens() < 5);
+		assertTrue(dynamoDB.refilledAt() >= refilledAt + 500);
+	}
+
+	@Test
+	public void refillsUpToOneSecondOfTokens() {
+		dynamoDB.setBucket(0, System.currentTimeMillis() - 60000, 1);
+
+		rateLimiter.acquire(API);
+
+		assertEquals(RATE - LEASE_SIZE, dynamoDB.tokens(), 0.0);
+	}
+
+	@Test
+	public void waitsForAFullBlock() {
+		// 10 tokens left; the other 40 take 400 ms to refill
+		dynamoDB.setBucket(10, System.currentTimeMillis(), 1);
+		long start = System.currentTimeMillis();
+
+		rateLimiter.acquire(API);
+
+		assertTrue(System.currentTimeMillis() - start >= 350);
+		assertTrue("tokens: " + dynamoDB.tokens(), dynamoDB.tokens() < 5);
+	}
+
+	@Test
+	public void leasesAgainAfterAConflict() {
+		dynamoDB.setBucket(RATE, System.currentTimeMillis(), 1);
+		// another worker takes 30 tokens between the read and the update
+		dynamoDB.concurrentLeases = 1;
+
+		rateLimiter.acquire(API);
+
+		assertEquals(1, rateLimiter.getNumberOfConflicts());
+		assertEquals(1, rateLimiter.getNumberOfLeases());
+		assertEquals(3, dynamoDB.version());
+		assertTrue("tokens: " + dynamoDB.tokens(), dynamoDB.tokens() >= 20 && dynamoDB.tokens() < 25);
+	}
+
+	@Test
+	public void leasesAgainWhenAnotherWorkerCreatedTheBucket() {
+		dynamoDB.concurrentLeases = 1;
+
+		rateLimiter.acquire(API);
+
+		assertEquals(1, rateLimiter.getNumberOfConflicts());
+		assertEquals(2, dynamoDB.version());
+		assertTrue("tokens: " + dynamoDB.tokens(), dynamoDB.tokens() >= 20 && dynamoDB.tokens() < 25);
+	}
+
+	@Test
+	public void returnsExpiredTokensWithTheNextLease() throws InterruptedException {
+		rateLimiter.acquire(API);
+		// 49 leased tokens expire unused
+		Thread.sleep(1100);
+		// other workers left 10 tokens; the 49 returned make up the next block
+		dynamoDB.setBucket(10, System.currentTimeMillis(), 5);
+		long start = System.currentTimeMillis();
+
+		rateLimiter.acquire(API);
+
+		assertEquals(2, rateLimiter.getNumberOfLeases());
+		assertTrue(System.currentTimeMillis() - start < 300);
+		assertTrue("tokens: " + dynamoDB.tokens(), dynamoDB.tokens() >= 9 && dynamoDB.tokens() < 12);
+	}
+
+	@Test
+	public void letsCallsThroughWhenTheBucketIsNotAvailable() {
+		dynamoDB.unavailable = true;
+
+		for (int i = 0; i < 3 * LEASE_SIZE; i++) {
+			rateLimiter.acquire(API);
+		}
+
+		assertEquals(0, rateLimiter.getNumberOfLeases());
+	}
+
+	@Test
+	public void doesNotLimitOtherApis() {
+		rateLimiter.acquire("GetTables");
+
+		assertEquals(0, dynamoDB.numberOfWrites);
+	}
+
+	/**
+	 * DynamoDB stand-in with the bucket item of one API. It evaluates the two
+	 * conditions the rate limiter uses: the item does not exist yet, and the
+	 * version is unchanged. concurrentLeases writes of another worker, 30 tokens
+	 * each, are made right before the next writes of the rate limiter.
+	 */
+	private static class StubDynamoDB extends AbstractAmazonDynamoDB {
+
+		private Map<String, AttributeValue> item;
+		private int concurrentLeases;
+		private boolean unavailable;
+		private int numberOfWrites;
+
+		synchronized void setBucket(double tokens, long refilledAt, long version) {
+			item = new HashMap<String, AttributeValue>();
+			item.put("api_name", new AttributeValue(API));
+			item.put("tokens", new AttributeValue().withN(Double.toString(tokens)));
+			item.put("refilled_at", new AttributeValue().withN(Long.toString(refilledAt)));
+			item.put("version", new AttributeValue().withN(Long.toString(version)));
+		}
+
+		synchronized double tokens() {
+			return Double.parseDouble(item.get("tokens").getN());
+		}
+
+		synchronized long refilledAt() {
+			return Long.parseLong(item.get("refilled_at").getN());
+		}
+
+		synchronized long version() {
+			return Long.parseLong(item.get("version").getN());
+		}
+
+		@Override
+		public synchronized GetItemResult getItem(GetItemRequest request) {
+			if (unavailable)
+				throw new IllegalStateException("DynamoDB is not available");
+			return new GetItemResult().withItem(item == null ? null : new HashMap<String, AttributeValue>(item));
+		}
+
+		@Override
+		public synchronized PutItemResult putItem(PutItemRequest request) {
+			leaseConcurrently();
+			if (item != null)
+				throw new ConditionalCheckFailedException("The bucket exists");
+			item = new HashMap<String, AttributeValue>(request.getItem());
+			numberOfWrites++;
+			return new PutItemResult();
+		}
+
+		@Override
+		public synchronized UpdateItemResult updateItem(UpdateItemRequest request) {
+			leaseConcurrently();
+			Map<String, AttributeValue> values = request.getExpressionAttributeValues();
+			if (!values.get(":version").getN().equals(item.get("version").getN()))
+				throw new ConditionalCheckFailedException("The bucket was changed");
+			item.put("tokens", values.get(":tokens"));
+			item.put("refilled_at", values.get(":refilled_at"));
+			item.put("version", values.get(":next_version"));
+			numberOfWrites++;
+			return new UpdateItemResult();
+		}
+
+		private void leaseConcurrently() {
+			if (concurrentLeases == 0)
+				return;
+			concurrentLeases--;
+			if (item == null)
+				setBucket(RATE - 30, System.currentTimeMillis(), 1);
+			else
+				setBucket(tokens() - 30, refilledAt(), version() + 1);
+		}
+	}
+}
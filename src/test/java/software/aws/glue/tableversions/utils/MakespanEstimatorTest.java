@@ -0,0 +1,74 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests the schedule {@link MakespanEstimator} predicts for messages of one
+ * and of many message groups.
+ */
+public class MakespanEstimatorTest {
+
+	@Test
+	public void runsTheMessagesOfAGroupOneAfterAnother() {
+		MakespanEstimator estimator = new MakespanEstimator(10);
+		for (int i = 0; i < 4; i++) {
+			estimator.add(100, "sales_db");
+		}
+
+		assertEquals(400, estimator.getMakespan());
+		assertEquals(400, estimator.getLowerBound());
+	}
+
+	@Test
+	public void spreadsGroupsOverTheWorkers() {
+		MakespanEstimator estimator = new MakespanEstimator(2);
+		estimator.add(300, "db_1");
+		estimator.add(200, "db_2");
+		estimator.add(100, "db_3");
+		estimator.add(100, "db_4");
+
+		// db_3 and db_4 follow db_2 on the worker that is free first
+		assertEquals(400, estimator.getMakespan());
+		assertEquals(350, estimator.getLowerBound());
+	}
+
+	@Test
+	public void takesTheNextFreeGroupWhileAGroupIsBusy() {
+		MakespanEstimator estimator = new MakespanEstimator(2);
+		estimator.add(100, "db_1");
+		estimator.add(100, "db_1");
+		estimator.add(10, "db_2");
+		estimator.add(10, "db_2");
+
+		// both messages of db_2 run while the first message of db_1 runs
+		assertEquals(200, estimator.getMakespan());
+		assertEquals(4, estimator.getNumberOfMessages());
+		assertEquals(2, estimator.getNumberOfMessageGroups());
+	}
+
+	@Test
+	public void waitsForTheGroupThatIsFreeFirst() {
+		MakespanEstimator estimator = new MakespanEstimator(3);
+		estimator.add(50, "db_1");
+		estimator.add(20, "db_2");
+		estimator.add(30, "db_2");
+		estimator.add(40, "db_1");
+
+		// the third worker stays idle; every message waits for its group
+		assertEquals(90, estimator.getMakespan());
+		assertEquals(140, estimator.getTotalCost());
+	}
+
+	@Test
+	public void predictsNothingWithoutMessages() {
+		MakespanEstimator estimator = new MakespanEstimator(4);
+
+		assertEquals(0, estimator.getMakespan());
+		assertEquals(0, estimator.getLowerBound());
+	}
+}
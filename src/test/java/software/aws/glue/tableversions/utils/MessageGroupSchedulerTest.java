@@ -0,0 +1,75 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the publishing order {@link MessageGroupScheduler} gives the tables of
+ * several message groups, one group per database.
+ */
+public class MessageGroupSchedulerTest {
+
+	private final List<String> publishedTables = new ArrayList<String>();
+	private final MakespanEstimator makespanEstimator = new MakespanEstimator(2);
+	// packing is disabled, so every table is published in its own message
+	private final MessageGroupScheduler scheduler = new MessageGroupScheduler(
+			new TableMessagePacker(0, 1, (tablePack, messageGroupId) -> {
+				makespanEstimator.add(tablePack.getEstimatedVersionsToDelete(), messageGroupId);
+				publishedTables.add(tablePack.getTables().get(0).getTableName());
+			}));
+
+	@Test
+	public void publishesTheMostExpensiveGroupFirst() {
+		add("db_1", "small", 10);
+		add("db_2", "large_1", 300);
+		add("db_3", "medium", 200);
+		add("db_2", "large_2", 50);
+
+		scheduler.flush();
+
+		assertEquals(Arrays.asList("large_1", "large_2", "medium", "small"), publishedTables);
+		assertEquals(0, scheduler.getNumberOfTables());
+	}
+
+	@Test
+	public void shortensTheMakespanOfGroupsPlannedInNameOrder() {
+		// the databases are planned in the order of their names
+		add("db_1", "a", 100);
+		add("db_2", "b", 100);
+		add("db_3", "c", 100);
+		add("db_3", "d", 100);
+
+		scheduler.flush();
+
+		// db_3 starts first; published in name order, it would start after db_1
+		// and db_2 and end at 300
+		assertEquals(Arrays.asList("c", "d", "a", "b"), publishedTables);
+		assertEquals(200, makespanEstimator.getMakespan());
+	}
+
+	@Test
+	public void ordersTheTablesOfEachFlushSeparately() {
+		add("db_1", "first", 10);
+		scheduler.flush();
+		add("db_2", "second", 500);
+		scheduler.flush();
+
+		assertEquals(Arrays.asList("first", "second"), publishedTables);
+	}
+
+	private void add(String databaseName, String tableName, int estimatedVersionsToDelete) {
+		GlueTable table = new GlueTable();
+		table.setDatabaseName(databaseName);
+		table.setTableName(tableName);
+		table.setEstimatedVersionsToDelete(estimatedVersionsToDelete);
+		scheduler.add(table, databaseName);
+	}
+}
@@ -0,0 +1,148 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.amazonaws.services.glue.AbstractAWSGlue;
+import com.amazonaws.services.glue.model.Database;
+import com.amazonaws.services.glue.model.GetTablesRequest;
+import com.amazonaws.services.glue.model.GetTablesResult;
+import com.amazonaws.services.glue.model.Table;
+
+/**
+ * Tests that the {@link CatalogCrawler} and the {@link TablePlanner} plan the
+ * pages of a shard in database order while the crawl runs ahead, and that a
+ * continuation resumes at the checkpointed page. Each database has 3 pages of
+ * 2 tables; the first database answers slowly.
+ */
+public class TablePlannerTest {
+
+	private static final List<Database> DATABASES = Arrays.asList(new Database().withName("db_1"),
+			new Database().withName("db_2"), new Database().withName("db_3"));
+
+	private final StubGlue glue = new StubGlue();
+	private final List<String> plannedTables = new ArrayList<String>();
+	private final MessageGroupScheduler scheduler = new MessageGroupScheduler(
+			new TableMessagePacker(0, 1, (tablePack, messageGroupId) -> plannedTables
+					.add(tablePack.getTables().get(0).getDatabaseName() + "." + tablePack.getTables().get(0).getTableName())));
+
+	@Test
+	public void plansThePagesInDatabaseOrder() {
+		TablePlanner tablePlanner = newTablePlanner(null);
+		List<String> nextDatabases = new ArrayList<String>();
+
+		int numberOfTablesFound = new CatalogCrawler(new GlueUtil(), glue, 3).crawlTablePages(DATABASES, "",
+				null, page -> {
+					tablePlanner.offer(page);
+					scheduler.flush();
+					nextDatabases.add(tablePlanner.getNextDatabase());
+					return true;
+				});
+
+		assertEquals(18, numberOfTablesFound);
+		assertTrue(tablePlanner.isCompleted());
+		assertEquals(9, tablePlanner.getNumberOfPagesPlanned());
+		// the held databases are planned with the last page of db_1, and the
+		// scheduler publishes the larger groups first
+		Collections.sort(plannedTables);
+		assertEquals(expectedTables(DATABASES), plannedTables);
+		// the pages of db_2 and db_3 arrive first and are held until db_1 is planned
+		assertEquals(Arrays.asList("db_1", "db_1", "db_1", "db_1", "db_1", "db_1", "db_1", "db_1", null),
+				nextDatabases);
+	}
+
+	@Test
+	public void resumesAtTheCheckpointedPage() {
+		TablePlanner tablePlanner = newTablePlanner(null);
+		CatalogCrawler catalogCrawler = new CatalogCrawler(new GlueUtil(), glue, 1);
+		catalogCrawler.crawlTablePages(DATABASES, "", null, page -> {
+			tablePlanner.offer(page);
+			scheduler.flush();
+			return tablePlanner.getNumberOfPagesPlanned() < 4;
+		});
+
+		// the checkpoint after the first page of db_2
+		assertFalse(tablePlanner.isCompleted());
+		assertEquals("db_2", tablePlanner.getNextDatabase());
+		assertEquals("2", tablePlanner.getTablesNextToken());
+
+		List<Database> remainingDatabases = DATABASES.subList(1, 3);
+		TablePlanner continuation = newTablePlanner(remainingDatabases, tablePlanner.getTablesNextToken());
+		catalogCrawler.crawlTablePages(remainingDatabases, "", tablePlanner.getTablesNextToken(),
+				page -> {
+					continuation.offer(page);
+					scheduler.flush();
+					return true;
+				});
+
+		assertTrue(continuation.isCompleted());
+		assertNull(continuation.getNextDatabase());
+		assertEquals(expectedTables(DATABASES), plannedTables);
+	}
+
+	private TablePlanner newTablePlanner(String tablesNextToken) {
+		return newTablePlanner(DATABASES, tablesNextToken);
+	}
+
+	private TablePlanner newTablePlanner(List<Database> databases, String tablesNextToken) {
+		return new TablePlanner(databases, tablesNextToken,
+				new CatalogFilter(Collections.<String>emptyList(), Collections.<String>emptyList(),
+						Collections.<String>emptyList(), Collections.<String>emptyList()),
+				1, new DDBUtil(), null, "", MessageGroupStrategy.fromConfig(1, "", ","), scheduler);
+	}
+
+	private static List<String> expectedTables(List<Database> databases) {
+		List<String> tables = new ArrayList<String>();
+		for (Database database : databases) {
+			for (int table = 0; table < StubGlue.NUMBER_OF_TABLES; table++) {
+				tables.add(database.getName() + ".table_" + table);
+			}
+		}
+		return tables;
+	}
+
+	/**
+	 * Glue stand-in whose databases have the same tables. The NextToken of a page
+	 * is the index of its first table.
+	 */
+	private static class StubGlue extends AbstractAWSGlue {
+
+		private static final int NUMBER_OF_TABLES = 6;
+		private static final int PAGE_SIZE = 2;
+
+		@Override
+		public GetTablesResult getTables(GetTablesRequest request) {
+			if (request.getDatabaseName().equals("db_1"))
+				sleep(100);
+			int firstTable = request.getNextToken() == null ? 0 : Integer.parseInt(request.getNextToken());
+			List<Table> tables = new ArrayList<Table>();
+			for (int table = firstTable; table < firstTable + PAGE_SIZE; table++) {
+				tables.add(new Table().withDatabaseName(request.getDatabaseName()).withName("table_" + table)
+						.withVersionId("10"));
+			}
+			int nextTable = firstTable + PAGE_SIZE;
+			return new GetTablesResult().withTableList(tables)
+					.withNextToken(nextTable < NUMBER_OF_TABLES ? Integer.toString(nextTable) : null);
+		}
+
+		private static void sleep(long millis) {
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,112 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.amazonaws.services.glue.AbstractAWSGlue;
+import com.amazonaws.services.glue.model.BatchDeleteTableVersionRequest;
+import com.amazonaws.services.glue.model.BatchDeleteTableVersionResult;
+import com.amazonaws.services.glue.model.EntityNotFoundException;
+import com.amazonaws.services.glue.model.TableVersionError;
+
+/**
+ * Tests how {@link TableVersionDeleteExecutor} tells versions Glue did not
+ * delete apart from requests that failed as a whole.
+ */
+public class TableVersionDeleteExecutorTest {
+
+	private final ExecutorService executorService = Executors.newFixedThreadPool(2);
+	private final StubGlue glue = new StubGlue();
+
+	@After
+	public void tearDown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void returnsTheVersionsGlueDidNotDelete() {
+		glue.versionsNotDeleted.add("3");
+		TableVersionDeleteExecutor deleteExecutor = newDeleteExecutor();
+
+		deleteExecutor.submit(Arrays.asList("1", "2", "3"));
+		deleteExecutor.submit(Arrays.asList("4", "5"));
+		List<TableVersionStatus> versionsNotDeleted = deleteExecutor.awaitCompletion();
+
+		assertEquals(1, versionsNotDeleted.size());
+		assertEquals("3", versionsNotDeleted.get(0).getVersionId());
+		assertEquals(0, deleteExecutor.getNumberOfVersionsSkipped());
+	}
+
+	@Test
+	public void rethrowsAFailedRequest() {
+		glue.failure = new EntityNotFoundException("Table not found");
+		TableVersionDeleteExecutor deleteExecutor = newDeleteExecutor();
+		deleteExecutor.submit(Arrays.asList("1", "2"));
+
+		try {
+			deleteExecutor.awaitCompletion();
+			fail("The failed request was not rethrown");
+		} catch (EntityNotFoundException e) {
+			assertSame(glue.failure, e);
+		}
+	}
+
+	@Test
+	public void submitsNoBatchesAfterAFailedRequest() {
+		glue.failure = new EntityNotFoundException("Table not found");
+		TableVersionDeleteExecutor deleteExecutor = newDeleteExecutor();
+		deleteExecutor.submit(Arrays.asList("1", "2"));
+		try {
+			deleteExecutor.awaitCompletion();
+		} catch (EntityNotFoundException e) {
+			// expected
+		}
+
+		assertFalse(deleteExecutor.submit(Arrays.asList("3", "4")));
+		assertEquals(2, deleteExecutor.getNumberOfVersionsSkipped());
+		assertEquals(1, glue.numberOfRequests);
+	}
+
+	private TableVersionDeleteExecutor newDeleteExecutor() {
+		return new TableVersionDeleteExecutor(new GlueUtil(), glue, "orders", "sales_db", executorService, 2);
+	}
+
+	/**
+	 * Glue stand-in that fails every BatchDeleteTableVersion request with failure
+	 * if it is set, or reports versionsNotDeleted as errors.
+	 */
+	private static class StubGlue extends AbstractAWSGlue {
+
+		private final List<String> versionsNotDeleted = new ArrayList<String>();
+		private volatile RuntimeException failure;
+		private int numberOfRequests;
+
+		@Override
+		public synchronized BatchDeleteTableVersionResult batchDeleteTableVersion(
+				BatchDeleteTableVersionRequest request) {
+			numberOfRequests++;
+			if (failure != null)
+				throw failure;
+			List<TableVersionError> errors = new ArrayList<TableVersionError>();
+			for (String versionId : request.getVersionIds()) {
+				if (versionsNotDeleted.contains(versionId))
+					errors.add(new TableVersionError().withTableName(request.getTableName()).withVersionId(versionId));
+			}
+			return new BatchDeleteTableVersionResult().withErrors(errors);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+/**
+ * Compares {@link TableVersionSelector} with the list based algorithm that
+ * GlueUtil.determineOldVersions used before.
+ */
+public class TableVersionSelectorTest {
+
+	@Test
+	public void retainsFewerVersionsThanTheTableHas() {
+		assertSameSelection(new int[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 }, 3);
+	}
+
+	@Test
+	public void retainsAsManyVersionsAsTheTableHas() {
+		assertSameSelection(new int[] { 1, 2, 3, 4, 5 }, 5);
+		assertEquals(0, TableVersionSelector.keepNewest(5).select(new int[] { 1, 2, 3, 4, 5 })
+				.getVersionsToDelete().length);
+	}
+
+	@Test
+	public void retainsMoreVersionsThanTheTableHas() {
+		assertSameSelection(new int[] { 1, 2, 3 }, 100);
+		assertEquals(0, TableVersionSelector.keepNewest(100).select(new int[] { 1, 2, 3 })
+				.getVersionsToDelete().length);
+	}
+
+	@Test
+	public void retainsTheOnlyVersion() {
+		assertSameSelection(new int[] { 7 }, 1);
+		assertSameSelection(new int[] { 7 }, 100);
+		VersionSelection selection = TableVersionSelector.keepNewest(1).select(new int[] { 7 });
+		assertEquals(7, selection.getCurrentVersion());
+		assertEquals(1, selection.getNumberOfVersions());
+	}
+
+	@Test
+	public void selectsNonContiguousVersionIds() {
+		// versions of a table with deleted versions in between, listed unordered
+		int[] versionIds = new int[] { 41, 3, 1207, 12, 980, 5, 600, 44, 2, 1000 };
+		assertSameSelection(versionIds, 4);
+		VersionSelection selection = TableVersionSelector.keepNewest(4).select(versionIds);
+		assertArrayEquals(new int[] { 1207, 1000, 980, 600 }, selection.getVersionsToKeep());
+		assertArrayEquals(new int[] { 44, 41, 12, 5, 3, 2 }, selection.getVersionsToDelete());
+		assertEquals(1207, selection.getCurrentVersion());
+	}
+
+	@Test
+	public void retainsTheCurrentVersionWhenNoneAreToBeRetained() {
+		// determineOldVersions deleted the current version as well
+		VersionSelection selection = TableVersionSelector.keepNewest(0).select(new int[] { 1, 2, 3 });
+		assertArrayEquals(new int[] { 3 }, selection.getVersionsToKeep());
+		assertArrayEquals(new int[] { 2, 1 }, selection.getVersionsToDelete());
+	}
+
+	@Test
+	public void doesNotModifyTheInput() {
+		int[] versionIds = new int[] { 3, 1, 2 };
+		TableVersionSelector.keepNewest(1).select(versionIds);
+		assertArrayEquals(new int[] { 3, 1, 2 }, versionIds);
+	}
+
+	@Test
+	public void matchesDetermineOldVersionsOnRandomTables() {
+		Random random = new Random(20201);
+		for (int i = 0; i < 500; i++) {
+			int numberOfVersions = 1 + random.nextInt(300);
+			List<Integer> versionIds = new ArrayList<Integer>();
+			int versionId = random.nextInt(10);
+			for (int j = 0; j < numberOfVersions; j++) {
+				versionId += 1 + random.nextInt(5);
+				versionIds.add(versionId);
+			}
+			Collections.shuffle(versionIds, random);
+			assertSameSelection(versionIds.stream().mapToInt(Integer::intValue).toArray(),
+					1 + random.nextInt(numberOfVersions + 10));
+		}
+	}
+
+	private static void assertSameSelection(int[] versionIds, int numberofVersionsToRetain) {
+		List<Integer> versionIdList = new ArrayList<Integer>();
+		for (int versionId : versionIds) {
+			versionIdList.add(versionId);
+		}
+		List<List<Integer>> expected = determineOldVersions(versionIdList, numberofVersionsToRetain);
+
+		VersionSelection selection = TableVersionSelector.keepNewest(numberofVersionsToRetain).select(versionIds);
+		assertArrayEquals(toArray(expected.get(0)), selection.getVersionsToKeep());
+		assertArrayEquals(toArray(expected.get(1)), selection.getVersionsToDelete());
+		assertEquals(versionIds.length, selection.getNumberOfVersions());
+	}
+
+	/**
+	 * The algorithm of GlueUtil.determineOldVersions: the version ids sorted in
+	 * descending order, partitioned into the versions to keep and the versions to
+	 * delete.
+	 */
+	private static List<List<Integer>> determineOldVersions(List<Integer> versionIds, int numberofVersionsToKeep) {
+		List<Integer> versionIdList = new ArrayList<Integer>(versionIds);
+		Collections.sort(versionIdList, Collections.reverseOrder());
+		return new ArrayList<List<Integer>>(versionIdList.stream()
+				.collect(Collectors.partitioningBy(s -> versionIdList.indexOf(s) > numberofVersionsToKeep - 1))
+				.values());
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		return list.stream().mapToInt(Integer::intValue).toArray();
+	}
+}
@@ -0,0 +1,199 @@
+// Copyright 2020 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: MIT-0
+
+package software.aws.glue.tableversions.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.amazonaws.services.glue.AbstractAWSGlue;
+import com.amazonaws.services.glue.model.BatchDeleteTableVersionRequest;
+import com.amazonaws.services.glue.model.BatchDeleteTableVersionResult;
+import com.amazonaws.services.glue.model.ErrorDetail;
+import com.amazonaws.services.glue.model.GetTableVersionsRequest;
+import com.amazonaws.services.glue.model.GetTableVersionsResult;
+import com.amazonaws.services.glue.model.TableVersion;
+import com.amazonaws.services.glue.model.TableVersionError;
+
+/**
+ * Tests where {@link TableVersionsCleaner} stops when the deadline passes, and
+ * that a continuation resumes there instead of listing all versions again. The
+ * table has versions 1 to 30 listed newest first, 10 per page, and 5 versions
+ * are retained.
+ */
+public class TableVersionsCleanerTest {
+
+	private static final int NUMBER_OF_VERSIONS_TO_RETAIN = 5;
+
+	private final ExecutorService deleteExecutorService = Executors.newFixedThreadPool(2);
+	private final StubGlue glue = new StubGlue(30);
+
+	@After
+	public void tearDown() {
+		deleteExecutorService.shutdownNow();
+	}
+
+	@Test
+	public void stopsListingAtTheDeadlineInStreamingMode() {
+		glue.firstPageDelayMillis = 200;
+
+		TableCleanupResult result = newCleaner(true).cleanupTable(table(), 1, "1", Deadline.after(100));
+
+		// the first page retains 30 to 26 and leaves 25 to 21 for deletion
+		assertFalse(result.isComplete());
+		assertEquals(Arrays.asList((String) null), glue.nextTokensRequested);
+		assertEquals(5, result.getNumberOfVersionsSkipped());
+		assertEquals(Integer.valueOf(21), result.getDeleteVersionsFrom());
+		assertEquals(Integer.valueOf(25), result.getDeleteVersionsTo());
+		assertEquals(Integer.valueOf(26), result.getDeleteVersionsOlderThan());
+		assertEquals("21", result.getTableVersionsNextToken());
+		assertEquals(30, glue.versionIds.size());
+	}
+
+	@Test
+	public void leavesTheSkippedVersionsAsARange() {
+		glue.firstPageDelayMillis = 200;
+
+		TableCleanupResult result = newCleaner(false).cleanupTable(table(), 1, "1", Deadline.after(100));
+
+		assertFalse(result.isComplete());
+		assertEquals(25, result.getNumberOfVersionsSkipped());
+		assertEquals(Integer.valueOf(1), result.getDeleteVersionsFrom());
+		assertEquals(Integer.valueOf(25), result.getDeleteVersionsTo());
+		assertNull(result.getTableVersionsNextToken());
+	}
+
+	@Test
+	public void resumesAtTheRangeAndTheNextToken() {
+		// version 22 was deleted before the continuation runs
+		glue.versionIds.remove(22);
+		GlueTable continuation = table();
+		continuation.setDeleteVersionsOlderThan(26);
+		continuation.setDeleteVersionsFrom(21);
+		continuation.setDeleteVersionsTo(25);
+		continuation.setTableVersionsNextToken("21");
+		continuation.setContinuationCount(1);
+
+		TableCleanupResult result = newCleaner(false).cleanupTable(continuation, 1, "1", Deadline.none());
+
+		assertTrue(result.isComplete());
+		assertEquals(Arrays.asList("21", "11"), glue.nextTokensRequested);
+		assertEquals(24, result.getNumberOfVersionsDeleted());
+		assertTrue(result.getVersionsNotDeleted().isEmpty());
+		assertEquals(new TreeSet<Integer>(Arrays.asList(26, 27, 28, 29, 30)), glue.versionIds);
+	}
+
+	@Test
+	public void listsAllVersionsWithoutAResumePoint() {
+		GlueTable continuation = table();
+		continuation.setDeleteVersionsOlderThan(26);
+		continuation.setContinuationCount(1);
+
+		TableCleanupResult result = newCleaner(true).cleanupTable(continuation, 1, "1", Deadline.none());
+
+		assertTrue(result.isComplete());
+		assertEquals(Arrays.asList(null, "21", "11"), glue.nextTokensRequested);
+		assertEquals(25, result.getNumberOfVersionsDeleted());
+		assertEquals(5, glue.versionIds.size());
+	}
+
+	private TableVersionsCleaner newCleaner(boolean streamingMode) {
+		return new TableVersionsCleaner(new GlueUtil(), new DDBUtil(), glue,
+				new DDBBatchWriter(new StubDynamoDB(), new InvocationMetrics("")), "table_version_cleanup_statistics",
+				"execution_id", "execution_batch_id", NUMBER_OF_VERSIONS_TO_RETAIN, streamingMode, deleteExecutorService,
+				2);
+	}
+
+	private static GlueTable table() {
+		GlueTable glueTable = new GlueTable();
+		glueTable.setDatabaseName("sales_db");
+		glueTable.setTableName("orders");
+		return glueTable;
+	}
+
+	/**
+	 * Glue stand-in with the versions of one table. The NextToken of a page is
+	 * its last version id, so a page lists the versions below it. Deleting a
+	 * version that does not exist reports an EntityNotFoundException error, like
+	 * AWS Glue does.
+	 */
+	private static class StubGlue extends AbstractAWSGlue {
+
+		private static final int PAGE_SIZE = 10;
+
+		private final NavigableSet<Integer> versionIds = new TreeSet<Integer>();
+		private final List<String> nextTokensRequested = new ArrayList<String>();
+		private long firstPageDelayMillis;
+
+		private StubGlue(int numberOfVersions) {
+			for (int versionId = 1; versionId <= numberOfVersions; versionId++) {
+				versionIds.add(versionId);
+			}
+		}
+
+		@Override
+		public synchronized GetTableVersionsResult getTableVersions(GetTableVersionsRequest request) {
+			if (nextTokensRequested.isEmpty() && firstPageDelayMillis > 0)
+				sleep(firstPageDelayMillis);
+			nextTokensRequested.add(request.getNextToken());
+			NavigableSet<Integer> below = request.getNextToken() == null ? versionIds.descendingSet()
+					: versionIds.headSet(Integer.valueOf(request.getNextToken()), false).descendingSet();
+			List<TableVersion> tableVersions = new ArrayList<TableVersion>();
+			String nextToken = null;
+			for (int versionId : below) {
+				if (tableVersions.size() == PAGE_SIZE) {
+					nextToken = tableVersions.get(PAGE_SIZE - 1).getVersionId();
+					break;
+				}
+				tableVersions.add(new TableVersion().withVersionId(Integer.toString(versionId)));
+			}
+			return new GetTableVersionsResult().withTableVersions(tableVersions).withNextToken(nextToken);
+		}
+
+		@Override
+		public synchronized BatchDeleteTableVersionResult batchDeleteTableVersion(
+				BatchDeleteTableVersionRequest request) {
+			List<TableVersionError> errors = new ArrayList<TableVersionError>();
+			for (String versionId : request.getVersionIds()) {
+				if (!versionIds.remove(Integer.valueOf(versionId)))
+					errors.add(new TableVersionError().withTableName(request.getTableName()).withVersionId(versionId)
+							.withErrorDetail(new ErrorDetail().withErrorCode("EntityNotFoundException")));
+			}
+			return new BatchDeleteTableVersionResult().withErrors(errors);
+		}
+
+		private static void sleep(long millis) {
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static class StubDynamoDB extends AbstractAmazonDynamoDB {
+
+		@Override
+		public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+			return new BatchWriteItemResult().withUnprocessedItems(Collections.<String, List<WriteRequest>>emptyMap());
+		}
+	}
+}